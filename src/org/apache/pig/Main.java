@@ -793,6 +793,8 @@ public static void printProperties(){
         System.out.println("    Performance tuning:");
         System.out.println("        pig.cachedbag.memusage=<mem fraction>; default is 0.2 (20% of all memory).");
 	System.out.println("            Note that this memory is shared across all large bags used by the application.");     	
+        System.out.println("        pig.cachedbag.type=internal|serialized|default; default is internal.");
+        System.out.println("            serialized keeps the tuples of grouped bags as bytes, which holds more of them in memory.");
         System.out.println("        pig.skewedjoin.reduce.memusagea=<mem fraction>; default is 0.3 (30% of all memory).");
         System.out.println("            Specifies the fraction of heap available for the reducer to perform the join.");
         System.out.println("        pig.exec.nocombiner=true|false; default is false. ");
@@ -811,6 +813,13 @@ public static void printProperties(){
         System.out.println("        pig.exec.mapPartAgg.minReduction=<min aggregation factor>. Default is 10.");
         System.out.println("            If the in-map partial aggregation does not reduce the output num records");
         System.out.println("            by this factor, it gets disabled.");        
+        System.out.println("        pig.exec.mapDistinct=true|false. Default is false.");
+        System.out.println("            Determines if duplicates are removed within map phase for distinct.");
+        System.out.println("        pig.exec.mapDistinct.minReduction=<min reduction factor>. Default is 2.");
+        System.out.println("            If the in-map distinct does not reduce the output num records");
+        System.out.println("            by this factor, it gets disabled.");
+        System.out.println("        pig.exec.mapDistinct.memusage=<fraction of heap>. Default is 0.1.");
+        System.out.println("            Memory used to remember the records seen before it is cleared.");
         System.out.println("        " + PROP_FILT_SIMPL_OPT + "=true|false; Default is false.");
         System.out.println("            Enable optimizer rules to simplify filter expressions.");
         System.out.println("    Miscellaneous:");
@@ -90,6 +90,7 @@ import org.apache.pig.newplan.logical.relational.LOStore;
 import org.apache.pig.newplan.logical.relational.LogicalPlan;
 import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
 import org.apache.pig.newplan.logical.relational.LogicalSchema;
+import org.apache.pig.newplan.logical.rules.MergeLoad;
 import org.apache.pig.newplan.logical.visitor.CastLineageSetter;
 import org.apache.pig.newplan.logical.visitor.ColumnAliasConversionVisitor;
 import org.apache.pig.newplan.logical.visitor.ScalarVariableValidator;
@@ -733,6 +734,42 @@ public class PigServer {
         }
     }
 
+    /**
+     * Runs several pig scripts as a single batch. The statements of all the
+     * scripts end up in one plan, so the multi-query optimizer can share
+     * work between the scripts, and loads of the same input with the same
+     * load function and schema are merged so that the input is read once.
+     * <p>
+     * The scripts are registered one after the other and share the alias
+     * namespace, so a script must define every alias it uses, as it would
+     * when run on its own. Set commands apply to the scripts after them.
+     * @param fileNames pig script files
+     * @param params the key is the parameter name, and the value is the
+     * parameter value, applied to all the scripts
+     * @return list of jobs being executed
+     * @throws IOException
+     */
+    public List<ExecJob> executeScripts(List<String> fileNames, Map<String,String> params)
+    throws IOException {
+        Properties props = pigContext.getProperties();
+        String mergeLoads = props.getProperty(MergeLoad.MERGE_LOADS);
+        props.setProperty(MergeLoad.MERGE_LOADS, "true");
+        setBatchOn();
+        try {
+            for (String fileName : fileNames) {
+                registerScript(fileName, params);
+            }
+            return executeBatch();
+        } finally {
+            discardBatch();
+            if (mergeLoads == null) {
+                props.remove(MergeLoad.MERGE_LOADS);
+            } else {
+                props.setProperty(MergeLoad.MERGE_LOADS, mergeLoads);
+            }
+        }
+    }
+
     /**
      * Intended to be used by unit tests only.
      * Print a list of all aliases in in the current Pig Latin script.  Output is written to
@@ -38,7 +38,9 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.UnaryExpressionOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PODistinct;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLimit;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSortedDistinct;
 import org.apache.pig.data.DataType;
@@ -228,6 +230,8 @@ public class AccumulatorOptimizer extends MROpPlanVisitor {
      * <li>POBinCond</li>
      * <li>POSortedDistinct</li>
      * <li>POForEach</li>
+     * <li>POFilter</li>
+     * <li>POLimit</li>
      *
      */
     private boolean checkUDFInput(PhysicalOperator po) {    	
@@ -267,6 +271,12 @@ public class AccumulatorOptimizer extends MROpPlanVisitor {
         if (po instanceof POSortedDistinct) {    		    		
             return true;    	
         }
+
+        // nested filter and limit pass on the tuples of each batch
+        // as they come, and limit keeps its count across batches
+        if (po instanceof POFilter || po instanceof POLimit) {
+            return checkUDFInput(po.getInputs().get(0));
+        }
         
         if (po instanceof POForEach) {
             List<PhysicalPlan> list = ((POForEach)po).getInputPlans();
@@ -0,0 +1,490 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POJoinPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POUnion;
+import org.apache.pig.builtin.Bloom;
+import org.apache.pig.builtin.BuildBloom;
+import org.apache.pig.builtin.PigStorage;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.FileLocalizer;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.PlanException;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.plan.optimizer.OptimizerException;
+import org.apache.pig.impl.util.Pair;
+
+/**
+ * An optimizer that lets a regular join of two inputs drop, in the map,
+ * the records of one input whose key cannot be found in the other:
+ * <p>
+ *     POLoad(b) - ... - POLocalRearrange(b) \
+ *                                            POUnion ... POPackage - ...
+ *     POLoad(p) - ... - POLocalRearrange(p) /
+ * <p>
+ * A new MapReduceOper runs the pipeline of input b up to its keys and
+ * builds a Bloom filter of them with {@link BuildBloom} in a single
+ * reducer.  The join job then runs after it and filters input p with
+ * {@link Bloom} before its POLocalRearrange, so the keys that have no
+ * match do not go through the shuffle.
+ * <p>
+ * Only the records of p that would be dropped by the join anyway can be
+ * filtered, so b has to be an inner input of the join: this holds for both
+ * inputs of an inner join, and for the outer input of a left or right outer
+ * join.  When both inputs qualify, b is the smaller one if the sizes of
+ * both are known, and else the first one, since by convention the largest
+ * input of a join comes last.  A Bloom filter has no false negatives, so
+ * the result of the join does not change; it only pays off when few keys
+ * match, and it is sized for {@link #NUM_ELEMENTS} keys, which is why this
+ * is turned on with pig.exec.bloomjoin.
+ * <p>
+ * This has to run after the MultiQueryOptimizer, which would otherwise
+ * merge the new job into the jobs it reads from, and so it annotates the
+ * package of the new job itself.
+ */
+class BloomJoinOptimizer extends MROpPlanVisitor {
+
+    /** The number of distinct keys the Bloom filters are sized for */
+    static final String NUM_ELEMENTS = "pig.exec.bloomjoin.numelements";
+
+    /** The rate of false positives of the Bloom filters */
+    static final String FALSE_POSITIVE = "pig.exec.bloomjoin.falsepositive";
+
+    private static final String DEFAULT_NUM_ELEMENTS = "1000000";
+
+    private static final String DEFAULT_FALSE_POSITIVE = "0.01";
+
+    private Log log = LogFactory.getLog(getClass());
+
+    private PigContext pigContext;
+
+    private List<MapReduceOper> joins = new ArrayList<MapReduceOper>();
+
+    private NodeIdGenerator nig = NodeIdGenerator.getGenerator();
+
+    private String scope;
+
+    BloomJoinOptimizer(MROperPlan plan, PigContext pigContext) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.pigContext = pigContext;
+    }
+
+    @Override
+    public void visit() throws VisitorException {
+        super.visit();
+        // the plan is changed once it has been walked
+        for (MapReduceOper mr : joins) {
+            try {
+                addBloomFilter(mr);
+            } catch (PlanException e) {
+                int errCode = 2130;
+                String msg = "Internal Error. Unable to add a Bloom filter to a join.";
+                throw new OptimizerException(msg, errCode, PigException.BUG, e);
+            }
+        }
+        if (joins.size() > 0) {
+            log.info("Filtered " + joins.size() + " join input(s) with Bloom filters.");
+        }
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        if (!mr.isRegularJoin() || mr instanceof NativeMapReduceOper
+                || !mr.combinePlan.isEmpty() || mr.reducePlan.isEmpty()
+                || !mr.scalars.isEmpty()) {
+            return;
+        }
+        List<PhysicalOperator> roots = mr.reducePlan.getRoots();
+        if (roots.size() != 1 || (roots.get(0).getClass() != POPackage.class
+                && roots.get(0).getClass() != POJoinPackage.class)) {
+            return;
+        }
+        POPackage pkg = (POPackage)roots.get(0);
+        if (pkg.getNumInps() != 2) {
+            return;
+        }
+        List<PhysicalOperator> leaves = mr.mapPlan.getLeaves();
+        if (leaves.size() != 1 || !(leaves.get(0) instanceof POUnion)) {
+            return;
+        }
+        List<PhysicalOperator> lrs = mr.mapPlan.getPredecessors(leaves.get(0));
+        if (lrs == null || lrs.size() != 2) {
+            return;
+        }
+        // both inputs have to be read by a single pipeline each
+        int size = 1;
+        for (PhysicalOperator lr : lrs) {
+            if (lr.getClass() != POLocalRearrange.class) {
+                return;
+            }
+            List<PhysicalOperator> pipeline = getPipeline(mr.mapPlan, lr);
+            if (pipeline == null) {
+                return;
+            }
+            size += pipeline.size() + 1;
+        }
+        if (size != mr.mapPlan.size() || getBuildInput(mr) == null) {
+            return;
+        }
+        joins.add(mr);
+    }
+
+    /**
+     * @return the operators from the load to the one before lr, or null if
+     * they are not a single chain
+     */
+    private List<PhysicalOperator> getPipeline(PhysicalPlan plan, PhysicalOperator lr) {
+        List<PhysicalOperator> pipeline = new ArrayList<PhysicalOperator>();
+        PhysicalOperator op = lr;
+        while (true) {
+            List<PhysicalOperator> preds = plan.getPredecessors(op);
+            if (preds == null) {
+                break;
+            }
+            if (preds.size() != 1 || plan.getSuccessors(preds.get(0)).size() != 1) {
+                return null;
+            }
+            op = preds.get(0);
+            pipeline.add(op);
+        }
+        if (!(op instanceof POLoad)) {
+            return null;
+        }
+        Collections.reverse(pipeline);
+        return pipeline;
+    }
+
+    /**
+     * @return the POLocalRearrange of the input the Bloom filter is built
+     * from, or null if neither input can be
+     */
+    private POLocalRearrange getBuildInput(MapReduceOper mr) {
+        POPackage pkg = (POPackage)mr.reducePlan.getRoots().get(0);
+        POLocalRearrange[] lrs = new POLocalRearrange[2];
+        for (PhysicalOperator op : mr.mapPlan.getPredecessors(mr.mapPlan.getLeaves().get(0))) {
+            POLocalRearrange lr = (POLocalRearrange)op;
+            if (lr.getIndex() < 0 || lr.getIndex() > 1 || lrs[lr.getIndex()] != null) {
+                return null;
+            }
+            lrs[lr.getIndex()] = lr;
+        }
+        boolean[] inner = pkg.getInner();
+        List<Integer> builds = new ArrayList<Integer>();
+        for (int i = 0; i < 2; i++) {
+            if (inner[i] && canCopy(getPipeline(mr.mapPlan, lrs[i]))) {
+                builds.add(i);
+            }
+        }
+        if (builds.isEmpty()) {
+            return null;
+        }
+        if (builds.size() == 2) {
+            long size0 = getInputSize(mr.mapPlan, lrs[0]);
+            long size1 = getInputSize(mr.mapPlan, lrs[1]);
+            if (size0 >= 0 && size1 >= 0 && size1 < size0) {
+                return lrs[1];
+            }
+        }
+        return lrs[builds.get(0)];
+    }
+
+    private boolean canCopy(List<PhysicalOperator> pipeline) {
+        for (PhysicalOperator op : pipeline) {
+            if (op.getClass() != POLoad.class && op.getClass() != POFilter.class
+                    && op.getClass() != POForEach.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the size in bytes of the files read by the pipeline of lr, or
+     * -1 if it is not known, as for temporary files yet to be written
+     */
+    private long getInputSize(PhysicalPlan plan, POLocalRearrange lr) {
+        POLoad load = (POLoad)getPipeline(plan, lr).get(0);
+        try {
+            long size = 0;
+            for (String location : LoadFunc.getPathStrings(load.getLFile().getFileName())) {
+                Path path = new Path(location);
+                FileSystem fs = path.getFileSystem(
+                        ConfigurationUtil.toConfiguration(pigContext.getProperties()));
+                FileStatus[] statuses = fs.globStatus(path);
+                if (statuses == null || statuses.length == 0) {
+                    return -1;
+                }
+                for (FileStatus status : statuses) {
+                    size += fs.getContentSummary(status.getPath()).getLength();
+                }
+            }
+            return size;
+        } catch (Exception e) {
+            // not on a file system
+            log.debug("Could not get the size of " + load.getLFile(), e);
+            return -1;
+        }
+    }
+
+    private void addBloomFilter(MapReduceOper mr) throws PlanException, VisitorException {
+        scope = mr.getOperatorKey().getScope();
+        POLocalRearrange buildLr = getBuildInput(mr);
+        POLocalRearrange probeLr = null;
+        for (PhysicalOperator op : mr.mapPlan.getPredecessors(mr.mapPlan.getLeaves().get(0))) {
+            if (op != buildLr) {
+                probeLr = (POLocalRearrange)op;
+            }
+        }
+        String bloomFile;
+        try {
+            bloomFile = FileLocalizer.getTemporaryPath(pigContext).toString();
+        } catch (IOException e) {
+            int errCode = 2130;
+            String msg = "Internal Error. Unable to get a temporary file for a Bloom filter.";
+            throw new OptimizerException(msg, errCode, PigException.BUG, e);
+        }
+
+        MapReduceOper bloomJob = getBloomJob(mr, buildLr, bloomFile);
+        getPlan().add(bloomJob);
+        // the new job reads what the join reads
+        List<MapReduceOper> preds = getPlan().getPredecessors(mr);
+        if (preds != null) {
+            for (MapReduceOper pred : new ArrayList<MapReduceOper>(preds)) {
+                getPlan().connect(pred, bloomJob);
+            }
+        }
+        getPlan().connect(bloomJob, mr);
+
+        // filter the other input before its POLocalRearrange
+        PhysicalPlan filterPlan = new PhysicalPlan();
+        List<PhysicalOperator> keys = new ArrayList<PhysicalOperator>();
+        for (PhysicalPlan keyPlan : clonePlans(probeLr.getPlans())) {
+            keys.addAll(keyPlan.getLeaves());
+            filterPlan.merge(keyPlan);
+        }
+        FuncSpec bloomSpec = new FuncSpec(Bloom.class.getName(), bloomFile);
+        POUserFunc bloom = new POUserFunc(getKey(), -1, keys, bloomSpec);
+        bloom.setResultType(DataType.BOOLEAN);
+        List<String> cacheFiles = new Bloom(bloomFile).getCacheFiles();
+        bloom.setCacheFiles(cacheFiles.toArray(new String[cacheFiles.size()]));
+        filterPlan.add(bloom);
+        for (PhysicalOperator key : keys) {
+            filterPlan.connect(key, bloom);
+        }
+        PhysicalOperator pred = mr.mapPlan.getPredecessors(probeLr).get(0);
+        POFilter filter = new POFilter(getKey());
+        filter.setPlan(filterPlan);
+        filter.setResultType(DataType.BAG);
+        filter.setAlias(pred.getAlias());
+
+        mr.mapPlan.disconnect(pred, probeLr);
+        mr.mapPlan.add(filter);
+        mr.mapPlan.connect(pred, filter);
+        mr.mapPlan.connect(filter, probeLr);
+        mr.UDFs.add(bloomSpec.toString());
+        log.info("Filtering " + pred.getAlias() + " with a Bloom filter of the keys of "
+                + mr.mapPlan.getPredecessors(buildLr).get(0).getAlias());
+    }
+
+    /**
+     * Builds the job that writes the Bloom filter of the keys of the input
+     * of buildLr to bloomFile:
+     * <p>
+     *     POLoad - ... - POForEach(keys) - POLocalRearrange("all")
+     *     POPackage - POForEach(BuildBloom) - POStore
+     */
+    private MapReduceOper getBloomJob(MapReduceOper mr, POLocalRearrange buildLr,
+            String bloomFile) throws PlanException, VisitorException {
+        MapReduceOper bloomJob = new MapReduceOper(getKey());
+        bloomJob.UDFs.addAll(mr.UDFs);
+
+        PhysicalOperator last = null;
+        for (PhysicalOperator op : getPipeline(mr.mapPlan, buildLr)) {
+            PhysicalOperator copy = copy(op);
+            bloomJob.mapPlan.add(copy);
+            if (last != null) {
+                bloomJob.mapPlan.connect(last, copy);
+            }
+            last = copy;
+        }
+
+        List<PhysicalPlan> keyPlans = clonePlans(buildLr.getPlans());
+        List<Boolean> flattens = new ArrayList<Boolean>();
+        for (int i = 0; i < keyPlans.size(); i++) {
+            flattens.add(false);
+        }
+        POForEach keys = new POForEach(getKey(), -1, keyPlans, flattens);
+        keys.setResultType(DataType.BAG);
+        bloomJob.mapPlan.add(keys);
+        bloomJob.mapPlan.connect(last, keys);
+
+        PhysicalPlan allPlan = new PhysicalPlan();
+        ConstantExpression all = new ConstantExpression(getKey());
+        all.setValue("all");
+        all.setResultType(DataType.CHARARRAY);
+        allPlan.add(all);
+        List<PhysicalPlan> allPlans = new ArrayList<PhysicalPlan>();
+        allPlans.add(allPlan);
+        POLocalRearrange lr = new POLocalRearrange(getKey());
+        try {
+            lr.setIndex(0);
+        } catch (ExecException e) {
+            int errCode = 2058;
+            String msg = "Unable to set index on newly created POLocalRearrange.";
+            throw new PlanException(msg, errCode, PigException.BUG, e);
+        }
+        lr.setKeyType(DataType.CHARARRAY);
+        lr.setPlans(allPlans);
+        lr.setResultType(DataType.TUPLE);
+        lr.setAlias(last.getAlias());
+        bloomJob.mapPlan.add(lr);
+        bloomJob.mapPlan.connect(keys, lr);
+        bloomJob.setMapDone(true);
+        bloomJob.mapKeyType = DataType.CHARARRAY;
+
+        POPackage pkg = new POPackage(getKey());
+        pkg.setKeyType(DataType.CHARARRAY);
+        pkg.setNumInps(1);
+        pkg.setInner(new boolean[] { false });
+        // what the POPackageAnnotator would do
+        Map<Integer, Pair<Boolean, Map<Integer, Integer>>> keyInfo =
+            new HashMap<Integer, Pair<Boolean, Map<Integer, Integer>>>();
+        keyInfo.put(0, new Pair<Boolean, Map<Integer, Integer>>(
+                lr.isProjectStar(), lr.getProjectedColsMap()));
+        pkg.setKeyInfo(keyInfo);
+        pkg.setKeyTuple(lr.isKeyTuple());
+        pkg.setKeyCompound(lr.isKeyCompound());
+        bloomJob.reducePlan.add(pkg);
+
+        PhysicalPlan buildPlan = new PhysicalPlan();
+        POProject bag = new POProject(getKey());
+        bag.setColumn(1);
+        bag.setResultType(DataType.BAG);
+        buildPlan.add(bag);
+        List<PhysicalOperator> buildInputs = new ArrayList<PhysicalOperator>();
+        buildInputs.add(bag);
+        FuncSpec buildSpec = new FuncSpec(BuildBloom.class.getName(), new String[] {
+                "jenkins",
+                pigContext.getProperties().getProperty(NUM_ELEMENTS, DEFAULT_NUM_ELEMENTS),
+                pigContext.getProperties().getProperty(FALSE_POSITIVE, DEFAULT_FALSE_POSITIVE) });
+        POUserFunc build = new POUserFunc(getKey(), -1, buildInputs, buildSpec);
+        build.setResultType(DataType.BYTEARRAY);
+        buildPlan.add(build);
+        buildPlan.connect(bag, build);
+        List<PhysicalPlan> buildPlans = new ArrayList<PhysicalPlan>();
+        buildPlans.add(buildPlan);
+        List<Boolean> buildFlattens = new ArrayList<Boolean>();
+        buildFlattens.add(false);
+        POForEach fe = new POForEach(getKey(), -1, buildPlans, buildFlattens);
+        fe.setResultType(DataType.BAG);
+        bloomJob.reducePlan.add(fe);
+        bloomJob.reducePlan.connect(pkg, fe);
+        bloomJob.UDFs.add(buildSpec.toString());
+
+        // Bloom reads the filter as it is written by PigStorage
+        POStore store = new POStore(getKey());
+        store.setSFile(new FileSpec(bloomFile, new FuncSpec(PigStorage.class.getName())));
+        store.setIsTmpStore(true);
+        bloomJob.reducePlan.add(store);
+        bloomJob.reducePlan.connect(fe, store);
+        bloomJob.setReduceDone(true);
+        bloomJob.requestedParallelism = 1;
+        return bloomJob;
+    }
+
+    private PhysicalOperator copy(PhysicalOperator op) throws VisitorException {
+        if (op instanceof POLoad) {
+            POLoad load = (POLoad)op;
+            POLoad copy = new POLoad(getKey(), load.getLFile());
+            copy.setPc(load.getPc());
+            copy.setSignature(load.getSignature());
+            copy.setLimit(load.getLimit());
+            copy.setResultType(load.getResultType());
+            copy.setAlias(load.getAlias());
+            return copy;
+        }
+        if (op instanceof POFilter) {
+            POFilter filter = (POFilter)op;
+            POFilter copy = new POFilter(getKey());
+            copy.setPlan(clonePlans(Collections.singletonList(filter.getPlan())).get(0));
+            copy.setResultType(filter.getResultType());
+            copy.setAlias(filter.getAlias());
+            return copy;
+        }
+        try {
+            return ((POForEach)op).clone();
+        } catch (CloneNotSupportedException e) {
+            int errCode = 2127;
+            String msg = "Cloning of plan failed.";
+            throw new OptimizerException(msg, errCode, PigException.BUG, e);
+        }
+    }
+
+    private List<PhysicalPlan> clonePlans(List<PhysicalPlan> plans) throws VisitorException {
+        List<PhysicalPlan> clones = new ArrayList<PhysicalPlan>(plans.size());
+        for (PhysicalPlan plan : plans) {
+            try {
+                clones.add(plan.clone());
+            } catch (CloneNotSupportedException e) {
+                int errCode = 2127;
+                String msg = "Cloning of plan failed.";
+                throw new OptimizerException(msg, errCode, PigException.BUG, e);
+            }
+        }
+        return clones;
+    }
+
+    private OperatorKey getKey() {
+        return new OperatorKey(scope, nig.getNextNodeId(scope));
+    }
+}
@@ -59,6 +59,7 @@ import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.JobPriority;
 import org.apache.hadoop.mapred.jobcontrol.Job;
 import org.apache.hadoop.mapred.jobcontrol.JobControl;
+import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.pig.ComparisonFunc;
 import org.apache.pig.ExecType;
 import org.apache.pig.LoadFunc;
@@ -66,6 +67,7 @@ import org.apache.pig.PigException;
 import org.apache.pig.StoreFuncInterface;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.HDataType;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners.QuantileSketch;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners.SecondaryKeyPartitioner;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners.SkewedPartitioner;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners.WeightedRangePartitioner;
@@ -86,8 +88,10 @@ import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.builtin.FindQuantiles;
 import org.apache.pig.impl.io.FileLocalizer;
 import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.io.InterRecordWriter;
 import org.apache.pig.impl.io.NullableBooleanWritable;
 import org.apache.pig.impl.io.NullableBytesWritable;
 import org.apache.pig.impl.io.NullableDoubleWritable;
@@ -98,6 +102,8 @@ import org.apache.pig.impl.io.NullablePartitionWritable;
 import org.apache.pig.impl.io.NullableText;
 import org.apache.pig.impl.io.NullableTuple;
 import org.apache.pig.impl.io.PigNullableWritable;
+import org.apache.pig.impl.io.ReadToEndLoader;
+import org.apache.pig.impl.io.TFileRecordWriter;
 import org.apache.pig.impl.plan.DepthFirstWalker;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
@@ -648,6 +654,9 @@ public class JobControlCompiler{
                 // Only set the quantiles file and sort partitioner if we're a
                 // global sort, not for limit after sort.
                 if (mro.isGlobalSort()) {
+                    if (mro.getQuantSketchFile() != null) {
+                        writeQuantilesFromSketches(mro, conf);
+                    }
                     String symlink = addSingleFileToDistributedCache(
                             pigContext, conf, mro.getQuantFile(), "pigsample");
                     conf.set("pig.quantilesFile", symlink);
@@ -1234,6 +1243,58 @@ public class JobControlCompiler{
         }        
     }
     
+    /**
+     * Merges the quantile sketches written by the predecessor of a sort job
+     * and writes the quantiles computed from them into the quantiles file of
+     * the sort job, in the format the sampling job would have produced.
+     */
+    private void writeQuantilesFromSketches(MapReduceOper mro, Configuration conf)
+            throws IOException, InterruptedException {
+        boolean[] sortOrder = mro.getSortOrder();
+        String[] ascs = new String[sortOrder.length];
+        for (int i = 0; i < sortOrder.length; i++) {
+            ascs[i] = Boolean.toString(sortOrder[i]);
+        }
+        FindQuantiles findQuantiles = new FindQuantiles(ascs);
+        int sketchSize = Integer.parseInt(pigContext.getProperties().getProperty(
+                MRCompiler.ORDERBY_SKETCH_SIZE, Integer.toString(QuantileSketch.DEFAULT_K)));
+        QuantileSketch sketch = new QuantileSketch(sketchSize, findQuantiles.getComparator());
+
+        Configuration readConf = new Configuration(conf);
+        readConf.setBoolean("pig.tmpfilecompression", Utils.tmpFileCompression(pigContext));
+        if (FileLocalizer.fileExists(mro.getQuantSketchFile(), pigContext)) {
+            ReadToEndLoader loader = new ReadToEndLoader(
+                    Utils.getTmpFileStorageObject(readConf), readConf,
+                    mro.getQuantSketchFile(), 0);
+            Tuple t;
+            while ((t = loader.getNext()) != null) {
+                sketch.merge(t);
+            }
+        }
+
+        Map<String, Object> quantiles = findQuantiles.findQuantiles(
+                sketch.getWeightedSamples(), mro.requestedParallelism);
+        log.info("Computed quantiles for the sort job from a sketch of "
+                + sketch.getCount() + " keys");
+
+        // with no keys the quantiles file is left empty, just like
+        // the sampling job would leave it for an empty input
+        Path quantFile = new Path(mro.getQuantFile());
+        RecordWriter<WritableComparable, Tuple> writer;
+        if (Utils.tmpFileCompression(pigContext)) {
+            writer = new TFileRecordWriter(quantFile,
+                    Utils.tmpFileCompressionCodec(pigContext), conf);
+        } else {
+            writer = new InterRecordWriter(quantFile.getFileSystem(conf).create(quantFile, false));
+        }
+        if (quantiles != null) {
+            Tuple t = TupleFactory.getInstance().newTuple(1);
+            t.set(0, quantiles);
+            writer.write(null, t);
+        }
+        writer.close(null);
+    }
+
     private static String addSingleFileToDistributedCache(
             PigContext pigContext, Configuration conf, String filename,
             String prefix) throws IOException {
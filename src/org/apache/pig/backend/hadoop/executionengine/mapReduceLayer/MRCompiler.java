@@ -49,6 +49,7 @@ import org.apache.pig.PigWarning;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
 import org.apache.pig.backend.hadoop.executionengine.HExecutionEngine;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners.QuantileSketch;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.ScalarPhyFinder;
@@ -76,12 +77,15 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage.PackageType;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackageLite;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialDistinct;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartitionRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POQuantileSketch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSkewedJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSort;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POTopN;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POUnion;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
 import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
@@ -190,6 +194,23 @@ public class MRCompiler extends PhyPlanVisitor {
     
     public static final String FILE_CONCATENATION_THRESHOLD = "pig.files.concatenation.threshold";
     public static final String OPTIMISTIC_FILE_CONCATENATION = "pig.optimistic.files.concatenation";
+
+    /**
+     * If set to true, the job producing the input of an ORDER BY also builds
+     * a quantile sketch of the sort keys, and the sort job uses it instead of
+     * running a separate sampling job over its input.
+     */
+    public static final String ORDERBY_SKETCH = "pig.exec.orderby.sketch";
+    public static final String ORDERBY_SKETCH_SIZE = "pig.exec.orderby.sketch.size";
+
+    /**
+     * The largest limit of an ORDER BY followed by a LIMIT that is run in a
+     * single job, where each map keeps its first tuples in a bounded heap
+     * and one reducer sorts them, instead of a sampling job and a total
+     * order sort. 0 turns it off.
+     */
+    public static final String ORDERBY_TOPN_MAX = "pig.exec.orderby.topn.max";
+    private static final String DEFAULT_ORDERBY_TOPN_MAX = "1000";
     
     private int fileConcatenationThreshold = 100;
     private boolean optimisticFileConcatenation = false;
@@ -1795,6 +1816,17 @@ public class MRCompiler extends PhyPlanVisitor {
             lr.setResultType(DataType.TUPLE);
             lr.setDistinct(true);
             
+            // drop the duplicates in the map already, before they are
+            // sorted and spilled
+            boolean doMapDistinct = Boolean.valueOf(pigContext.getProperties()
+                    .getProperty(MapReduceLauncher.PROP_EXEC_MAP_DISTINCT, "false"));
+            if (doMapDistinct && !pigContext.inIllustrator) {
+                POPartialDistinct partialDistinct = new POPartialDistinct(
+                        new OperatorKey(scope,nig.getNextNodeId(scope)));
+                partialDistinct.setAlias(op.getAlias());
+                addToMap(partialDistinct);
+            }
+            
             addToMap(lr);
             
             blocking(op);
@@ -2001,15 +2033,33 @@ public class MRCompiler extends PhyPlanVisitor {
     @Override
     public void visitSort(POSort op) throws VisitorException {
         try{
+            if (isTopN(op)) {
+                curMROp = getTopNJob(op);
+                phyToMROpMap.put(op, curMROp);
+                return;
+            }
             FileSpec fSpec = getTempFileSpec();
-            MapReduceOper mro = endSingleInputPlanWithStr(fSpec);
+            FileSpec sketchFile = null;
+            MapReduceOper mro;
+            if (canSketchSortInput(op)) {
+                sketchFile = getTempFileSpec();
+                mro = endSingleInputPlanWithSketch(op, fSpec, sketchFile);
+            } else {
+                mro = endSingleInputPlanWithStr(fSpec);
+            }
             FileSpec quantFile = getTempFileSpec();
             int rp = op.getRequestedParallelism();
             Pair<POProject, Byte>[] fields = getSortCols(op.getSortPlans());
-            Pair<MapReduceOper, Integer> quantJobParallelismPair = 
-                getQuantileJob(op, mro, fSpec, quantFile, rp);
-            curMROp = getSortJob(op, quantJobParallelismPair.first, fSpec, quantFile, 
-                    quantJobParallelismPair.second, fields);
+            if (sketchFile != null) {
+                curMROp = getSortJob(op, mro, fSpec, quantFile, 
+                        getSortParallelism(rp), fields);
+                curMROp.setQuantSketchFile(sketchFile.getFileName());
+            } else {
+                Pair<MapReduceOper, Integer> quantJobParallelismPair = 
+                    getQuantileJob(op, mro, fSpec, quantFile, rp);
+                curMROp = getSortJob(op, quantJobParallelismPair.first, fSpec, quantFile, 
+                        quantJobParallelismPair.second, fields);
+            }
             
             if(op.isUDFComparatorUsed){
                 curMROp.UDFs.add(op.getMSortFunc().getFuncSpec().toString());
@@ -2022,6 +2072,175 @@ public class MRCompiler extends PhyPlanVisitor {
             throw new MRCompilerException(msg, errCode, PigException.BUG, e);
         }
     }
+
+    /**
+     * Checks whether the sort is followed by a limit small enough for the
+     * first tuples of each map to be sorted by a single reducer.
+     */
+    private boolean isTopN(POSort sort) {
+        long max = Long.parseLong(pigContext.getProperties().getProperty(
+                ORDERBY_TOPN_MAX, DEFAULT_ORDERBY_TOPN_MAX));
+        return sort.isLimited() && sort.getLimit() <= max
+                && !sort.isUDFComparatorUsed && !pigContext.inIllustrator
+                && compiledInputs.length == 1
+                && !(compiledInputs[0] instanceof NativeMapReduceOper);
+    }
+
+    /**
+     * Compiles a sort followed by a small limit into a single job:
+     * <p>
+     *     ... - POTopN - POLocalRearrange(sort keys)
+     *     POPackageLite - POForEach(flatten) - POLimit
+     * <p>
+     * Each map keeps its first tuples in the order of the sort in a
+     * {@link POTopN}, and a single reducer gets them sorted on the sort keys
+     * and applies the limit. If the input is produced by a reduce phase,
+     * that reduce keeps its first tuples too before they are stored.
+     */
+    private MapReduceOper getTopNJob(POSort sort) throws PlanException,
+            VisitorException, IOException, CloneNotSupportedException {
+        MapReduceOper mro = compiledInputs[0];
+        if (mro.isMapDone()) {
+            if (!mro.isReduceDone()) {
+                POSort topNSort = sort.clone();
+                topNSort.setLimit(sort.getLimit());
+                POTopN topN = new POTopN(new OperatorKey(scope, nig.getNextNodeId(scope)),
+                        topNSort);
+                topN.setAlias(sort.getAlias());
+                mro.reducePlan.addAsLeaf(topN);
+            }
+            FileSpec fSpec = getTempFileSpec();
+            mro = startNew(fSpec, endSingleInputPlanWithStr(fSpec));
+        }
+        POSort topNSort = sort.clone();
+        topNSort.setLimit(sort.getLimit());
+        POTopN topN = new POTopN(new OperatorKey(scope, nig.getNextNodeId(scope)), topNSort);
+        topN.setAlias(sort.getAlias());
+        mro.mapPlan.addAsLeaf(topN);
+
+        byte keyType = DataType.TUPLE;
+        if (getSortCols(sort.getSortPlans()) != null && sort.getSortPlans().size() == 1) {
+            FindKeyTypeVisitor fktv = new FindKeyTypeVisitor(sort.getSortPlans().get(0));
+            fktv.visit();
+            keyType = fktv.keyType;
+        }
+        POLocalRearrange lr = new POLocalRearrange(new OperatorKey(scope,nig.getNextNodeId(scope)));
+        try {
+            lr.setIndex(0);
+        } catch (ExecException e) {
+            int errCode = 2058;
+            String msg = "Unable to set index on newly created POLocalRearrange.";
+            throw new PlanException(msg, errCode, PigException.BUG, e);
+        }
+        lr.setKeyType(keyType);
+        lr.setPlans(sort.getSortPlans());
+        lr.setResultType(DataType.TUPLE);
+        lr.setAlias(sort.getAlias());
+        mro.mapPlan.addAsLeaf(lr);
+        mro.setMapDone(true);
+
+        POPackageLite pkg = new POPackageLite(new OperatorKey(scope,nig.getNextNodeId(scope)));
+        pkg.setKeyType(keyType);
+        pkg.setNumInps(1);
+        mro.reducePlan.add(pkg);
+        POForEach fe = MRUtil.getPlainForEachOP(scope, nig);
+        mro.reducePlan.addAsLeaf(fe);
+        mro.phyToMRMap.put(sort, fe);
+        POLimit limit = new POLimit(new OperatorKey(scope,nig.getNextNodeId(scope)));
+        limit.setLimit(sort.getLimit());
+        mro.reducePlan.addAsLeaf(limit);
+
+        List<Boolean> ascCols = sort.getMAscCols();
+        boolean[] sortOrder = new boolean[ascCols.size()];
+        for (int i = 0; i < sortOrder.length; i++) {
+            sortOrder[i] = ascCols.get(i);
+        }
+        mro.setSortOrder(sortOrder);
+        mro.setLimitAfterSort(true);
+        mro.limit = sort.getLimit();
+        mro.requestedParallelism = 1;
+        return mro;
+    }
+
+    /**
+     * Checks whether the sort keys can be sketched by the job producing the
+     * input of the sort. This is only worth it if that job has a reduce
+     * phase: otherwise the sampler can read the original input directly
+     * (see {@link SampleOptimizer}) and nothing is saved.
+     */
+    private boolean canSketchSortInput(POSort sort) throws PlanException, ExecException {
+        if (!"true".equals(pigContext.getProperties().getProperty(ORDERBY_SKETCH, "false"))) {
+            return false;
+        }
+        if (compiledInputs.length != 1 || sort.isUDFComparatorUsed) {
+            return false;
+        }
+        MapReduceOper mro = compiledInputs[0];
+        if (mro instanceof NativeMapReduceOper || !mro.isMapDone() || mro.isReduceDone()
+                || mro.isGlobalSort() || mro.isSampler() || mro.isSkewedJoin()) {
+            return false;
+        }
+        Pair<POProject, Byte>[] sortCols = getSortCols(sort.getSortPlans());
+        if (sortCols != null) {
+            for (Pair<POProject, Byte> sortCol : sortCols) {
+                if (sortCol.first == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ends the reduce plan of the single compiled input with a split that
+     * stores the input of the sort into fSpec and a sketch of its sort keys
+     * into sketchFile.
+     * @param sort the sort whose input is being stored
+     * @param fSpec temp file the input of the sort is stored into
+     * @param sketchFile temp file the per task quantile sketches are stored into
+     * @return MR operator that now is finished with the stores
+     * @throws PlanException
+     * @throws VisitorException
+     */
+    private MapReduceOper endSingleInputPlanWithSketch(POSort sort, FileSpec fSpec,
+            FileSpec sketchFile) throws PlanException, VisitorException {
+        MapReduceOper mro = compiledInputs[0];
+
+        POStore str = getStore();
+        str.setSFile(fSpec);
+        PhysicalPlan storePlan = new PhysicalPlan();
+        storePlan.add(str);
+
+        List<Boolean> flat = new ArrayList<Boolean>();
+        List<PhysicalPlan> eps = getSortColProjections(sort, flat);
+        POForEach nfe = new POForEach(new OperatorKey(scope,nig.getNextNodeId(scope)),-1,eps,flat);
+
+        List<Boolean> ascCols = sort.getMAscCols();
+        String[] ascs = new String[ascCols.size()];
+        for (int i = 0; i < ascCols.size(); i++) ascs[i] = ascCols.get(i).toString();
+        POQuantileSketch sketch = new POQuantileSketch(
+                new OperatorKey(scope,nig.getNextNodeId(scope)), ascs);
+        sketch.setSketchSize(Integer.parseInt(pigContext.getProperties().getProperty(
+                ORDERBY_SKETCH_SIZE, Integer.toString(QuantileSketch.DEFAULT_K))));
+        sketch.setAlias(sort.getAlias());
+
+        POStore sketchStr = getStore();
+        sketchStr.setSFile(sketchFile);
+
+        PhysicalPlan sketchPlan = new PhysicalPlan();
+        sketchPlan.add(nfe);
+        sketchPlan.add(sketch);
+        sketchPlan.add(sketchStr);
+        sketchPlan.connect(nfe, sketch);
+        sketchPlan.connect(sketch, sketchStr);
+
+        POSplit split = new POSplit(new OperatorKey(scope,nig.getNextNodeId(scope)));
+        split.addPlan(storePlan);
+        split.addPlan(sketchPlan);
+        mro.reducePlan.addAsLeaf(split);
+        mro.setReduceDone(true);
+        return mro;
+    }
     
 
     private Pair<POProject,Byte> [] getSortCols(List<PhysicalPlan> plans) throws PlanException, ExecException {
@@ -2244,6 +2463,96 @@ public class MRCompiler extends PhyPlanVisitor {
         return getSamplingJob(sort, prevJob, null, lFile, quantFile, rp, null, FindQuantiles.class.getName(), ctorArgs, RandomSampleLoader.class.getName());
     }
     
+    /**
+     * Creates the plans which project the sort key columns out of the input
+     * of a sort, flattened so that the result is a tuple of the keys.
+     * @param sort the sort operator
+     * @param flat list to which the flatten flags of the plans are added
+     * @return the projection plans
+     * @throws PlanException
+     * @throws VisitorException
+     */
+    private List<PhysicalPlan> getSortColProjections(POSort sort, List<Boolean> flat)
+            throws PlanException, VisitorException {
+        List<PhysicalPlan> eps = new ArrayList<PhysicalPlan>();
+        Pair<POProject, Byte>[] sortProjs = null;
+        try{
+            sortProjs = getSortCols(sort.getSortPlans());
+        }catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+        // Set up the projections of the key columns 
+        if (sortProjs == null) {
+            PhysicalPlan ep = new PhysicalPlan();
+            POProject prj = new POProject(new OperatorKey(scope,
+                nig.getNextNodeId(scope)));
+            prj.setStar(true);
+            prj.setOverloaded(false);
+            prj.setResultType(DataType.TUPLE);
+            ep.add(prj);
+            eps.add(ep);
+            flat.add(true);
+        } else {
+            for (Pair<POProject, Byte> sortProj : sortProjs) {
+                // Check for proj being null, null is used by getSortCols for a non POProject
+                // operator. Since Order by does not allow expression operators, 
+                //it should never be set to null
+                if(sortProj == null){
+                    int errCode = 2174;
+                    String msg = "Internal exception. Could not create a sampler job";
+                    throw new MRCompilerException(msg, errCode, PigException.BUG);
+                }
+                PhysicalPlan ep = new PhysicalPlan();
+                POProject prj;
+                try {
+                    prj = sortProj.first.clone();
+                } catch (CloneNotSupportedException e) {
+                    //should not get here
+                    throw new AssertionError(
+                            "Error cloning project caught exception" + e
+                    );
+                }
+                ep.add(prj);
+                eps.add(ep);
+                flat.add(true);
+            }
+        }
+        return eps;
+    }
+
+    /**
+     * Returns the degree of parallelism of the final order by map-reduce
+     * job. This will either come from a "order by parallel x" in the script
+     * or will be the default number of reducers for the cluster if
+     * "parallel x" is not used in the script
+     * @param rp the requested parallelism
+     * @return the parallelism for the sort job
+     * @throws MRCompilerException
+     */
+    private int getSortParallelism(int rp) throws MRCompilerException {
+        int val = rp;
+        if(val<=0){
+            HExecutionEngine eng = pigContext.getExecutionEngine();
+            if(pigContext.getExecType() != ExecType.LOCAL){
+                try {
+                    if(val<=0)
+                        val = pigContext.defaultParallel;
+                    if (val<=0)
+                        val = eng.getJobConf().getNumReduceTasks();
+                    if (val<=0)
+                        val = 1;
+                } catch (Exception e) {
+                    int errCode = 6015;
+                    String msg = "Problem getting the default number of reduces from the Job Client.";
+                    throw new MRCompilerException(msg, errCode, PigException.REMOTE_ENVIRONMENT, e);
+                }
+            } else {
+            	val = 1; // local mode, set it to 1
+            }
+        }
+        return (rp <= 0 ? val : rp);
+    }
+
     /**
      * Create Sampling job for skewed join.
      */
@@ -2350,49 +2659,8 @@ public class MRCompiler extends PhyPlanVisitor {
         List<PhysicalPlan> eps1 = new ArrayList<PhysicalPlan>();
         
         // if transform plans are not specified, project the columns of sorting keys
-        if (transformPlans == null) {        	
-            Pair<POProject, Byte>[] sortProjs = null;
-            try{
-            	sortProjs = getSortCols(sort.getSortPlans());
-            }catch(Exception e) {
-            	throw new RuntimeException(e);
-            }
-            // Set up the projections of the key columns 
-            if (sortProjs == null) {
-                PhysicalPlan ep = new PhysicalPlan();
-                POProject prj = new POProject(new OperatorKey(scope,
-                    nig.getNextNodeId(scope)));
-                prj.setStar(true);
-                prj.setOverloaded(false);
-                prj.setResultType(DataType.TUPLE);
-                ep.add(prj);
-                eps1.add(ep);
-                flat1.add(true);
-            } else {
-                for (Pair<POProject, Byte> sortProj : sortProjs) {
-                    // Check for proj being null, null is used by getSortCols for a non POProject
-                    // operator. Since Order by does not allow expression operators, 
-                    //it should never be set to null
-                    if(sortProj == null){
-                        int errCode = 2174;
-                        String msg = "Internal exception. Could not create a sampler job";
-                        throw new MRCompilerException(msg, errCode, PigException.BUG);
-                    }
-                    PhysicalPlan ep = new PhysicalPlan();
-                    POProject prj;
-                    try {
-                        prj = sortProj.first.clone();
-                    } catch (CloneNotSupportedException e) {
-                        //should not get here
-                        throw new AssertionError(
-                                "Error cloning project caught exception" + e
-                        );
-                    }
-                    ep.add(prj);
-                    eps1.add(ep);
-                    flat1.add(true);
-                }
-            }
+        if (transformPlans == null) {
+            eps1.addAll(getSortColProjections(sort, flat1));
         }else{
             for(int i=0; i<transformPlans.size(); i++) {
                 eps1.add(transformPlans.get(i));
@@ -2513,27 +2781,7 @@ public class MRCompiler extends PhyPlanVisitor {
         PhysicalPlan rpep = new PhysicalPlan();
         ConstantExpression rpce = new ConstantExpression(new OperatorKey(scope,nig.getNextNodeId(scope)));
         rpce.setRequestedParallelism(rp);
-        int val = rp;
-        if(val<=0){
-            HExecutionEngine eng = pigContext.getExecutionEngine();
-            if(pigContext.getExecType() != ExecType.LOCAL){
-                try {
-                    if(val<=0)
-                        val = pigContext.defaultParallel;
-                    if (val<=0)
-                        val = eng.getJobConf().getNumReduceTasks();
-                    if (val<=0)
-                        val = 1;
-                } catch (Exception e) {
-                    int errCode = 6015;
-                    String msg = "Problem getting the default number of reduces from the Job Client.";
-                    throw new MRCompilerException(msg, errCode, PigException.REMOTE_ENVIRONMENT, e);
-                }
-            } else {
-            	val = 1; // local mode, set it to 1
-            }
-        }
-        int parallelismForSort = (rp <= 0 ? val : rp);
+        int parallelismForSort = getSortParallelism(rp);
         rpce.setValue(parallelismForSort);
         
         rpce.setResultType(DataType.INTEGER);
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.PlanException;
+import org.apache.pig.impl.plan.ReverseDependencyOrderWalker;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.plan.optimizer.OptimizerException;
+
+/**
+ * An optimizer that merges a map-only MapReduceOper into the MapReduceOper
+ * it reads from, when that is its only input and it is the only reader of
+ * the temporary file in between:
+ * <p>
+ *     ... - POStore(tmp)     (reduce plan of the predecessor, or its map
+ *                             plan if it is map-only)
+ *     POLoad(tmp) - ...      (map plan of the map-only successor)
+ * <p>
+ * The store/load pair is removed and the map plan of the successor is
+ * attached to the predecessor, so the data is not written to and read
+ * back from HDFS.  The MultiQueryOptimizer already does this for the
+ * splittees of a split; this handles the other job boundaries, such as
+ * those left when the multi-query optimization is turned off.  This has
+ * to run after the MultiQueryOptimizer and the NoopStoreRemover, and
+ * before the EndOfAllInputSetter, since streams can move from the map to
+ * the reduce.
+ */
+class MapOnlySuccessorOptimizer extends MROpPlanVisitor {
+
+    private Log log = LogFactory.getLog(getClass());
+
+    private int numMerges = 0;
+
+    MapOnlySuccessorOptimizer(MROperPlan plan) {
+        super(plan, new ReverseDependencyOrderWalker<MapReduceOper, MROperPlan>(plan));
+    }
+
+    @Override
+    public void visit() throws VisitorException {
+        super.visit();
+        if (numMerges > 0) {
+            log.info("Merged " + numMerges + " map-only successors into their predecessors.");
+        }
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        // the successors were visited first, so they have already taken
+        // in their own map-only successors
+        List<MapReduceOper> succs = getPlan().getSuccessors(mr);
+        if (succs == null || succs.size() != 1) {
+            return;
+        }
+        MapReduceOper succ = succs.get(0);
+        if (!isMergeable(mr, succ)) {
+            return;
+        }
+
+        PhysicalPlan pl = isMapOnly(mr) ? mr.mapPlan : mr.reducePlan;
+        POStore store = (POStore)pl.getLeaves().get(0);
+        List<PhysicalOperator> storePreds = new ArrayList<PhysicalOperator>(
+                pl.getPredecessors(store));
+        PhysicalPlan succPl = succ.mapPlan;
+        succPl.remove(succPl.getRoots().get(0));
+        pl.remove(store);
+
+        try {
+            pl.merge(succPl);
+            for (PhysicalOperator pred : storePreds) {
+                for (PhysicalOperator root : succPl.getRoots()) {
+                    pl.connect(pred, root);
+                }
+            }
+        } catch (PlanException e) {
+            int errCode = 2130;
+            String msg = "Internal Error. Unable to merge map-only job into its predecessor.";
+            throw new OptimizerException(msg, errCode, PigException.BUG, e);
+        }
+
+        removeAndReconnect(succ, mr);
+        numMerges++;
+    }
+
+    private boolean isMergeable(MapReduceOper mr, MapReduceOper succ) {
+        if (mr instanceof NativeMapReduceOper || succ instanceof NativeMapReduceOper
+                || !isMapOnly(succ) || mr.isSampler() || mr.isIndexer()
+                || getPlan().getPredecessors(succ).size() != 1) {
+            return false;
+        }
+        // a scalar can be read from the same file the job loads
+        if (!succ.scalars.isEmpty()) {
+            return false;
+        }
+
+        PhysicalPlan pl = isMapOnly(mr) ? mr.mapPlan : mr.reducePlan;
+        if (pl.getLeaves().size() != 1 || !(pl.getLeaves().get(0) instanceof POStore)) {
+            return false;
+        }
+        POStore store = (POStore)pl.getLeaves().get(0);
+        if (!store.isTmpStore()) {
+            return false;
+        }
+
+        List<PhysicalOperator> roots = succ.mapPlan.getRoots();
+        if (roots.size() != 1 || !(roots.get(0) instanceof POLoad)) {
+            return false;
+        }
+        // a job that only copies a temporary file to another one is there
+        // to concatenate the many outputs of the reducers into fewer files
+        List<PhysicalOperator> leaves = succ.mapPlan.getLeaves();
+        if (succ.mapPlan.size() == 2 && leaves.get(0) instanceof POStore
+                && ((POStore)leaves.get(0)).isTmpStore()) {
+            return false;
+        }
+        FileSpec lFile = ((POLoad)roots.get(0)).getLFile();
+        FileSpec sFile = store.getSFile();
+        return lFile.getFileName().equals(sFile.getFileName())
+                && lFile.getFuncSpec().equals(sFile.getFuncSpec());
+    }
+
+    private void removeAndReconnect(MapReduceOper succ, MapReduceOper mr)
+            throws VisitorException {
+        List<MapReduceOper> succsCopy = null;
+        if (getPlan().getSuccessors(succ) != null) {
+            succsCopy = new ArrayList<MapReduceOper>(getPlan().getSuccessors(succ));
+        }
+        getPlan().remove(succ);
+        if (succsCopy != null) {
+            for (MapReduceOper s : succsCopy) {
+                try {
+                    getPlan().connect(mr, s);
+                } catch (PlanException e) {
+                    int errCode = 2133;
+                    String msg = "Internal Error. Unable to connect map plan with successors for optimization.";
+                    throw new OptimizerException(msg, errCode, PigException.BUG, e);
+                }
+            }
+        }
+
+        if (succ.isEndOfAllInputSetInMap()) {
+            if (isMapOnly(mr)) {
+                mr.setEndOfAllInputInMap(true);
+            } else {
+                mr.setEndOfAllInputInReduce(true);
+            }
+        }
+        if (!succ.UDFs.isEmpty()) {
+            mr.UDFs.addAll(succ.UDFs);
+        }
+    }
+
+    private boolean isMapOnly(MapReduceOper mr) {
+        return mr.reducePlan.isEmpty();
+    }
+}
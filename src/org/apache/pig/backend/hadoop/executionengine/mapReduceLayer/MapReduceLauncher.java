@@ -84,6 +84,8 @@ public class MapReduceLauncher extends Launcher{
 
     public static final String PROP_EXEC_MAP_PARTAGG = "pig.exec.mapPartAgg";
 
+    public static final String PROP_EXEC_MAP_DISTINCT = "pig.exec.mapDistinct";
+
     
     private static final Log log = LogFactory.getLog(MapReduceLauncher.class);
  
@@ -157,6 +159,25 @@ public class MapReduceLauncher extends Launcher{
         
         JobControlCompiler jcc = new JobControlCompiler(pc, conf);
         
+        // drop the jobs whose result was cached by an earlier run
+        ResultCache resultCache = ResultCache.get(pc, conf);
+        if (resultCache != null) {
+            int cached = resultCache.substitute(mrp);
+            if (cached > 0) {
+                log.info(cached + " map-reduce job(s) replaced by cached results.");
+            }
+        }
+        
+        // drop the merge join indexing jobs whose index was kept by an
+        // earlier run
+        MergeJoinIndexCache indexCache = MergeJoinIndexCache.get(pc, conf);
+        if (indexCache != null) {
+            int indexed = indexCache.substitute(mrp);
+            if (indexed > 0) {
+                log.info(indexed + " merge join indexing job(s) replaced by persisted indexes.");
+            }
+        }
+        
         // start collecting statistics
         PigStatsUtil.startCollection(pc, jobClient, jcc, mrp); 
         
@@ -350,6 +371,14 @@ public class MapReduceLauncher extends Launcher{
                 failedJobs.addAll(jc.getFailedJobs());
             }
             
+            // before updateMROpPlan forgets which operator each job ran
+            if (resultCache != null) {
+                resultCache.store(jc.getSuccessfulJobs(), jcc.getJobMroMap());
+            }
+            if (indexCache != null) {
+                indexCache.store(jc.getSuccessfulJobs(), jcc.getJobMroMap());
+            }
+            
             int removedMROp = jcc.updateMROpPlan(completeFailedJobsInThisRun);
             
             numMRJobsCompl += removedMROp;
@@ -578,6 +607,22 @@ public class MapReduceLauncher extends Launcher{
         // NoopFilterRemover.
         NoopStoreRemover sRem = new NoopStoreRemover(plan);
         sRem.visit();
+
+        // filters an input of a join with a Bloom filter of the keys of
+        // the other, built in a job of its own
+        prop = pc.getProperties().getProperty("pig.exec.bloomjoin");
+        if (!pc.inIllustrator && "true".equals(prop)) {
+            BloomJoinOptimizer bloomJoin = new BloomJoinOptimizer(plan, pc);
+            bloomJoin.visit();
+        }
+
+        // runs map-only jobs in the reduce of the job they read from,
+        // instead of going through a temporary file
+        prop = pc.getProperties().getProperty("pig.exec.nomaponlymerge");
+        if (!pc.inIllustrator && !("true".equals(prop))) {
+            MapOnlySuccessorOptimizer mapOnly = new MapOnlySuccessorOptimizer(plan);
+            mapOnly.visit();
+        }
       
         // check whether stream operator is present
         // after MultiQueryOptimizer because it can shift streams from
@@ -591,6 +636,18 @@ public class MapReduceLauncher extends Launcher{
             AccumulatorOptimizer accum = new AccumulatorOptimizer(plan);
             accum.visit();
         }
+        
+        // let groups read once by the reducer skip copying their values
+        prop = pc.getProperties().getProperty("pig.exec.noreadoncebag");
+        if (!pc.inIllustrator && !("true".equals(prop))) {
+            ReadOnceBagOptimizer readOnce = new ReadOnceBagOptimizer(plan);
+            readOnce.visit();
+        }
+
+        // let jobs read only the columns they use of intermediate files
+        // written in blocks
+        TmpLoadProjectionOptimizer tmpLoadProjection = new TmpLoadProjectionOptimizer(plan);
+        tmpLoadProjection.visit();
         return plan;
     }
 
@@ -98,6 +98,10 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
     //The quantiles file name if globalSort is true
     String quantFile;
     
+    //The quantile sketches written by the predecessor job, from which
+    //the quantiles file is computed before this job is launched
+    String quantSketchFile;
+    
     //The sort order of the columns;
     //asc is true and desc is false
     boolean[] sortOrder;
@@ -389,6 +393,14 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
         this.quantFile = quantFile;
     }
 
+    public String getQuantSketchFile() {
+        return quantSketchFile;
+    }
+
+    public void setQuantSketchFile(String quantSketchFile) {
+        this.quantSketchFile = quantSketchFile;
+    }
+
     public void setSortOrder(boolean[] sortOrder) {
         if(null == sortOrder) return;
         this.sortOrder = new boolean[sortOrder.length];
@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.jobcontrol.Job;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PlanPrinter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.builtin.DefaultIndexableLoader;
+import org.apache.pig.impl.io.FileLocalizer;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.io.InterRecordWriter;
+import org.apache.pig.impl.io.InterStorage;
+import org.apache.pig.impl.io.ReadToEndLoader;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.ObjectSerializer;
+
+/**
+ * Keeps the indexes built for merge joins next to the right input, so later
+ * runs joining against the same data skip the indexing job.
+ * <p>
+ * The index of <code>/data/dim</code> is kept in
+ * <code>/data/.dim.pigindex/&lt;fingerprint&gt;</code>, where the fingerprint
+ * covers the loader and the plans computing the join keys. With the index,
+ * the directory holds the list of the splits the index was built from, each
+ * with the length and modification time of its file. When the splits of
+ * the input are the same, the index is used as is. When files were added
+ * after the indexed ones, only the new files are indexed and the new entries
+ * are merged into the index. Otherwise the index is built again.
+ * <p>
+ * Enabled by setting {@link #PERSIST_INDEX} to true.
+ */
+public class MergeJoinIndexCache {
+
+    private static final Log log = LogFactory.getLog(MergeJoinIndexCache.class);
+
+    public static final String PERSIST_INDEX = "pig.exec.mergejoin.persistindex";
+
+    private static final String INDEX = "index";
+
+    private static final String SPLITS = "splits";
+
+    private PigContext pc;
+
+    private Configuration conf;
+
+    // indexing jobs still to run whose index is to be persisted
+    private Map<MapReduceOper, PendingIndex> pending = new HashMap<MapReduceOper, PendingIndex>();
+
+    private static class PendingIndex {
+        // where the index goes
+        Path dir;
+        // the splits of the right input
+        List<String> splits;
+        // the number of splits already indexed, 0 unless the index is
+        // being updated
+        int numIndexed;
+        // index written by the job, JobControlCompiler takes the stores
+        // out of the plans
+        FileSpec indexFile;
+        List<POMergeJoin> joins;
+    }
+
+    private MergeJoinIndexCache(PigContext pc, Configuration conf) {
+        this.pc = pc;
+        this.conf = conf;
+    }
+
+    /**
+     * @return the index cache for this context, or null if the indexes are
+     * not to be persisted
+     */
+    public static MergeJoinIndexCache get(PigContext pc, Configuration conf) {
+        if (!"true".equals(pc.getProperties().getProperty(PERSIST_INDEX))) {
+            return null;
+        }
+        return new MergeJoinIndexCache(pc, conf);
+    }
+
+    /**
+     * Removes the indexing jobs whose index was persisted by an earlier run,
+     * and turns those whose right input grew into jobs indexing only the new
+     * files.
+     * @param plan the MR plan about to be launched
+     * @return the number of jobs removed
+     */
+    public int substitute(MROperPlan plan) throws IOException {
+        pending.clear();
+        int removed = 0;
+        for (MapReduceOper mro : new ArrayList<MapReduceOper>(plan.getKeys().values())) {
+            // the index of a temporary file would never be used again
+            if (!mro.isIndexer() || plan.getPredecessors(mro) != null) {
+                continue;
+            }
+            PendingIndex index = prepare(plan, mro);
+            if (index == null) {
+                continue;
+            }
+            List<String> indexed = readSplits(index.dir);
+            if (index.splits.equals(indexed)) {
+                log.info("Using merge join index " + index.dir);
+                setIndex(index.joins, new Path(index.dir, INDEX));
+                plan.remove(mro);
+                removed++;
+                continue;
+            }
+            if (indexed != null && indexed.size() < index.splits.size()
+                    && indexed.equals(index.splits.subList(0, indexed.size()))
+                    && indexOnlyNewSplits(mro, indexed.size(), index.splits)) {
+                log.info("Updating merge join index " + index.dir + " with "
+                        + (index.splits.size() - indexed.size()) + " new split(s)");
+                index.numIndexed = indexed.size();
+            }
+            pending.put(mro, index);
+        }
+        return removed;
+    }
+
+    /**
+     * Persists the indexes built by the successful jobs. Updated indexes
+     * are merged with the persisted entries, and the joins are pointed at
+     * the result.
+     */
+    public void store(List<Job> jobs, Map<Job, MapReduceOper> jobMroMap) throws IOException {
+        for (Job job : jobs) {
+            MapReduceOper mro = jobMroMap.get(job);
+            PendingIndex index = mro == null ? null : pending.remove(mro);
+            if (index == null) {
+                continue;
+            }
+            List<Tuple> entries = new ArrayList<Tuple>();
+            if (index.numIndexed > 0) {
+                read(new FileSpec(new Path(index.dir, INDEX).toString(),
+                        new FuncSpec(InterStorage.class.getName())), entries);
+            }
+            read(index.indexFile, entries);
+            if (index.numIndexed > 0) {
+                // both are sorted, the new splits come after the old ones
+                // among the entries with the same key
+                Collections.sort(entries, new IndexEntryComparator());
+            }
+            Path merged = FileLocalizer.getTemporaryPath(pc);
+            write(entries, merged);
+            if (index.numIndexed > 0) {
+                setIndex(index.joins, merged);
+            }
+            persist(index, merged);
+        }
+    }
+
+    private PendingIndex prepare(MROperPlan plan, MapReduceOper mro) throws IOException {
+        POStore store = getStore(mro);
+        POLoad load = (POLoad)mro.mapPlan.getRoots().get(0);
+        List<MapReduceOper> succs = plan.getSuccessors(mro);
+        if (store == null || succs == null) {
+            return null;
+        }
+        PendingIndex index = new PendingIndex();
+        index.indexFile = store.getSFile();
+        index.joins = new ArrayList<POMergeJoin>();
+        for (MapReduceOper succ : succs) {
+            MergeJoinFinder finder = new MergeJoinFinder(succ.mapPlan);
+            finder.visit();
+            for (POMergeJoin join : finder.joins) {
+                if (index.indexFile.getFileName().equals(join.getIndexFile())) {
+                    index.joins.add(join);
+                }
+            }
+        }
+        if (index.joins.isEmpty()) {
+            return null;
+        }
+
+        String location = load.getLFile().getFileName();
+        String[] args = load.getLFile().getFuncSpec().getCtorArgs();
+        if (!isPlainPath(location)) {
+            return null;
+        }
+        Path input = new Path(location);
+        if (input.getParent() == null) {
+            return null;
+        }
+        index.dir = new Path(new Path(input.getParent(), "." + input.getName() + ".pigindex"),
+                fingerprint(args));
+        try {
+            index.splits = getSplits(args[0], args[3], location);
+        } catch (IOException e) {
+            log.debug("Cannot get the splits of " + location, e);
+            return null;
+        } catch (InterruptedException e) {
+            log.debug("Cannot get the splits of " + location, e);
+            return null;
+        }
+        return index.splits == null ? null : index;
+    }
+
+    /**
+     * The index depends on the loader, the plan the right input goes
+     * through and the plans computing the keys.
+     */
+    private String fingerprint(String[] indexerArgs) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(indexerArgs[0]).append('\n');
+        @SuppressWarnings("unchecked")
+        List<PhysicalPlan> keyPlans = (List<PhysicalPlan>)ObjectSerializer.deserialize(indexerArgs[1]);
+        for (PhysicalPlan keyPlan : keyPlans) {
+            sb.append(printPlan(keyPlan));
+        }
+        PhysicalPlan pipeline = (PhysicalPlan)ObjectSerializer.deserialize(indexerArgs[2]);
+        if (pipeline != null) {
+            sb.append(printPlan(pipeline));
+        }
+        sb.append("ignore nulls: ").append(indexerArgs[5]);
+        return ResultCache.md5(ResultCache.stripKeys(sb.toString()));
+    }
+
+    /**
+     * @return the splits of the input as the right loader of the join
+     * computes them, or null if they are not all file splits
+     */
+    private List<String> getSplits(String loaderSpec, String signature, String location)
+            throws IOException, InterruptedException {
+        LoadFunc loader = (LoadFunc)PigContext.instantiateFuncFromSpec(loaderSpec);
+        loader.setUDFContextSignature(signature);
+        org.apache.hadoop.mapreduce.Job job =
+                new org.apache.hadoop.mapreduce.Job(new Configuration(conf));
+        loader.setLocation(location, job);
+        List<InputSplit> splits = loader.getInputFormat().getSplits(
+                HadoopShims.createJobContext(job.getConfiguration(), new JobID()));
+
+        List<String> result = new ArrayList<String>();
+        Map<Path, FileStatus> statuses = new HashMap<Path, FileStatus>();
+        for (InputSplit split : splits) {
+            if (!(split instanceof FileSplit)) {
+                return null;
+            }
+            FileSplit fileSplit = (FileSplit)split;
+            Path path = fileSplit.getPath();
+            FileStatus status = statuses.get(path);
+            if (status == null) {
+                status = path.getFileSystem(conf).getFileStatus(path);
+                statuses.put(path, status);
+            }
+            result.add(path + "\t" + fileSplit.getStart() + "\t" + fileSplit.getLength()
+                    + "\t" + status.getLen() + "\t" + status.getModificationTime());
+        }
+        return result;
+    }
+
+    /**
+     * Makes the indexing job read only the files of the splits after the
+     * indexed ones.
+     * @return false if the new splits are not made of whole files
+     */
+    private boolean indexOnlyNewSplits(MapReduceOper mro, int numIndexed, List<String> splits) {
+        Set<String> oldFiles = new LinkedHashSet<String>();
+        for (String split : splits.subList(0, numIndexed)) {
+            oldFiles.add(split.split("\t")[0]);
+        }
+        Set<String> newFiles = new LinkedHashSet<String>();
+        for (String split : splits.subList(numIndexed, splits.size())) {
+            String file = split.split("\t")[0];
+            if (oldFiles.contains(file) || !isPlainPath(file)) {
+                return false;
+            }
+            newFiles.add(file);
+        }
+        StringBuilder location = new StringBuilder();
+        for (String file : newFiles) {
+            if (location.length() > 0) {
+                location.append(',');
+            }
+            location.append(file);
+        }
+
+        POLoad load = (POLoad)mro.mapPlan.getRoots().get(0);
+        FuncSpec indexerSpec = load.getLFile().getFuncSpec();
+        String[] args = Arrays.copyOf(indexerSpec.getCtorArgs(), 7);
+        args[6] = Integer.toString(numIndexed);
+        load.setLFile(new FileSpec(location.toString(),
+                new FuncSpec(indexerSpec.getClassName(), args)));
+        return true;
+    }
+
+    private void setIndex(List<POMergeJoin> joins, Path indexFile) throws IOException {
+        String fileName = indexFile.getFileSystem(conf).makeQualified(indexFile).toString();
+        for (POMergeJoin join : joins) {
+            FuncSpec loaderSpec = join.getRightLoaderFuncSpec();
+            String[] args = loaderSpec.getCtorArgs().clone();
+            args[1] = fileName;
+            args[2] = InterStorage.class.getName();
+            join.setRightLoaderFuncSpec(new FuncSpec(DefaultIndexableLoader.class.getName(), args));
+            join.setIndexFile(fileName);
+        }
+    }
+
+    private List<String> readSplits(Path dir) throws IOException {
+        Path splitsFile = new Path(dir, SPLITS);
+        FileSystem fs = dir.getFileSystem(conf);
+        if (!fs.exists(splitsFile) || !fs.exists(new Path(dir, INDEX))) {
+            return null;
+        }
+        List<String> splits = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(splitsFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                splits.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return splits;
+    }
+
+    private void read(FileSpec file, List<Tuple> entries) throws IOException {
+        LoadFunc loader = (LoadFunc)PigContext.instantiateFuncFromSpec(file.getFuncSpec());
+        ReadToEndLoader reader = new ReadToEndLoader(loader, conf, file.getFileName(), 0);
+        Tuple t;
+        while ((t = reader.getNext()) != null) {
+            entries.add(t);
+        }
+    }
+
+    private void write(List<Tuple> entries, Path file) throws IOException {
+        InterRecordWriter writer = new InterRecordWriter(file.getFileSystem(conf).create(file));
+        try {
+            for (Tuple t : entries) {
+                writer.write(null, t);
+            }
+            writer.close(null);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Copies the index next to the input along with its splits. A failure
+     * only costs building the index again next time.
+     */
+    private void persist(PendingIndex index, Path merged) {
+        Path tmp = new Path(index.dir.getParent(), index.dir.getName() + ".tmp-" + System.nanoTime());
+        FileSystem fs = null;
+        try {
+            fs = index.dir.getFileSystem(conf);
+            FileUtil.copy(merged.getFileSystem(conf), merged, fs, new Path(tmp, INDEX), false, conf);
+            FSDataOutputStream out = fs.create(new Path(tmp, SPLITS));
+            try {
+                for (String split : index.splits) {
+                    out.write((split + "\n").getBytes("UTF-8"));
+                }
+            } finally {
+                out.close();
+            }
+            fs.delete(index.dir, true);
+            if (!fs.rename(tmp, index.dir)) {
+                throw new IOException("Cannot rename " + tmp + " to " + index.dir);
+            }
+            log.info("Persisted merge join index in " + index.dir);
+        } catch (IOException e) {
+            log.warn("Failed to persist merge join index in " + index.dir, e);
+            try {
+                if (fs != null) {
+                    fs.delete(tmp, true);
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static boolean isPlainPath(String location) {
+        for (char c : ",*?[]{}\\".toCharArray()) {
+            if (location.indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static POStore getStore(MapReduceOper mro) throws VisitorException {
+        List<POStore> stores = PlanHelper.getStores(mro.reducePlan);
+        return stores.size() == 1 ? stores.get(0) : null;
+    }
+
+    private static String printPlan(PhysicalPlan plan) throws VisitorException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(baos);
+        new PlanPrinter<PhysicalOperator, PhysicalPlan>(plan, ps).visit();
+        ps.flush();
+        return baos.toString();
+    }
+
+    /**
+     * Orders index entries (key0, key1, ..., position, splitIndex) on
+     * their keys.
+     */
+    private static class IndexEntryComparator implements Comparator<Tuple> {
+        @Override
+        public int compare(Tuple t1, Tuple t2) {
+            try {
+                for (int i = 0; i < t1.size() - 2; i++) {
+                    int c = DataType.compare(t1.get(i), t2.get(i));
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+                return 0;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class MergeJoinFinder extends PhyPlanVisitor {
+
+        List<POMergeJoin> joins = new ArrayList<POMergeJoin>();
+
+        MergeJoinFinder(PhysicalPlan plan) {
+            super(plan, new DepthFirstWalker<PhysicalOperator, PhysicalPlan>(plan));
+        }
+
+        @Override
+        public void visitMergeJoin(POMergeJoin join) throws VisitorException {
+            joins.add(join);
+        }
+    }
+}
@@ -59,6 +59,7 @@ public class MergeJoinIndexer  extends LoadFunc{
     private LoadFunc loader;
     private PigSplit pigSplit = null;
     private boolean ignoreNullKeys;
+    private int splitIndexOffset;
     
     /** @param funcSpec : Loader specification.
      *  @param innerPlan : This is serialized version of LR plan. We 
@@ -67,13 +68,25 @@ public class MergeJoinIndexer  extends LoadFunc{
      * @param serializedPhyPlan Serialized physical plan on right side.
      * @throws ExecException 
      */
-    @SuppressWarnings("unchecked")
     public MergeJoinIndexer(String funcSpec, String innerPlan, String serializedPhyPlan, 
             String udfCntxtSignature, String scope, String ignoreNulls) throws ExecException{
+        this(funcSpec, innerPlan, serializedPhyPlan, udfCntxtSignature, scope, ignoreNulls, "0");
+    }
+
+    /**
+     * @param splitIndexOffset : Added to the split indexes written to the index, when
+     * only the files appended to the right input since an earlier index was built are read.
+     * See {@link MergeJoinIndexCache}.
+     */
+    @SuppressWarnings("unchecked")
+    public MergeJoinIndexer(String funcSpec, String innerPlan, String serializedPhyPlan, 
+            String udfCntxtSignature, String scope, String ignoreNulls,
+            String splitIndexOffset) throws ExecException{
         
         loader = (LoadFunc)PigContext.instantiateFuncFromSpec(funcSpec);
         loader.setUDFContextSignature(udfCntxtSignature);
         this.ignoreNullKeys = Boolean.parseBoolean(ignoreNulls);
+        this.splitIndexOffset = Integer.parseInt(splitIndexOffset);
         
         try {
             List<PhysicalPlan> innerPlans = (List<PhysicalPlan>)ObjectSerializer.deserialize(innerPlan);
@@ -176,7 +189,7 @@ public class MergeJoinIndexer  extends LoadFunc{
             wrapperTuple.set(0, key);
 
         wrapperTuple.set(keysCnt, position);
-        wrapperTuple.set(keysCnt+1, pigSplit.getSplitIndex());
+        wrapperTuple.set(keysCnt+1, splitIndexOffset + pigSplit.getSplitIndex());
         firstRec = false;
         return wrapperTuple;
     }
@@ -293,6 +293,21 @@ public class PhyPlanSetter extends PhyPlanVisitor {
        poPartialAgg.setParentPlan(parent);
     }
 
+    @Override
+    public void visitQuantileSketch(POQuantileSketch quantileSketch) {
+        quantileSketch.setParentPlan(parent);
+    }
+
+    @Override
+    public void visitTopN(POTopN topN) {
+        topN.setParentPlan(parent);
+    }
+
+    @Override
+    public void visitPartialDistinct(POPartialDistinct partialDistinct) {
+        partialDistinct.setParentPlan(parent);
+    }
+
     @Override
     public void visitPOOptimizedForEach(POOptimizedForEach optimizedForEach) {
         optimizedForEach.setParentPlan(parent);
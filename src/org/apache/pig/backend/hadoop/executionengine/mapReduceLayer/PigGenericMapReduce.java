@@ -54,6 +54,7 @@ import org.apache.pig.pen.FakeRawKeyValueIterator;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
+import org.apache.pig.data.ValueDictionary;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.io.NullablePartitionWritable;
 import org.apache.pig.impl.io.NullableTuple;
@@ -109,14 +110,28 @@ public class PigGenericMapReduce {
     
     public static class Map extends PigMapBase {
 
+        // The map output collector serializes the key and the value as
+        // soon as they are written, so the same writables are reused for
+        // every record.  The illustrator keeps the written objects, so it
+        // gets new ones each time.
+        private PigNullableWritable key = null;
+
+        private NullableTuple val = new NullableTuple();
+
         @Override
         public void collect(Context oc, Tuple tuple) 
                 throws InterruptedException, IOException {
             
             Byte index = (Byte)tuple.get(0);
-            PigNullableWritable key =
-                HDataType.getWritableComparableTypes(tuple.get(1), keyType);
-            NullableTuple val = new NullableTuple((Tuple)tuple.get(2));
+            if (inIllustrator) {
+                key = HDataType.getWritableComparableTypes(tuple.get(1), keyType);
+                val = new NullableTuple((Tuple)tuple.get(2));
+            } else {
+                if (key == null || !key.setValueAsPigType(tuple.get(1))) {
+                    key = HDataType.getWritableComparableTypes(tuple.get(1), keyType);
+                }
+                val.setValueAsPigType(tuple.get(2));
+            }
             
             // Both the key and the value need the index.  The key needs it so
             // that it can be sorted on the index in addition to the key
@@ -313,6 +328,7 @@ public class PigGenericMapReduce {
                 pack = getPack(context);
             Configuration jConf = context.getConfiguration();
             SpillableMemoryManager.configure(ConfigurationUtil.toProperties(jConf));
+            ValueDictionary.configure(jConf);
             sJobContext = context;
             sJobConfInternal.set(context.getConfiguration());
             sJobConf = context.getConfiguration();
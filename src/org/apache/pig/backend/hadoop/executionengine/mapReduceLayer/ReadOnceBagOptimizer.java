@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PODistinct;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLimit;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSort;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * A visitor to optimize plans that determines if the POPackage of a group
+ * can hand its values to the POForEach after it in a ReadOnceBag, instead
+ * of copying them into a bag which may spill.  This is the case when the
+ * bag is used at most once in the foreach, by a consumer that reads it in
+ * a single forward pass:
+ * <li>flattening it</li>
+ * <li>a nested filter, limit, distinct or sort</li>
+ * <li>projecting some of its columns</li>
+ * <li>a builtin function that iterates over it once, such as COUNT</li>
+ *
+ * The accumulator is preferred when it applies, so this runs after
+ * AccumulatorOptimizer.
+ */
+public class ReadOnceBagOptimizer extends MROpPlanVisitor {
+
+    private Log log = LogFactory.getLog(getClass());
+
+    // functions whose exec iterates over the bag once, and calls nothing
+    // else on it
+    private static final Set<String> SINGLE_PASS_FUNCS = new HashSet<String>(Arrays.asList(
+            "org.apache.pig.builtin.COUNT",
+            "org.apache.pig.builtin.SUM",
+            "org.apache.pig.builtin.IntSum",
+            "org.apache.pig.builtin.LongSum",
+            "org.apache.pig.builtin.FloatSum",
+            "org.apache.pig.builtin.DoubleSum",
+            "org.apache.pig.builtin.MIN",
+            "org.apache.pig.builtin.IntMin",
+            "org.apache.pig.builtin.LongMin",
+            "org.apache.pig.builtin.FloatMin",
+            "org.apache.pig.builtin.DoubleMin",
+            "org.apache.pig.builtin.StringMin",
+            "org.apache.pig.builtin.MAX",
+            "org.apache.pig.builtin.IntMax",
+            "org.apache.pig.builtin.LongMax",
+            "org.apache.pig.builtin.FloatMax",
+            "org.apache.pig.builtin.DoubleMax",
+            "org.apache.pig.builtin.StringMax"));
+
+    public ReadOnceBagOptimizer(MROperPlan plan) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        List<PhysicalOperator> roots = mr.reducePlan.getRoots();
+        if (roots == null || roots.size() != 1) {
+            return;
+        }
+
+        // only a plain group of a single input, other packages have their
+        // own way of reading the values
+        PhysicalOperator root = roots.get(0);
+        if (!root.getClass().equals(POPackage.class)) {
+            return;
+        }
+        POPackage pkg = (POPackage)root;
+        if (pkg.isDistinct() || pkg.isAccumulative() || pkg.getNumInps() != 1) {
+            return;
+        }
+        // an inner group needs the size of the bag
+        if (pkg.getInner() != null && pkg.getInner()[0]) {
+            return;
+        }
+
+        List<PhysicalOperator> succs = mr.reducePlan.getSuccessors(pkg);
+        if (succs == null || succs.size() != 1 || !(succs.get(0) instanceof POForEach)) {
+            return;
+        }
+        POForEach foreach = (POForEach)succs.get(0);
+        if (foreach.isAccumulative()) {
+            return;
+        }
+
+        // the bag is the second field of the package output
+        int uses = 0;
+        List<PhysicalPlan> plans = foreach.getInputPlans();
+        List<Boolean> flattened = foreach.getToBeFlattened();
+        for (int i = 0; i < plans.size(); i++) {
+            PhysicalPlan plan = plans.get(i);
+            for (PhysicalOperator op : plan.getRoots()) {
+                if (!(op instanceof POProject)) {
+                    continue;
+                }
+                POProject project = (POProject)op;
+                if (project.isStar() || project.isProjectToEnd()) {
+                    return;
+                }
+                if (!project.getColumns().contains(1)) {
+                    continue;
+                }
+                if (project.getColumns().size() != 1 || ++uses > 1) {
+                    return;
+                }
+                if (!isSinglePass(plan, project, flattened.get(i))) {
+                    return;
+                }
+            }
+        }
+
+        log.info("Reducer is to read the values of " + pkg.getOperatorKey() + " once.");
+        pkg.setReadOnce(true);
+    }
+
+    private boolean isSinglePass(PhysicalPlan plan, POProject project, boolean flattened) {
+        List<PhysicalOperator> succs = plan.getSuccessors(project);
+        if (succs == null) {
+            // the bag is output as it is, unless it is flattened
+            return flattened;
+        }
+        if (succs.size() != 1) {
+            return false;
+        }
+        PhysicalOperator succ = succs.get(0);
+
+        // nested relational operators pull the tuples one by one
+        if (succ instanceof POFilter || succ instanceof POLimit
+                || succ instanceof PODistinct || succ instanceof POSort) {
+            return true;
+        }
+
+        // projecting columns of the bag builds a new bag
+        if (succ instanceof POProject) {
+            return !((POProject)succ).isStar();
+        }
+
+        if (succ instanceof POUserFunc) {
+            String className = ((POUserFunc)succ).getFuncSpec().getClassName();
+            return SINGLE_PASS_FUNCS.contains(className)
+                    && succ.getInputs().size() == 1
+                    && project.getResultType() == DataType.BAG;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,546 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.jobcontrol.Job;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.UDFFinder;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PlanPrinter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PONative;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartitionRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.builtin.Nondeterministic;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * A cache of intermediate results shared between runs. Jobs writing only a
+ * temporary file are fingerprinted from their plans and the status of the
+ * files they read. When a job with the same fingerprint completed in an
+ * earlier run, the job is dropped and its successors read the copy kept in
+ * the cache directory instead. Otherwise the output of the job is copied
+ * into the cache once it succeeds.
+ * <p>
+ * The cache is enabled by setting {@link #CACHE_DIR}. Entries are evicted
+ * least recently used first once the cache grows over
+ * {@link #CACHE_MAX_BYTES}.
+ */
+public class ResultCache {
+
+    private static final Log log = LogFactory.getLog(ResultCache.class);
+
+    public static final String CACHE_DIR = "pig.exec.resultcache.dir";
+
+    public static final String CACHE_MAX_BYTES = "pig.exec.resultcache.maxbytes";
+
+    public static final long DEFAULT_CACHE_MAX_BYTES = 10L * 1024 * 1024 * 1024;
+
+    // touched on every hit, its modification time orders the eviction
+    private static final String LAST_USED = "_lastused";
+
+    private Configuration conf;
+
+    private Path cacheDir;
+
+    private long maxBytes;
+
+    // fingerprints of cacheable jobs still to run, null for the others
+    private Map<MapReduceOper, String> fingerprints = new HashMap<MapReduceOper, String>();
+
+    // temporary file written by each cacheable job, JobControlCompiler
+    // takes the stores out of the plans
+    private Map<MapReduceOper, String> outputs = new HashMap<MapReduceOper, String>();
+
+    private ResultCache(Configuration conf, Path cacheDir, long maxBytes) {
+        this.conf = conf;
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the result cache configured for this context, or null if
+     * it is not enabled
+     */
+    public static ResultCache get(PigContext pc, Configuration conf) {
+        String dir = pc.getProperties().getProperty(CACHE_DIR);
+        if (dir == null || dir.length() == 0) {
+            return null;
+        }
+        long maxBytes = Long.parseLong(pc.getProperties().getProperty(
+                CACHE_MAX_BYTES, String.valueOf(DEFAULT_CACHE_MAX_BYTES)));
+        return new ResultCache(conf, new Path(dir), maxBytes);
+    }
+
+    /**
+     * Fingerprints the jobs of the plan and removes the ones whose result
+     * is in the cache, along with the jobs only feeding them.
+     * @param plan the MR plan about to be launched
+     * @return the number of jobs removed
+     */
+    public int substitute(MROperPlan plan) throws IOException {
+        fingerprints.clear();
+        outputs.clear();
+        for (MapReduceOper mro : plan) {
+            fingerprint(plan, mro);
+        }
+
+        List<MapReduceOper> hits = new ArrayList<MapReduceOper>();
+        for (MapReduceOper mro : plan) {
+            String fp = fingerprints.get(mro);
+            if (fp != null && getFileSystem().exists(new Path(cacheDir, fp))) {
+                hits.add(mro);
+            }
+        }
+        if (hits.isEmpty()) {
+            return 0;
+        }
+
+        int removed = 0;
+        for (MapReduceOper mro : hits) {
+            if (!plan.getKeys().containsKey(mro.getOperatorKey())) {
+                // already removed as it only fed another hit
+                continue;
+            }
+            String fp = fingerprints.remove(mro);
+            Path entry = new Path(cacheDir, fp);
+            touch(entry);
+            String tmpFile = outputs.get(mro);
+            String cached = getFileSystem().makeQualified(entry).toString();
+            for (MapReduceOper succ : plan.getSuccessors(mro)) {
+                for (POLoad ld : getRootLoads(succ)) {
+                    if (ld.getLFile().getFileName().equals(tmpFile)) {
+                        ld.setLFile(new FileSpec(cached, ld.getLFile().getFuncSpec()));
+                    }
+                }
+            }
+            log.info("Using cached result " + entry + " for job " + mro.getOperatorKey());
+            removed += removeWithUnusedPredecessors(plan, mro);
+        }
+        return removed;
+    }
+
+    /**
+     * Copies the output of the successful jobs which can be cached into
+     * the cache directory.
+     */
+    public void store(List<Job> jobs, Map<Job, MapReduceOper> jobMroMap) throws IOException {
+        boolean added = false;
+        FileSystem fs = getFileSystem();
+        for (Job job : jobs) {
+            MapReduceOper mro = jobMroMap.get(job);
+            String fp = mro == null ? null : fingerprints.remove(mro);
+            if (fp == null) {
+                continue;
+            }
+            Path entry = new Path(cacheDir, fp);
+            Path src = new Path(outputs.get(mro));
+            FileSystem srcFs = src.getFileSystem(conf);
+            if (fs.exists(entry) || !srcFs.exists(src)) {
+                continue;
+            }
+            // copy next to the entry first so a concurrent run never
+            // reads a partial copy
+            Path tmp = new Path(cacheDir, fp + ".tmp-" + System.nanoTime());
+            try {
+                FileUtil.copy(srcFs, src, fs, tmp, false, conf);
+                touch(tmp);
+                if (!fs.rename(tmp, entry)) {
+                    fs.delete(tmp, true);
+                    continue;
+                }
+            } catch (IOException e) {
+                log.warn("Failed to cache result of job " + mro.getOperatorKey(), e);
+                fs.delete(tmp, true);
+                continue;
+            }
+            log.info("Cached result of job " + mro.getOperatorKey() + " in " + entry);
+            added = true;
+        }
+        if (added) {
+            evict();
+        }
+    }
+
+    private String fingerprint(MROperPlan plan, MapReduceOper mro) throws IOException {
+        if (fingerprints.containsKey(mro)) {
+            return fingerprints.get(mro);
+        }
+        String fp = null;
+        try {
+            fp = computeFingerprint(plan, mro);
+        } catch (VisitorException e) {
+            log.debug("Cannot fingerprint job " + mro.getOperatorKey(), e);
+        }
+        fingerprints.put(mro, fp);
+        if (fp != null) {
+            outputs.put(mro, getStore(mro).getSFile().getFileName());
+        }
+        return fp;
+    }
+
+    private String computeFingerprint(MROperPlan plan, MapReduceOper mro) throws IOException {
+        if (!isCacheable(plan, mro)) {
+            return null;
+        }
+
+        // upstream temporary files are named after their fingerprint, so
+        // the same job gets the same fingerprint in every run
+        Map<String, String> tmpFiles = new HashMap<String, String>();
+        List<MapReduceOper> preds = plan.getPredecessors(mro);
+        if (preds != null) {
+            for (MapReduceOper pred : preds) {
+                String predFp = fingerprint(plan, pred);
+                if (predFp == null) {
+                    return null;
+                }
+                tmpFiles.put(getStore(pred).getSFile().getFileName(), predFp);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (POLoad ld : getRootLoads(mro)) {
+            String fileName = ld.getLFile().getFileName();
+            if (tmpFiles.containsKey(fileName)) {
+                continue;
+            }
+            if (!appendInputStatus(fileName, sb)) {
+                return null;
+            }
+        }
+
+        String plans = printPlan(mro);
+        plans = plans.replace(getStore(mro).getSFile().getFileName(), "");
+        for (Map.Entry<String, String> e : tmpFiles.entrySet()) {
+            plans = plans.replace(e.getKey(), e.getValue());
+        }
+        sb.append(stripKeys(plans));
+        return md5(sb.toString());
+    }
+
+    /**
+     * A job can be cached if its only output is a temporary file read by
+     * its successors through a plain load, and its result depends only on
+     * its inputs.
+     */
+    private boolean isCacheable(MROperPlan plan, MapReduceOper mro) throws IOException {
+        if (mro instanceof NativeMapReduceOper || mro.isSampler() || mro.isIndexer()
+                || mro.isSkewedJoin() || mro.isGlobalSort()
+                || mro.getQuantSketchFile() != null || !mro.scalars.isEmpty()) {
+            return false;
+        }
+        POStore store = getStore(mro);
+        if (store == null || !store.isTmpStore()) {
+            return false;
+        }
+        List<MapReduceOper> succs = plan.getSuccessors(mro);
+        if (succs == null) {
+            return false;
+        }
+        for (MapReduceOper succ : succs) {
+            boolean found = false;
+            for (POLoad ld : getRootLoads(succ)) {
+                if (ld.getLFile().getFileName().equals(store.getSFile().getFileName())) {
+                    found = true;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return isDeterministic(mro.mapPlan) && isDeterministic(mro.combinePlan)
+                && isDeterministic(mro.reducePlan);
+    }
+
+    private boolean isDeterministic(PhysicalPlan plan) throws IOException {
+        if (plan == null || plan.isEmpty()) {
+            return true;
+        }
+        SideInputFinder finder = new SideInputFinder(plan);
+        finder.visit();
+        if (finder.found) {
+            return false;
+        }
+        UDFFinder udfFinder = new UDFFinder();
+        udfFinder.setPlan(plan);
+        udfFinder.visit();
+        for (String udf : udfFinder.getUDFs()) {
+            Class<?> udfClass = PigContext.resolveClassName(new FuncSpec(udf).getClassName());
+            if (udfClass.getAnnotation(Nondeterministic.class) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the length and modification time of every file under the
+     * given load location.
+     * @return false if the location is not a file system path
+     */
+    private boolean appendInputStatus(String location, StringBuilder sb) {
+        try {
+            for (String pathStr : LoadFunc.getPathStrings(location)) {
+                Path path = new Path(pathStr);
+                FileSystem fs = path.getFileSystem(conf);
+                FileStatus[] matches = fs.globStatus(path);
+                if (matches == null || matches.length == 0) {
+                    return false;
+                }
+                for (FileStatus status : matches) {
+                    appendStatus(fs, status, sb);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Cannot get status of " + location, e);
+            return false;
+        } catch (IllegalArgumentException e) {
+            log.debug("Cannot get status of " + location, e);
+            return false;
+        }
+        return true;
+    }
+
+    private void appendStatus(FileSystem fs, FileStatus status, StringBuilder sb)
+            throws IOException {
+        if (status.isDir()) {
+            FileStatus[] children = fs.listStatus(status.getPath());
+            Arrays.sort(children);
+            for (FileStatus child : children) {
+                appendStatus(fs, child, sb);
+            }
+        } else {
+            sb.append(status.getPath()).append(':').append(status.getLen())
+                    .append(':').append(status.getModificationTime()).append('\n');
+        }
+    }
+
+    /**
+     * Removes the job from the plan, then any predecessor left without
+     * successors which only wrote temporary files.
+     */
+    private int removeWithUnusedPredecessors(MROperPlan plan, MapReduceOper mro)
+            throws VisitorException {
+        List<MapReduceOper> preds = plan.getPredecessors(mro);
+        preds = preds == null ? new ArrayList<MapReduceOper>()
+                : new ArrayList<MapReduceOper>(preds);
+        plan.remove(mro);
+        fingerprints.remove(mro);
+        int removed = 1;
+        for (MapReduceOper pred : preds) {
+            if (plan.getSuccessors(pred) == null && onlyTmpStores(pred)) {
+                removed += removeWithUnusedPredecessors(plan, pred);
+            }
+        }
+        return removed;
+    }
+
+    private boolean onlyTmpStores(MapReduceOper mro) throws VisitorException {
+        if (mro instanceof NativeMapReduceOper) {
+            return false;
+        }
+        List<POStore> stores = new ArrayList<POStore>(PlanHelper.getStores(mro.mapPlan));
+        stores.addAll(PlanHelper.getStores(mro.reducePlan));
+        for (POStore store : stores) {
+            if (!store.isTmpStore()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void evict() throws IOException {
+        FileSystem fs = getFileSystem();
+        FileStatus[] entries = fs.listStatus(cacheDir);
+        if (entries == null) {
+            return;
+        }
+        final Map<Path, Long> lastUsed = new HashMap<Path, Long>();
+        List<Path> paths = new ArrayList<Path>();
+        long total = 0;
+        for (FileStatus entry : entries) {
+            Path marker = new Path(entry.getPath(), LAST_USED);
+            if (!entry.isDir() || !fs.exists(marker)) {
+                continue;
+            }
+            lastUsed.put(entry.getPath(), fs.getFileStatus(marker).getModificationTime());
+            paths.add(entry.getPath());
+            total += fs.getContentSummary(entry.getPath()).getLength();
+        }
+        Collections.sort(paths, new Comparator<Path>() {
+            @Override
+            public int compare(Path p1, Path p2) {
+                return lastUsed.get(p1).compareTo(lastUsed.get(p2));
+            }
+        });
+        for (Path path : paths) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long length = fs.getContentSummary(path).getLength();
+            if (fs.delete(path, true)) {
+                log.info("Evicted cached result " + path);
+                total -= length;
+            }
+        }
+    }
+
+    private void touch(Path entry) throws IOException {
+        getFileSystem().create(new Path(entry, LAST_USED), true).close();
+    }
+
+    private FileSystem getFileSystem() throws IOException {
+        return cacheDir.getFileSystem(conf);
+    }
+
+    private static POStore getStore(MapReduceOper mro) throws VisitorException {
+        List<POStore> stores = new ArrayList<POStore>(PlanHelper.getStores(mro.mapPlan));
+        stores.addAll(PlanHelper.getStores(mro.reducePlan));
+        return stores.size() == 1 ? stores.get(0) : null;
+    }
+
+    private static List<POLoad> getRootLoads(MapReduceOper mro) {
+        List<POLoad> loads = new ArrayList<POLoad>();
+        for (PhysicalOperator root : mro.mapPlan.getRoots()) {
+            if (root instanceof POLoad) {
+                loads.add((POLoad)root);
+            }
+        }
+        return loads;
+    }
+
+    private static String printPlan(MapReduceOper mro) throws VisitorException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(baos);
+        PhysicalPlan[] plans = { mro.mapPlan, mro.combinePlan, mro.reducePlan };
+        for (PhysicalPlan plan : plans) {
+            ps.println("--------");
+            if (plan != null && plan.size() > 0) {
+                new PlanPrinter<PhysicalOperator, PhysicalPlan>(plan, ps).visit();
+            }
+        }
+        ps.println("Secondary sort: " + mro.getUseSecondaryKey());
+        ps.println("Partitioner: " + mro.getCustomPartitioner());
+        ps.flush();
+        return baos.toString();
+    }
+
+    /**
+     * Removes the operator keys and aliases from a printed plan, as they
+     * differ between runs of the same script
+     */
+    static String stripKeys(String plans) {
+        plans = plans.replaceAll("scope-\\d+", "");
+        return plans.replaceAll("(?m)^([|\\s-]*)[\\w$]+: ", "$1");
+    }
+
+    static String md5(String s) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] digest;
+        try {
+            digest = md.digest(s.getBytes("UTF-8"));
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Finds operators reading inputs other than the loads at the roots of
+     * the plan, or running external commands.
+     */
+    private static class SideInputFinder extends PhyPlanVisitor {
+
+        boolean found = false;
+
+        SideInputFinder(PhysicalPlan plan) {
+            super(plan, new DepthFirstWalker<PhysicalOperator, PhysicalPlan>(plan));
+        }
+
+        @Override
+        public void visitFRJoin(POFRJoin join) throws VisitorException {
+            found = true;
+        }
+
+        @Override
+        public void visitMergeJoin(POMergeJoin join) throws VisitorException {
+            found = true;
+        }
+
+        @Override
+        public void visitMergeCoGroup(POMergeCogroup mergeCoGrp) throws VisitorException {
+            found = true;
+        }
+
+        @Override
+        public void visitPartitionRearrange(POPartitionRearrange pr) throws VisitorException {
+            found = true;
+        }
+
+        @Override
+        public void visitStream(POStream stream) throws VisitorException {
+            found = true;
+        }
+
+        @Override
+        public void visitNative(PONative nat) throws VisitorException {
+            found = true;
+        }
+    }
+}
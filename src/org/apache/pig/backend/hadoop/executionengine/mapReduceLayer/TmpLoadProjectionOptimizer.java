@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.impl.io.BlockStorage;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * A visitor to optimize plans that pushes the projection of the foreach
+ * right after the load of an intermediate file into the loader, when the
+ * file was written by {@link BlockStorage}.  The loader then skips the
+ * columns the job does not use without decoding them, and the projections
+ * of the foreach are renumbered to the columns it returns.  This has to
+ * run after MultiQueryOptimizer, which merges jobs reading the same file.
+ */
+public class TmpLoadProjectionOptimizer extends MROpPlanVisitor {
+
+    private Log log = LogFactory.getLog(getClass());
+
+    public TmpLoadProjectionOptimizer(MROperPlan plan) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        for (PhysicalOperator root : mr.mapPlan.getRoots()) {
+            if (!(root instanceof POLoad)) {
+                continue;
+            }
+            POLoad load = (POLoad)root;
+            FuncSpec funcSpec = load.getLFile().getFuncSpec();
+            if (!funcSpec.getClassName().equals(BlockStorage.class.getName())
+                    || funcSpec.getCtorArgs() != null) {
+                continue;
+            }
+            List<PhysicalOperator> succs = mr.mapPlan.getSuccessors(load);
+            if (succs == null || succs.size() != 1 || !(succs.get(0) instanceof POForEach)) {
+                continue;
+            }
+
+            List<POProject> projects = new ArrayList<POProject>();
+            TreeSet<Integer> columns = new TreeSet<Integer>();
+            if (!findProjects((POForEach)succs.get(0), projects, columns)
+                    || columns.isEmpty()) {
+                continue;
+            }
+
+            // the loader returns the required columns in order
+            Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
+            StringBuilder sb = new StringBuilder();
+            for (Integer column : columns) {
+                positions.put(column, positions.size());
+                if (sb.length() > 0) sb.append(',');
+                sb.append(column);
+            }
+            for (POProject project : projects) {
+                ArrayList<Integer> renumbered = new ArrayList<Integer>();
+                for (Integer column : project.getColumns()) {
+                    renumbered.add(positions.get(column));
+                }
+                project.setColumns(renumbered);
+            }
+            load.setLFile(new FileSpec(load.getLFile().getFileName(),
+                    new FuncSpec(funcSpec.getClassName(), sb.toString())));
+            log.info("Reading columns " + sb + " of " + load.getLFile().getFileName());
+        }
+    }
+
+    /**
+     * Find the projections of the input of the foreach.
+     * @return false if the foreach needs the whole input tuple
+     */
+    private boolean findProjects(POForEach foreach, List<POProject> projects,
+            TreeSet<Integer> columns) {
+        for (PhysicalPlan plan : foreach.getInputPlans()) {
+            for (PhysicalOperator op : plan.getRoots()) {
+                if (!(op instanceof POProject)) {
+                    continue;
+                }
+                POProject project = (POProject)op;
+                if (project.isStar() || project.isProjectToEnd()) {
+                    return false;
+                }
+                projects.add(project);
+                columns.addAll(project.getColumns());
+            }
+        }
+        return true;
+    }
+}
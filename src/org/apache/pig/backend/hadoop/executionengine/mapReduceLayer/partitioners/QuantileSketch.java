@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.util.Pair;
+
+/**
+ * A mergeable quantile sketch over sort keys. The sketch keeps a hierarchy
+ * of compactors: an item in level h stands for 2^h input items. When a level
+ * holds <code>k</code> items it is sorted and every other item (starting at a
+ * random offset) is promoted to the next level, so memory stays at
+ * O(k log(n/k)) items no matter how many keys are added.
+ * <p>
+ * Sketches built independently by different tasks can be merged, and the
+ * merged sketch yields a sorted list of weighted samples where equal keys are
+ * collapsed into a single entry. That keeps heavily repeated keys down to one
+ * sample carrying their full weight, instead of many copies of the same key.
+ */
+public class QuantileSketch {
+
+    public static final int DEFAULT_K = 1024;
+
+    private final int k;
+    private final Comparator<Tuple> comparator;
+    private final Random rGen;
+    private final List<List<Tuple>> levels = new ArrayList<List<Tuple>>();
+    private long count = 0;
+
+    public QuantileSketch(int k, Comparator<Tuple> comparator) {
+        this(k, comparator, new Random());
+    }
+
+    public QuantileSketch(int k, Comparator<Tuple> comparator, Random rGen) {
+        if (k < 2) {
+            throw new IllegalArgumentException("Sketch size must be at least 2: " + k);
+        }
+        this.k = k;
+        this.comparator = comparator;
+        this.rGen = rGen;
+    }
+
+    /**
+     * @return the number of keys added to this sketch and the sketches merged into it
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of keys currently retained by the sketch
+     */
+    public int getRetained() {
+        int retained = 0;
+        for (List<Tuple> level : levels) {
+            retained += level.size();
+        }
+        return retained;
+    }
+
+    public void add(Tuple key) {
+        level(0).add(key);
+        count++;
+        compress();
+    }
+
+    /**
+     * Merges another sketch into this one. The other sketch is left unchanged.
+     */
+    public void merge(QuantileSketch other) {
+        for (int h = 0; h < other.levels.size(); h++) {
+            level(h).addAll(other.levels.get(h));
+        }
+        count += other.count;
+        compress();
+    }
+
+    /**
+     * Converts the sketch into a tuple of the form (count, {(level, key)})
+     * so that it can be written out with the intermediate storage.
+     */
+    public Tuple toTuple() throws ExecException {
+        TupleFactory tf = TupleFactory.getInstance();
+        DataBag items = BagFactory.getInstance().newDefaultBag();
+        for (int h = 0; h < levels.size(); h++) {
+            for (Tuple key : levels.get(h)) {
+                Tuple item = tf.newTuple(2);
+                item.set(0, h);
+                item.set(1, key);
+                items.add(item);
+            }
+        }
+        Tuple t = tf.newTuple(2);
+        t.set(0, count);
+        t.set(1, items);
+        return t;
+    }
+
+    /**
+     * Merges a sketch previously converted with {@link #toTuple()} into this one.
+     */
+    public void merge(Tuple sketch) throws ExecException {
+        DataBag items = (DataBag) sketch.get(1);
+        for (Tuple item : items) {
+            level((Integer) item.get(0)).add((Tuple) item.get(1));
+        }
+        count += (Long) sketch.get(0);
+        compress();
+    }
+
+    /**
+     * Returns the retained keys in sort order, each paired with the number of
+     * input keys it represents. Equal keys are collapsed into one entry. Since
+     * compaction always promotes pairs, the weights add up to
+     * {@link #getCount()}.
+     */
+    public List<Pair<Tuple, Long>> getWeightedSamples() {
+        List<Pair<Tuple, Long>> all = new ArrayList<Pair<Tuple, Long>>(getRetained());
+        for (int h = 0; h < levels.size(); h++) {
+            long weight = 1L << h;
+            for (Tuple key : levels.get(h)) {
+                all.add(new Pair<Tuple, Long>(key, weight));
+            }
+        }
+        Collections.sort(all, new Comparator<Pair<Tuple, Long>>() {
+            @Override
+            public int compare(Pair<Tuple, Long> o1, Pair<Tuple, Long> o2) {
+                return comparator.compare(o1.first, o2.first);
+            }
+        });
+
+        List<Pair<Tuple, Long>> samples = new ArrayList<Pair<Tuple, Long>>();
+        Pair<Tuple, Long> last = null;
+        for (Pair<Tuple, Long> p : all) {
+            if (last != null && comparator.compare(last.first, p.first) == 0) {
+                last.second += p.second;
+            } else {
+                last = p;
+                samples.add(last);
+            }
+        }
+        return samples;
+    }
+
+    private List<Tuple> level(int h) {
+        while (levels.size() <= h) {
+            levels.add(new ArrayList<Tuple>());
+        }
+        return levels.get(h);
+    }
+
+    private void compress() {
+        for (int h = 0; h < levels.size(); h++) {
+            if (levels.get(h).size() >= k) {
+                compact(h);
+            }
+        }
+    }
+
+    private void compact(int h) {
+        List<Tuple> level = levels.get(h);
+        Collections.sort(level, comparator);
+        // an odd item out stays behind so that the total weight is preserved
+        Tuple leftOver = null;
+        if (level.size() % 2 == 1) {
+            leftOver = level.remove(level.size() - 1);
+        }
+        List<Tuple> next = level(h + 1);
+        for (int i = rGen.nextBoolean() ? 1 : 0; i < level.size(); i += 2) {
+            next.add(level.get(i));
+        }
+        level.clear();
+        if (leftOver != null) {
+            level.add(leftOver);
+        }
+    }
+}
@@ -37,6 +37,7 @@ import org.apache.pig.backend.hadoop.HDataType;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.backend.hadoop.executionengine.util.MapRedUtil;
 import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.InternalMap;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.PigContext;
@@ -59,6 +60,11 @@ public class WeightedRangePartitioner extends Partitioner<PigNullableWritable, W
     PigNullableWritable[] quantiles;
     RawComparator<PigNullableWritable> comparator;
     PigContext pigContext;
+    // normalized prefixes of the quantiles, null if the key type has none
+    long[] prefixes;
+    // true if keys with equal prefixes are equal
+    boolean exactPrefixes;
+    boolean ascending = true;
     final public static Map<PigNullableWritable,DiscreteProbabilitySampleGenerator> weightedParts 
         = new HashMap<PigNullableWritable, DiscreteProbabilitySampleGenerator>();
     
@@ -74,16 +80,156 @@ public class WeightedRangePartitioner extends Partitioner<PigNullableWritable, W
             comparator = (RawComparator<PigNullableWritable>)PigMapReduce.sJobContext.getSortComparator();
         }
         
-        if(!weightedParts.containsKey(key)){
-            int index = Arrays.binarySearch(quantiles, key, comparator);
-            if (index < 0)
-                index = -index-1;
-            else
-                index = index + 1;
-            return Math.min(index, numPartitions - 1);
+        if (prefixes != null && hasPrefix(key)) {
+            return getPartitionFromPrefix(key, numPartitions);
+        }
+        
+        int index = Arrays.binarySearch(quantiles, key, comparator);
+        if (index < 0) {
+            return Math.min(-index-1, numPartitions - 1);
+        }
+        // only keys which are also quantiles can spread over
+        // more than one partition, so there is no need to look
+        // up weightedParts for the others
+        DiscreteProbabilitySampleGenerator gen = weightedParts.get(key);
+        if (gen != null) {
+            return gen.getNext();
+        }
+        return Math.min(index + 1, numPartitions - 1);
+    }
+
+    /**
+     * Finds the partition of a key by first searching the normalized
+     * prefixes of the quantiles. For numeric keys the prefix is the key
+     * itself, so the comparator is never used. For chararray and bytearray
+     * keys the comparator is only used on the quantiles sharing the
+     * prefix of the key.
+     */
+    private int getPartitionFromPrefix(PigNullableWritable key, int numPartitions) {
+        long prefix = getPrefix(key);
+        int lo = 0, hi = prefixes.length;
+        // first quantile which does not sort before the key
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortsBefore(prefixes[mid], prefix)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        // first quantile which sorts after the key
+        int end = lo;
+        hi = prefixes.length;
+        while (end < hi) {
+            int mid = (end + hi) >>> 1;
+            if (sortsBefore(prefix, prefixes[mid])) {
+                hi = mid;
+            } else {
+                end = mid + 1;
+            }
+        }
+        if (lo == end) {
+            return Math.min(lo, numPartitions - 1);
+        }
+        int index = end - 1;
+        if (!exactPrefixes) {
+            index = Arrays.binarySearch(quantiles, lo, end, key, comparator);
+            if (index < 0) {
+                return Math.min(-index-1, numPartitions - 1);
+            }
         }
         DiscreteProbabilitySampleGenerator gen = weightedParts.get(key);
-        return gen.getNext();
+        if (gen != null) {
+            return gen.getNext();
+        }
+        return Math.min(index + 1, numPartitions - 1);
+    }
+
+    /**
+     * @return true if the key can be compared to the quantiles by its
+     * prefix. Bytearray keys may hold other types when they come from
+     * a loader which does not return DataByteArrays.
+     */
+    private static boolean hasPrefix(PigNullableWritable key) {
+        if (key.isNull()) {
+            return false;
+        }
+        return !(key instanceof NullableBytesWritable)
+                || key.getValueAsPigType() instanceof DataByteArray;
+    }
+
+    private boolean sortsBefore(long p1, long p2) {
+        return ascending ? p1 < p2 : p1 > p2;
+    }
+
+    /**
+     * Computes a normalized prefix of a non null key, such that if a key
+     * sorts before another one in ascending order, its prefix is not larger
+     * than the prefix of the other key. Int, long, float and double keys
+     * are mapped one to one, chararray keys are reduced to their first four
+     * characters and bytearray keys to their first eight bytes.
+     * @param key the key, which must be of one of the types above and
+     * not null
+     * @return the normalized prefix of the key
+     */
+    public static long getPrefix(PigNullableWritable key) {
+        Object o = key.getValueAsPigType();
+        if (key instanceof NullableIntWritable) {
+            return (Integer)o;
+        } else if (key instanceof NullableLongWritable) {
+            return (Long)o;
+        } else if (key instanceof NullableFloatWritable) {
+            // flip the magnitude bits of negative values, so that the
+            // bits order the same way as Float.compareTo()
+            int bits = Float.floatToIntBits((Float)o);
+            return bits ^ ((bits >> 31) & 0x7fffffff);
+        } else if (key instanceof NullableDoubleWritable) {
+            long bits = Double.doubleToLongBits((Double)o);
+            return bits ^ ((bits >> 63) & 0x7fffffffffffffffL);
+        } else if (key instanceof NullableText) {
+            String s = (String)o;
+            long prefix = 0;
+            for (int i = 0; i < 4; i++) {
+                prefix = (prefix << 16) | (i < s.length() ? s.charAt(i) : 0);
+            }
+            // chars are unsigned
+            return prefix ^ Long.MIN_VALUE;
+        } else if (key instanceof NullableBytesWritable) {
+            byte[] b = ((DataByteArray)o).get();
+            long prefix = 0;
+            for (int i = 0; i < 8; i++) {
+                // bytes are compared signed, map them to 0..255
+                prefix = (prefix << 8) | (i < b.length ? (b[i] + 128) : 0);
+            }
+            return prefix ^ Long.MIN_VALUE;
+        }
+        throw new IllegalArgumentException("No normalized prefix for "
+                + key.getClass().getSimpleName());
+    }
+
+    /**
+     * Builds the prefixes of the quantiles, if the keys support it.
+     */
+    private void buildPrefixIndex() throws IOException {
+        prefixes = null;
+        if (quantiles.length == 0 || quantiles instanceof NullableTuple[]
+                || quantiles instanceof NullableBooleanWritable[]) {
+            return;
+        }
+        for (PigNullableWritable q : quantiles) {
+            if (!hasPrefix(q)) {
+                return;
+            }
+        }
+        boolean[] sortOrder = (boolean[])ObjectSerializer.deserialize(job.get("pig.sortOrder"));
+        ascending = sortOrder == null || sortOrder[0];
+        exactPrefixes = !(quantiles instanceof NullableText[]
+                || quantiles instanceof NullableBytesWritable[]);
+        long[] p = new long[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            p[i] = getPrefix(quantiles[i]);
+        }
+        prefixes = p;
     }
 
     @SuppressWarnings("unchecked")
@@ -140,6 +286,7 @@ public class WeightedRangePartitioner extends Partitioner<PigNullableWritable, W
                 quantilesList = (DataBag) quantileMap.get(FindQuantiles.QUANTILES_LIST);
                 InternalMap weightedPartsData = (InternalMap) quantileMap.get(FindQuantiles.WEIGHTED_PARTS);
                 convertToArray(quantilesList);
+                buildPrefixIndex();
                 for(Entry<Object, Object> ent : weightedPartsData.entrySet()){
                     Tuple key = (Tuple)ent.getKey(); // sample item which repeats
                     float[] probVec = getProbVec((Tuple)ent.getValue());
@@ -24,6 +24,8 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.Physica
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialAgg;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POQuantileSketch;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POTopN;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCollectedGroup;
 import org.apache.pig.impl.plan.DepthFirstWalker;
@@ -101,6 +103,16 @@ public class EndOfAllInputSetter extends MROpPlanVisitor {
             endOfAllInputFlag = true;
         }
 
+        @Override
+        public void visitQuantileSketch(POQuantileSketch quantileSketch) {
+            endOfAllInputFlag = true;
+        }
+
+        @Override
+        public void visitTopN(POTopN topN) {
+            endOfAllInputFlag = true;
+        }
+
         /**
          * @return if end of all input is present
          */
@@ -304,5 +304,14 @@ public class PhyPlanVisitor extends PlanVisitor<PhysicalOperator,PhysicalPlan> {
     public void visitPartialAgg(POPartialAgg poPartialAgg) {
     }
 
+    public void visitQuantileSketch(POQuantileSketch quantileSketch) {
+    }
+
+    public void visitTopN(POTopN topN) {
+    }
+
+    public void visitPartialDistinct(POPartialDistinct partialDistinct) {
+    }
+
 
 }
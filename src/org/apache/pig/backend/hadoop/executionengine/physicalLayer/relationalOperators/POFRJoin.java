@@ -56,6 +56,9 @@ import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.PlanException;
 import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.impl.util.ObjectSerializer;
+import org.apache.pig.impl.util.Spillable;
+import org.apache.pig.impl.util.SpillableMemoryManager;
+import org.apache.pig.impl.util.SpillableMemoryManager.MemoryBudget;
 
 /**
  * The operator models the join keys using the Local Rearrange operators which
@@ -66,11 +69,13 @@ import org.apache.pig.impl.util.ObjectSerializer;
  * value. It configures a foreach operator with the databags obtained from each
  * Hashtable for the key and also with the value for the fragment input. It then
  * returns tuples returned by this foreach operator.
+ * The Hashtables reserve the memory they hold with the memory manager, so
+ * that other consumers spill sooner, but they cannot be spilled themselves.
  */
 
 // We intentionally skip type checking in backend for performance reasons
 @SuppressWarnings("unchecked")
-public class POFRJoin extends PhysicalOperator {
+public class POFRJoin extends PhysicalOperator implements Spillable {
     private static final Log log = LogFactory.getLog(POFRJoin.class);
     /**
      * 
@@ -110,6 +115,10 @@ public class POFRJoin extends PhysicalOperator {
     // This list contains nullTuples according to schema of various inputs 
     private DataBag nullBag;
 
+    // Estimate of the memory held by the Hashtables, and its reservation
+    private transient long replicatesSize = 0;
+    private transient MemoryBudget memBudget;
+
     public POFRJoin(OperatorKey k, int rp, List<PhysicalOperator> inp,
             List<List<PhysicalPlan>> ppLists, List<List<Byte>> keyTypes,
             FileSpec[] replFiles, int fragment, boolean isLeftOuter,
@@ -334,6 +343,7 @@ public class POFRJoin extends PhysicalOperator {
                     1000);
             log.debug("Completed setup. Trying to build replication hash table");
             int cnt = 0;
+            long sampled = 0;
             for (Result res = lr.getNext(dummyTuple);res.returnStatus != POStatus.STATUS_EOP;res = lr.getNext(dummyTuple)) {
                 ++cnt;
                 if (reporter != null)
@@ -346,12 +356,34 @@ public class POFRJoin extends PhysicalOperator {
                 if (!replicate.containsKey(key))
                     replicate.put(key, new ArrayList<Tuple>(1));
                 replicate.get(key).add(value);
+                // the size of the first tuples stands for all of them
+                if (cnt <= 100) {
+                    sampled += key.getMemorySize() + value.getMemorySize();
+                }
             }
             replicates[i] = replicate;
+            if (cnt > 0) {
+                replicatesSize += sampled / Math.min(cnt, 100) * cnt;
+            }
 
         }
         long time2 = System.currentTimeMillis();
         log.debug("Hash Table built. Time taken: " + (time2 - time1));
+        memBudget = SpillableMemoryManager.getInstance().registerBudget(this, false);
+        SpillableMemoryManager.getInstance().reserve(memBudget, replicatesSize);
+    }
+
+    /**
+     * The replicated inputs have to stay in memory, nothing is spilled.
+     */
+    @Override
+    public long spill() {
+        return 0;
+    }
+
+    @Override
+    public long getMemorySize() {
+        return replicatesSize;
     }
 
     private boolean isKeyNull(Object key) throws ExecException {
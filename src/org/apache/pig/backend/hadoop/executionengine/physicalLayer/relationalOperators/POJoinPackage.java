@@ -29,6 +29,7 @@ import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.InternalCachedBag;
+import org.apache.pig.data.InternalSerializedBag;
 import org.apache.pig.data.NonSpillableDataBag;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.io.NullableTuple;
@@ -48,6 +49,7 @@ public class POJoinPackage extends POPackage {
     private static final Result eopResult = new Result(POStatus.STATUS_EOP, null);
     private boolean firstTime = true;
     private boolean useDefaultBag = false;
+    private boolean useSerializedBag = false;
 
     public static final String DEFAULT_CHUNK_SIZE = "1000";
 
@@ -112,6 +114,8 @@ public class POJoinPackage extends POPackage {
                 String bagType = PigMapReduce.sJobConfInternal.get().get("pig.cachedbag.type");
                 if (bagType != null && bagType.equalsIgnoreCase("default")) {
                     useDefaultBag = true;
+                } else if (bagType != null && bagType.equalsIgnoreCase("serialized")) {
+                    useSerializedBag = true;
                 }
             }
         }
@@ -148,6 +152,7 @@ public class POJoinPackage extends POPackage {
                 // POJoinPackage in the pipeline and is also blocking the pipeline;
                 // constructor argument should be 2 * numInputs. But for one obscure
                 // case we don't want to pay the penalty all the time.        
+                        : useSerializedBag ? new InternalSerializedBag(numInputs-1)
                         : new InternalCachedBag(numInputs-1);                    
             }
             // For last bag, we always use NonSpillableBag.
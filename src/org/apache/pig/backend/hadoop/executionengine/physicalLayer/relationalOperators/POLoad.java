@@ -175,6 +175,8 @@ public class POLoad extends PhysicalOperator {
 
     public void setLFile(FileSpec file) {
         lFile = file;
+        // the load func comes from the file spec
+        loader = null;
     }
 
 
@@ -539,6 +539,10 @@ public class POMergeJoin extends PhysicalOperator {
         this.rightLoaderFuncSpec = rightLoaderFuncSpec;
     }
 
+    public FuncSpec getRightLoaderFuncSpec() {
+        return rightLoaderFuncSpec;
+    }
+
     public List<PhysicalPlan> getInnerPlansOf(int index) {
         return inpPlans.get(inputs.get(index));
     }
@@ -29,6 +29,8 @@ import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.AccumulativeBag;
 import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.InternalCachedBag;
+import org.apache.pig.data.InternalSerializedBag;
+import org.apache.pig.data.ReadOnceBag;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
@@ -119,8 +121,14 @@ public class POPackage extends PhysicalOperator {
     
     private boolean useDefaultBag = false;
     
+    private boolean useSerializedBag = false;
+    
     private PackageType pkgType;
 
+    // whether the values are handed to the successor in a ReadOnceBag
+    // instead of being copied into a bag first
+    private boolean readOnce = false;
+
     public POPackage(OperatorKey k) {
         this(k, -1, null);
     }
@@ -226,6 +234,8 @@ public class POPackage extends PhysicalOperator {
                 String bagType = PigMapReduce.sJobConfInternal.get().get("pig.cachedbag.type");
                 if (bagType != null && bagType.equalsIgnoreCase("default")) {
                     useDefaultBag = true;
+                } else if (bagType != null && bagType.equalsIgnoreCase("serialized")) {
+                    useSerializedBag = true;
                 }
             }
         }
@@ -235,6 +245,13 @@ public class POPackage extends PhysicalOperator {
             // tuple 
             res = mTupleFactory.newTuple(1);
             res.set(0, key);
+        } else if (readOnce) {
+            // the successor reads the values once, in order, so
+            // they are handed over straight from the iterator
+            res = mTupleFactory.newTuple(2);
+            res.set(0, key);
+            res.set(1, new ReadOnceBag(this, tupIter, key));
+            if(reporter!=null) reporter.progress();
         } else {
             //Create numInputs bags
             DataBag[] dbs = null;
@@ -257,6 +274,7 @@ public class POPackage extends PhysicalOperator {
                     // POPackage in the pipeline and is also blocking the pipeline;
                     // constructor argument should be 2 * numInputs. But for one obscure
                     // case we don't want to pay the penalty all the time.                
+                            : useSerializedBag ? new InternalSerializedBag(numInputs)
                             : new InternalCachedBag(numInputs);                    
                 }                               
                 //For each indexed tup in the inp, sort them
@@ -372,6 +390,40 @@ public class POPackage extends PhysicalOperator {
         return copy;
     }
     
+    /**
+     * Same as {@link #getValueTuple(NullableTuple, int)} for the given key
+     * instead of the current one.  A ReadOnceBag is read after detachInput
+     * has cleared the key it was created for, so it passes that key here.
+     */
+    public Tuple getValueTuple(NullableTuple ntup, int index, Object key) throws ExecException {
+        Object origKey = this.key;
+        this.key = key;
+        Tuple retTuple = getValueTuple(ntup, index);
+        this.key = origKey;
+        return retTuple;
+    }
+
+    /**
+     * @return the isKeyTuple
+     */
+    public boolean getKeyTuple() {
+        return isKeyTuple;
+    }
+
+    /**
+     * @return the keyAsTuple
+     */
+    public Tuple getKeyAsTuple() {
+        return keyAsTuple;
+    }
+
+    /**
+     * @return the key
+     */
+    public Object getKey() {
+        return key;
+    }
+
     public byte getKeyType() {
         return keyType;
     }
@@ -450,6 +502,24 @@ public class POPackage extends PhysicalOperator {
         this.useSecondaryKey = useSecondaryKey;
     }
 
+    /**
+     * @return whether the values are handed over in a ReadOnceBag
+     */
+    public boolean isReadOnce() {
+        return readOnce;
+    }
+
+    /**
+     * Hands the values of a single input to the successor in a
+     * {@link ReadOnceBag} reading them from the iterator, instead of
+     * copying them into a bag first.  Only valid when the successor
+     * iterates over the bag once, see ReadOnceBagOptimizer.
+     * @param readOnce whether to use a ReadOnceBag
+     */
+    public void setReadOnce(boolean readOnce) {
+        this.readOnce = readOnce;
+    }
+
     public void setPackageType(PackageType type) {
         this.pkgType = type;
     }
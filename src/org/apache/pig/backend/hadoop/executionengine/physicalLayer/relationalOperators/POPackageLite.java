@@ -128,20 +128,6 @@ public class POPackageLite extends POPackage {
         throw new RuntimeException("POPackageLite does not support setDistinct operation");
     }
 
-    /**
-     * @return the isKeyTuple
-     */
-    public boolean getKeyTuple() {
-        return isKeyTuple;
-    }
-
-    /**
-     * @return the keyAsTuple
-     */
-    public Tuple getKeyAsTuple() {
-        return keyAsTuple;
-    }
-
     /**
      * @return the tupIter
      */
@@ -149,13 +135,6 @@ public class POPackageLite extends POPackage {
         return tupIter;
     }
 
-    /**
-     * @return the key
-     */
-    public Object getKey() {
-        return key;
-    }
-
     /**
      * Similar to POPackage.getNext except that
      * only one input is expected with index 0 
@@ -183,23 +162,6 @@ public class POPackageLite extends POPackage {
         return r;
     }
     
-    /**
-     * Makes use of the superclass method, but this requires 
-     * an additional parameter key passed by ReadOnceBag.
-     * key of this instance will be set to null in detachInput 
-     * call, but an instance of ReadOnceBag may have the original 
-     * key that it uses. Therefore this extra argument is taken
-     * to temporarily set it before the call to the superclass method 
-     * and then restore it.  
-     */
-    public Tuple getValueTuple(NullableTuple ntup, int index, Object key) throws ExecException {
-        Object origKey = this.key;
-        this.key = key;
-        Tuple retTuple = super.getValueTuple(ntup, index);
-        this.key = origKey;
-        return retTuple;
-    }
-
     @Override
     public String name() {
         return getAliasString() + "PackageLite" + "["
@@ -43,14 +43,21 @@ import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.Spillable;
+import org.apache.pig.impl.util.SpillableMemoryManager;
+import org.apache.pig.impl.util.SpillableMemoryManager.MemoryBudget;
 
 /**
  * Do partial aggregation in map plan. It uses a hash-map to aggregate. If
  * consecutive records have same key, it will aggregate those without adding
  * them to the hash-map. As future optimization, the use of hash-map could be
  * disabled when input data is sorted on group-by keys
+ * <p>
+ * The hash-map reserves the memory it holds with the memory manager, which
+ * can ask for it to be emptied when the reservations are over budget. It is
+ * then dumped in full the next time the key changes.
  */
-public class POPartialAgg extends PhysicalOperator {
+public class POPartialAgg extends PhysicalOperator implements Spillable {
 
     public static final String PROP_PARTAGG_MINREDUCTION = "pig.exec.mapPartAgg.minReduction";
 
@@ -81,10 +88,6 @@ public class POPartialAgg extends PhysicalOperator {
     // maximum bag size of currentValues cached before aggregation is done
     private static final int MAX_SIZE_CURVAL_CACHE = 1024;
 
-    // number of records to sample to determine average size used by each
-    // entry in hash map
-    private static final int NUM_RESRECS_TO_SAMPLE_SZ_ESTIMATE = 100;
-
     // params for auto disabling map aggregation
     private static final int NUM_INPRECS_TO_SAMPLE_SZ_REDUCTION = 1000;
 
@@ -96,9 +99,16 @@ public class POPartialAgg extends PhysicalOperator {
 
     private transient int maxHashMapSize;
 
+    // memory used by the entries of the hash-map
+    private transient long aggMapMemSize;
+
     private transient TupleFactory tupleFact;
     private transient MemoryLimits memLimits;
 
+    private transient MemoryBudget memBudget;
+    // set when the memory manager asks for the hash-map to be emptied
+    private transient volatile boolean dumpRequested = false;
+
     public POPartialAgg(OperatorKey k) {
         super(k);
     }
@@ -167,6 +177,9 @@ public class POPartialAgg extends PhysicalOperator {
                     // start dumping results
                     isFinished = true;
                     logCapacityOfAggMap();
+                    if (memBudget != null) {
+                        SpillableMemoryManager.getInstance().release(memBudget);
+                    }
                     // check if there was ANY input
                     if (valueTuple == null) {
                         return EOP_RESULT;
@@ -174,7 +187,10 @@ public class POPartialAgg extends PhysicalOperator {
 
                     // first return agg for currentKey
                     Result output = getOutput();
-                    aggMap.remove(currentKey);
+                    Tuple removed = aggMap.remove(currentKey);
+                    if (removed != null) {
+                        aggMapMemSize -= getEntrySize(removed);
+                    }
 
                     mapDumpIterator = aggMap.values().iterator();
 
@@ -264,12 +280,18 @@ public class POPartialAgg extends PhysicalOperator {
 
                     // storing a new entry in the map, so update estimate of
                     // num of entries that will fit into the map
-                    if (memLimits.getNumObjectsSizeAdded() < NUM_RESRECS_TO_SAMPLE_SZ_ESTIMATE) {
-                        updateMaxMapSize(output.result);
-                    }
+                    updateMaxMapSize((Tuple) output.result);
 
                     // check if it is time to dump some aggs from the hashmap
-                    if (aggMap.size() >= maxHashMapSize) {
+                    if (dumpRequested) {
+                        // dump all of it, the memory is needed elsewhere
+                        dumpRequested = false;
+                        numToDump = aggMap.size();
+                        mapDumpIterator = aggMap.values().iterator();
+                        SpillableMemoryManager.getInstance().release(memBudget);
+
+                        return output;
+                    } else if (aggMap.size() >= maxHashMapSize) {
                         // dump 10% of max hash size because dumping just one
                         // record at a time might result in most group key being
                         // dumped (depending on hashmap implementation)
@@ -290,11 +312,14 @@ public class POPartialAgg extends PhysicalOperator {
         }
     }
 
-    private void updateMaxMapSize(Object result) {
-        long size = SizeUtil.getMapEntrySize(currentKey,
-                result);
-        memLimits.addNewObjSize(size);
-        maxHashMapSize = memLimits.getCacheLimit();
+    private void updateMaxMapSize(Tuple result) throws ExecException {
+        long size = aggMapMemSize + getEntrySize(result);
+        maxHashMapSize = (int) Math.min(Integer.MAX_VALUE,
+                (aggMap.size() + 1) * memLimits.getMaxMemUsage() / size);
+    }
+
+    private static long getEntrySize(Tuple result) throws ExecException {
+        return SizeUtil.getMapEntrySize(result.get(0), result);
     }
 
     /**
@@ -345,6 +370,7 @@ public class POPartialAgg extends PhysicalOperator {
         // used by InternalCachedBag
         memLimits = new MemoryLimits(3, -1);
         maxHashMapSize = Integer.MAX_VALUE;
+        memBudget = SpillableMemoryManager.getInstance().registerBudget(this, true);
 
     }
 
@@ -405,7 +431,29 @@ public class POPartialAgg extends PhysicalOperator {
     }
 
     private void addOutputToAggMap(Result output) throws ExecException {
-        aggMap.put(((Tuple) output.result).get(0), (Tuple) output.result);
+        Tuple result = (Tuple) output.result;
+        Tuple old = aggMap.put(result.get(0), result);
+        aggMapMemSize += getEntrySize(result);
+        if (old != null) {
+            aggMapMemSize -= getEntrySize(old);
+        }
+        SpillableMemoryManager.getInstance().reserve(memBudget, getMemorySize());
+    }
+
+    /**
+     * Asks for the hash-map to be dumped in full. It is done by the thread
+     * running the operator, the next time the key changes.
+     * @return the estimated size of the hash-map
+     */
+    @Override
+    public long spill() {
+        dumpRequested = true;
+        return getMemorySize();
+    }
+
+    @Override
+    public long getMemorySize() {
+        return aggMapMemSize;
     }
 
     private int getMinOutputReductionFromProp() {
@@ -419,13 +467,14 @@ public class POPartialAgg extends PhysicalOperator {
         return minReduction;
     }
 
-    private Result getNextResFromMap() {
+    private Result getNextResFromMap() throws ExecException {
         if (!mapDumpIterator.hasNext()) {
             mapDumpIterator = null;
             return EOP_RESULT;
         }
         Tuple outTuple = mapDumpIterator.next();
         mapDumpIterator.remove();
+        aggMapMemSize -= getEntrySize(outTuple);
         return new Result(POStatus.STATUS_OK, outTuple);
     }
 
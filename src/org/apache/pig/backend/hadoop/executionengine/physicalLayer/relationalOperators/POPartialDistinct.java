@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Removes duplicates from the map output of a DISTINCT before it is sorted
+ * and spilled. The serialized form of each tuple is kept in a hash set and
+ * a tuple is only passed on the first time it is seen. When the set has used
+ * up its share of memory it is cleared, so a tuple can be passed on more than
+ * once; the reduce still removes those duplicates. Like the in-map partial
+ * aggregation, it turns itself off when the first records show too few
+ * duplicates to pay for it.
+ */
+public class POPartialDistinct extends PhysicalOperator {
+
+    public static final String PROP_MAPDISTINCT_MEMUSAGE = "pig.exec.mapDistinct.memusage";
+
+    public static final String PROP_MAPDISTINCT_MINREDUCTION = "pig.exec.mapDistinct.minReduction";
+
+    private static final Log log = LogFactory.getLog(POPartialDistinct.class);
+    private static final long serialVersionUID = 1L;
+
+    private static final float DEFAULT_MEMUSAGE = 0.1F;
+
+    private static final float DEFAULT_MIN_REDUCTION = 2.0F;
+
+    // number of input records after which the reduction is checked
+    private static final int NUM_INPRECS_TO_SAMPLE_SZ_REDUCTION = 1000;
+
+    // estimate of the memory used by a set entry besides its bytes: the
+    // hash map entry, the DataByteArray and the array header
+    private static final int ENTRY_OVERHEAD = 80;
+
+    private transient Set<DataByteArray> seen;
+    private transient ByteArrayOutputStream bytes;
+    private transient DataOutputStream out;
+    private transient InterSedes sedes;
+
+    private transient long memUsage;
+    private transient long maxMemUsage;
+
+    private transient int numInpRecs;
+    private transient boolean sizeReductionChecked;
+    private transient boolean flushed;
+    private transient boolean disabled;
+
+    public POPartialDistinct(OperatorKey k) {
+        super(k);
+        setResultType(DataType.TUPLE);
+    }
+
+    @Override
+    public Result getNext(Tuple t) throws ExecException {
+        while (true) {
+            Result inp = processInput();
+            if (disabled || inp.returnStatus != POStatus.STATUS_OK) {
+                return inp;
+            }
+            if (seen == null) {
+                init();
+            }
+            Tuple tuple = (Tuple)inp.result;
+            bytes.reset();
+            try {
+                sedes.writeDatum(out, tuple);
+            } catch (IOException e) {
+                throw new ExecException("Error serializing tuple for in-map distinct", e);
+            }
+            DataByteArray key = new DataByteArray(bytes.toByteArray());
+            boolean added = seen.add(key);
+            if (added) {
+                memUsage += key.size() + ENTRY_OVERHEAD;
+            }
+
+            if (!sizeReductionChecked && ++numInpRecs == NUM_INPRECS_TO_SAMPLE_SZ_REDUCTION) {
+                checkSizeReduction();
+            }
+            if (!disabled && memUsage > maxMemUsage) {
+                // flush: whatever comes again will be removed in the reduce
+                seen.clear();
+                memUsage = 0;
+                flushed = true;
+            }
+            if (added) {
+                return inp;
+            }
+        }
+    }
+
+    private void init() {
+        seen = new HashSet<DataByteArray>();
+        bytes = new ByteArrayOutputStream();
+        out = new DataOutputStream(bytes);
+        sedes = InterSedesFactory.getInterSedesInstance();
+        float percent = DEFAULT_MEMUSAGE;
+        if (PigMapReduce.sJobConfInternal.get() != null) {
+            percent = PigMapReduce.sJobConfInternal.get().getFloat(
+                    PROP_MAPDISTINCT_MEMUSAGE, DEFAULT_MEMUSAGE);
+        }
+        maxMemUsage = (long)(Runtime.getRuntime().maxMemory() * percent);
+    }
+
+    private void checkSizeReduction() {
+        sizeReductionChecked = true;
+        float minReduction = DEFAULT_MIN_REDUCTION;
+        if (PigMapReduce.sJobConfInternal.get() != null) {
+            minReduction = PigMapReduce.sJobConfInternal.get().getFloat(
+                    PROP_MAPDISTINCT_MINREDUCTION, DEFAULT_MIN_REDUCTION);
+        }
+        // a set that was flushed before this many records holds too few of
+        // them to measure, and is not worth keeping either
+        float reduction = flushed ? 1.0F : (float)numInpRecs / seen.size();
+        if (!flushed && reduction >= minReduction) {
+            return;
+        }
+        disabled = true;
+        log.info("Disabling in-map distinct because the reduction in tuples ("
+                + reduction + ") is lower than threshold (" + minReduction + ")");
+        seen = null;
+        bytes = null;
+        out = null;
+    }
+
+    @Override
+    public Tuple illustratorMarkup(Object in, Object out, int eqClassIndex) {
+        // not used when the plan is run under illustrate
+        return null;
+    }
+
+    @Override
+    public void visit(PhyPlanVisitor v) throws VisitorException {
+        v.visitPartialDistinct(this);
+    }
+
+    @Override
+    public String name() {
+        return getAliasString() + "Partial Distinct" + "["
+                + DataType.findTypeName(resultType) + "]" + " - "
+                + mKey.toString();
+    }
+
+    @Override
+    public boolean supportsMultipleInputs() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsMultipleOutputs() {
+        return false;
+    }
+
+    @Override
+    public POPartialDistinct clone() throws CloneNotSupportedException {
+        POPartialDistinct clone = new POPartialDistinct(new OperatorKey(mKey.scope,
+                NodeIdGenerator.getGenerator().getNextNodeId(mKey.scope)));
+        clone.setAlias(alias);
+        return clone;
+    }
+}
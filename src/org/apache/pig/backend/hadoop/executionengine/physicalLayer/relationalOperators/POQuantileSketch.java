@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners.QuantileSketch;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.builtin.FindQuantiles;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Builds a {@link QuantileSketch} over the sort keys it receives and emits it
+ * as a single tuple once all input has been seen. It is placed at the end of
+ * the job producing the input of an ORDER BY, so that the quantiles for the
+ * sort job can be computed without a separate sampling job.
+ */
+public class POQuantileSketch extends PhysicalOperator {
+
+    private static final long serialVersionUID = 1L;
+
+    private String[] ascFlags;
+
+    private int sketchSize = QuantileSketch.DEFAULT_K;
+
+    private transient QuantileSketch sketch;
+
+    private transient boolean done = false;
+
+    public POQuantileSketch(OperatorKey k, String[] ascFlags) {
+        super(k);
+        this.ascFlags = ascFlags;
+        setResultType(DataType.TUPLE);
+    }
+
+    public String[] getAscFlags() {
+        return ascFlags;
+    }
+
+    public int getSketchSize() {
+        return sketchSize;
+    }
+
+    public void setSketchSize(int sketchSize) {
+        this.sketchSize = sketchSize;
+    }
+
+    @Override
+    public Result getNext(Tuple t) throws ExecException {
+        if (done) {
+            return new Result(POStatus.STATUS_EOP, null);
+        }
+        if (sketch == null) {
+            sketch = new QuantileSketch(sketchSize,
+                    new FindQuantiles(ascFlags).getComparator());
+        }
+        while (true) {
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return inp;
+            }
+            if (inp.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            if (inp.returnStatus == POStatus.STATUS_EOP) {
+                if (parentPlan.endOfAllInput) {
+                    done = true;
+                    if (sketch.getCount() == 0) {
+                        return inp;
+                    }
+                    Result res = new Result(POStatus.STATUS_OK, sketch.toTuple());
+                    sketch = null;
+                    return res;
+                }
+                return inp;
+            }
+            sketch.add((Tuple) inp.result);
+        }
+    }
+
+    @Override
+    public Tuple illustratorMarkup(Object in, Object out, int eqClassIndex) {
+        return null;
+    }
+
+    @Override
+    public void visit(PhyPlanVisitor v) throws VisitorException {
+        v.visitQuantileSketch(this);
+    }
+
+    @Override
+    public String name() {
+        return getAliasString() + "QuantileSketch" + "["
+                + DataType.findTypeName(resultType) + "]" + " - "
+                + mKey.toString();
+    }
+
+    @Override
+    public boolean supportsMultipleInputs() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsMultipleOutputs() {
+        return false;
+    }
+}
@@ -346,6 +346,13 @@ public class POSort extends PhysicalOperator {
         return mAscCols;
     }
 
+    /**
+     * @return the comparator of the tuples in the order of this sort
+     */
+    public Comparator<Tuple> getComparator() {
+        return mComparator;
+    }
+
     public void setLimit(long l)
     {
     	limit = l;
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Keeps the first tuples of its input in the order of a limited
+ * {@link POSort}, as many as the limit of the sort, in a bounded heap, and
+ * emits them once all input has been seen, in no particular order. It is
+ * placed in the map of the job that runs an ORDER BY followed by a small
+ * LIMIT, so that each map only sends its own top tuples to the single
+ * reducer that sorts them and applies the limit.
+ */
+public class POTopN extends PhysicalOperator {
+
+    private static final long serialVersionUID = 1L;
+
+    private POSort sort;
+
+    private transient PriorityQueue<Tuple> heap;
+
+    private transient boolean done = false;
+
+    /**
+     * @param sort the sort whose order and limit are used, it is not run
+     */
+    public POTopN(OperatorKey k, POSort sort) {
+        super(k);
+        this.sort = sort;
+        setResultType(DataType.TUPLE);
+    }
+
+    public POSort getSort() {
+        return sort;
+    }
+
+    public long getLimit() {
+        return sort.getLimit();
+    }
+
+    @Override
+    public Result getNext(Tuple t) throws ExecException {
+        if (heap == null) {
+            // the head of the heap is the last of the tuples kept
+            Comparator<Tuple> reverse = Collections.reverseOrder(sort.getComparator());
+            heap = new PriorityQueue<Tuple>((int)Math.min(getLimit(), 1024) + 1, reverse);
+        }
+        if (done) {
+            if (heap.isEmpty()) {
+                return new Result(POStatus.STATUS_EOP, null);
+            }
+            return new Result(POStatus.STATUS_OK, heap.poll());
+        }
+        while (true) {
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return inp;
+            }
+            if (inp.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            if (inp.returnStatus == POStatus.STATUS_EOP) {
+                if (parentPlan.endOfAllInput) {
+                    done = true;
+                    if (!heap.isEmpty()) {
+                        return new Result(POStatus.STATUS_OK, heap.poll());
+                    }
+                }
+                return inp;
+            }
+            Tuple tuple = (Tuple)inp.result;
+            if (heap.size() < getLimit()) {
+                heap.add(tuple);
+            } else if (heap.comparator().compare(tuple, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(tuple);
+            }
+        }
+    }
+
+    @Override
+    public Tuple illustratorMarkup(Object in, Object out, int eqClassIndex) {
+        return null;
+    }
+
+    @Override
+    public void visit(PhyPlanVisitor v) throws VisitorException {
+        v.visitTopN(this);
+    }
+
+    @Override
+    public String name() {
+        return getAliasString() + "TopN" + "(" + getLimit() + ")" + "["
+                + DataType.findTypeName(resultType) + "]" + " - "
+                + mKey.toString();
+    }
+
+    @Override
+    public boolean supportsMultipleInputs() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsMultipleOutputs() {
+        return false;
+    }
+}
@@ -18,6 +18,8 @@
 package org.apache.pig.builtin;
 
 import java.io.IOException;
+
+import org.apache.pig.Accumulator;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
@@ -30,7 +32,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
 /**
  * This method should never be used directly, use {@link SIZE}.
  */
-public class BagSize extends EvalFunc<Long> {
+public class BagSize extends EvalFunc<Long> implements Accumulator<Long> {
 
     @Override
     public Long exec(Tuple input) throws IOException {
@@ -46,6 +48,36 @@ public class BagSize extends EvalFunc<Long> {
         }
     }
 
+    /* Accumulator interface implementation */
+    private Long intermediateSize = null;
+
+    @Override
+    public void accumulate(Tuple input) throws IOException {
+        try {
+            DataBag bag = (DataBag)(input.get(0));
+            if (bag != null) {
+                long size = intermediateSize == null ? 0 : intermediateSize;
+                intermediateSize = size + bag.size();
+            }
+        } catch (ExecException exp) {
+            throw exp;
+        } catch (Exception e) {
+            int errCode = 2106;
+            String msg = "Error while computing size in " + this.getClass().getSimpleName();
+            throw new ExecException(msg, errCode, PigException.BUG, e);
+        }
+    }
+
+    @Override
+    public Long getValue() {
+        return intermediateSize;
+    }
+
+    @Override
+    public void cleanup() {
+        intermediateSize = null;
+    }
+
     @Override
     public Schema outputSchema(Schema input) {
         return new Schema(new Schema.FieldSchema(null, DataType.LONG)); 
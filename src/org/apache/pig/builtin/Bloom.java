@@ -19,23 +19,29 @@
 package org.apache.pig.builtin;
 
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.util.bloom.BloomFilter;
 import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
 
 import org.apache.pig.FilterFunc;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.logicalLayer.schema.Schema;
+import org.apache.pig.impl.util.UDFContext;
 
 /**
  * Use a Bloom filter build previously by BuildBloom.  You would first
@@ -76,6 +82,7 @@ public class Bloom extends FilterFunc {
         byte[] b;
         if (input.size() == 1) b = DataType.toBytes(input.get(0));
         else b = DataType.toBytes(input, DataType.TUPLE);
+        if (b == null) return false;
 
         Key k = new Key(b);
         return filter.membershipTest(k);
@@ -98,7 +105,29 @@ public class Bloom extends FilterFunc {
         filter = new BloomFilter();
         String dcFile = "./" + getFilenameFromPath(bloomFile) +
             "/part-r-00000";
-        filter.readFields(new DataInputStream(new FileInputStream(dcFile)));
+        InputStream in;
+        if (new File(dcFile).exists()) {
+            in = new FileInputStream(dcFile);
+        } else {
+            // there is no distributed cache in local mode
+            Configuration conf = UDFContext.getUDFContext().getJobConf();
+            Path path = new Path(bloomFile, "part-r-00000");
+            in = path.getFileSystem(conf == null ? new Configuration() : conf).open(path);
+        }
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(in));
+        try {
+            dis.mark(1);
+            if (dis.read() == -1) {
+                // nothing was put in the filter, as when it was built from
+                // an empty relation
+                filter = new BloomFilter(1, 1, Hash.JENKINS_HASH);
+            } else {
+                dis.reset();
+                filter.readFields(dis);
+            }
+        } finally {
+            dis.close();
+        }
     }
 
     /**
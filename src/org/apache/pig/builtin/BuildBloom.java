@@ -86,9 +86,25 @@ public class BuildBloom extends BuildBloomBase<DataByteArray> implements Algebra
         super(hashType, numElements, desiredFalsePositive);
     }
 
+    /**
+     * Build the filter from the whole bag at once, for when this is not
+     * run as an algebraic function, as in a plan without a combiner.
+     */
     @Override
     public DataByteArray exec(Tuple input) throws IOException {
-        throw new IOException("This must be used with algebraic!");
+        filter = new BloomFilter(vSize, numHash, hType);
+        if (input != null && input.size() > 0 && input.get(0) != null) {
+            DataBag values = (DataBag)input.get(0);
+            for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
+                Tuple t = it.next();
+                byte[] b;
+                if (t.size() == 1) b = DataType.toBytes(t.get(0));
+                else b = DataType.toBytes(t, DataType.TUPLE);
+                // a null key never matches
+                if (b != null) filter.add(new Key(b));
+            }
+        }
+        return bloomOut();
     }
 
     public String getInitial() {
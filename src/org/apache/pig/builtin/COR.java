@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.Iterator;
 import java.util.Vector;
 
+import org.apache.pig.Accumulator;
 import org.apache.pig.Algebraic;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.data.DataBag;
@@ -43,7 +44,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
 * D = foreach B generate group,COR(A.$0,A.$1,A.$2);<br/>
 */
 
-public class COR extends EvalFunc<DataBag> implements Algebraic {
+public class COR extends EvalFunc<DataBag> implements Algebraic, Accumulator<DataBag> {
     //name of the schemas. Initialize when user use define
     protected Vector<String>schemaName = new Vector<String>();
     //flag to indicate if define is called or not. 
@@ -338,6 +339,80 @@ public class COR extends EvalFunc<DataBag> implements Algebraic {
         
     } 
     
+    /* Accumulator interface implementation */
+    // sum(XY), sum(X), sum(Y), sum(X*X), sum(Y*Y) and the count of each pair of data sets
+    private double[][] accumulated = null;
+
+    @Override
+    public void accumulate(Tuple b) throws IOException {
+        if (b == null || b.size() == 0)
+            return;
+        if (accumulated == null) {
+            accumulated = new double[b.size()*(b.size()-1)/2][6];
+        }
+        try{
+            int count = 0;
+            for(int i=0;i<b.size();i++){
+                for(int j=i+1;j<b.size();j++){
+                    Tuple tempResult = computeAll((DataBag)b.get(i), (DataBag)b.get(j));
+                    for(int k=0;k<tempResult.size();k++){
+                        accumulated[count][k] += (Double)tempResult.get(k);
+                    }
+                    accumulated[count][5] += ((DataBag)b.get(i)).size();
+                    count++;
+                }
+            }
+        }catch(Exception e){
+            throw new IOException("Caught exception in COR.accumulate", e);
+        }
+    }
+
+    @Override
+    public DataBag getValue() {
+        if (accumulated == null)
+            return null;
+
+        DataBag output = DefaultBagFactory.getInstance().newDefaultBag();
+        int count = 0;
+        int totalSchemas = 2;
+        while(totalSchemas*(totalSchemas-1)/2<accumulated.length){
+            totalSchemas++;
+        }
+        for(int i=0;i<totalSchemas;i++){
+            for(int j=i+1;j<totalSchemas;j++){
+                Tuple temp = TupleFactory.getInstance().newTuple(3);
+                try{
+                    if(flag){
+                        temp.set(0, schemaName.elementAt(i));
+                        temp.set(1, schemaName.elementAt(j));
+                    }
+                    else{
+                        temp.set(0, "var"+i);
+                        temp.set(1, "var"+j);
+                    }
+                    double size = accumulated[count][5];
+                    double sum_x_y = accumulated[count][0];
+                    double sum_x = accumulated[count][1];
+                    double sum_y = accumulated[count][2];
+                    double sum_x_square = accumulated[count][3];
+                    double sum_y_square = accumulated[count][4];
+                    temp.set(2, (size*sum_x_y - sum_x*sum_y)/Math.sqrt((size*sum_x_square-sum_x*sum_x)*(size*sum_y_square-sum_y*sum_y)));
+                }catch (Exception e){
+                    System.err.println("Failed to process input; error - " + e.getMessage());
+                    return null;
+                }
+                output.add(temp);
+                count++;
+            }
+        }
+        return output;
+    }
+
+    @Override
+    public void cleanup() {
+        accumulated = null;
+    }
+
     @Override
     public Schema outputSchema(Schema input) {
         return new Schema(new Schema.FieldSchema(getSchemaName(this.getClass().getName().toLowerCase(), input), DataType.BAG));
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.Iterator;
 import java.util.Vector;
 
+import org.apache.pig.Accumulator;
 import org.apache.pig.Algebraic;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.data.DataBag;
@@ -42,7 +43,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
 * B = group A all;<br/>
 * D = foreach B generate group,COV(A.$0,A.$1,A.$2);<br/>
 */
-public class COV extends EvalFunc<DataBag> implements Algebraic {
+public class COV extends EvalFunc<DataBag> implements Algebraic, Accumulator<DataBag> {
     //name of the schemas. Initialize when user use define
     protected Vector<String>schemaName = new Vector<String>();
     //flag to indicate if define is called or not. 
@@ -318,6 +319,78 @@ public class COV extends EvalFunc<DataBag> implements Algebraic {
         
     }
     
+    /* Accumulator interface implementation */
+    // sum(XY), sum(X), sum(Y) and the count of each pair of data sets
+    private double[][] accumulated = null;
+
+    @Override
+    public void accumulate(Tuple b) throws IOException {
+        if (b == null || b.size() == 0)
+            return;
+        if (accumulated == null) {
+            accumulated = new double[b.size()*(b.size()-1)/2][4];
+        }
+        try{
+            int count = 0;
+            for(int i=0;i<b.size();i++){
+                for(int j=i+1;j<b.size();j++){
+                    Tuple tempResult = computeAll((DataBag)b.get(i), (DataBag)b.get(j));
+                    for(int k=0;k<tempResult.size();k++){
+                        accumulated[count][k] += (Double)tempResult.get(k);
+                    }
+                    accumulated[count][3] += ((DataBag)b.get(i)).size();
+                    count++;
+                }
+            }
+        }catch(Exception e){
+            throw new IOException("Caught exception in COV.accumulate", e);
+        }
+    }
+
+    @Override
+    public DataBag getValue() {
+        if (accumulated == null)
+            return null;
+
+        DataBag output = DefaultBagFactory.getInstance().newDefaultBag();
+        int count = 0;
+        int totalSchemas = 2;
+        while(totalSchemas*(totalSchemas-1)/2<accumulated.length){
+            totalSchemas++;
+        }
+        for(int i=0;i<totalSchemas;i++){
+            for(int j=i+1;j<totalSchemas;j++){
+                Tuple temp = TupleFactory.getInstance().newTuple(3);
+                try{
+                    if(flag){
+                        temp.set(0, schemaName.elementAt(i));
+                        temp.set(1, schemaName.elementAt(j));
+                    }
+                    else{
+                        temp.set(0, "var"+i);
+                        temp.set(1, "var"+j);
+                    }
+                    double size = accumulated[count][3];
+                    double sum_x_y = accumulated[count][0];
+                    double sum_x = accumulated[count][1];
+                    double sum_y = accumulated[count][2];
+                    temp.set(2, (size*sum_x_y - sum_x*sum_y)/(size*size));
+                }catch (Exception e){
+                    System.err.println("Failed to process input; error - " + e.getMessage());
+                    return null;
+                }
+                output.add(temp);
+                count++;
+            }
+        }
+        return output;
+    }
+
+    @Override
+    public void cleanup() {
+        accumulated = null;
+    }
+
     @Override
     public Schema outputSchema(Schema input) {
         return new Schema(new Schema.FieldSchema(getSchemaName(this.getClass().getName().toLowerCase(), input), DataType.BAG));
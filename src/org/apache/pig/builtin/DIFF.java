@@ -22,6 +22,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
+import org.apache.pig.Accumulator;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
@@ -42,7 +43,7 @@ import org.apache.pig.data.TupleFactory;
  * will still function, but it will be <strong>very</strong> slow.
  * 
  */
-public class DIFF extends EvalFunc<DataBag> {
+public class DIFF extends EvalFunc<DataBag> implements Accumulator<DataBag> {
     TupleFactory mTupleFactory = TupleFactory.getInstance();
     BagFactory mBagFactory = BagFactory.getInstance();
 
@@ -79,6 +80,57 @@ public class DIFF extends EvalFunc<DataBag> {
         }
     }
 
+    /* Accumulator interface implementation */
+    // the distinct tuples seen so far in each bag
+    private Set<Tuple> s1 = null;
+    private Set<Tuple> s2 = null;
+    // the fields, if they are not bags
+    private Object d1 = null;
+    private Object d2 = null;
+
+    @Override
+    public void accumulate(Tuple input) throws IOException {
+        if (input.size() != 2) {
+            int errCode = 2107;
+            String msg = "DIFF expected two inputs but received " + input.size() + " inputs.";
+            throw new ExecException(msg, errCode, PigException.BUG);
+        }
+        Object o1 = input.get(0);
+        if (o1 instanceof DataBag) {
+            if (s1 == null) {
+                s1 = new HashSet<Tuple>();
+                s2 = new HashSet<Tuple>();
+            }
+            for (Tuple t : (DataBag)o1) s1.add(t);
+            for (Tuple t : (DataBag)input.get(1)) s2.add(t);
+        } else {
+            // the same fields come with every batch
+            d1 = o1;
+            d2 = input.get(1);
+        }
+    }
+
+    @Override
+    public DataBag getValue() {
+        DataBag output = mBagFactory.newDefaultBag();
+        if (s1 != null) {
+            for (Tuple t : s1) if (!s2.contains(t)) output.add(t);
+            for (Tuple t : s2) if (!s1.contains(t)) output.add(t);
+        } else if (d1 != null && !d1.equals(d2)) {
+            output.add(mTupleFactory.newTuple(d1));
+            output.add(mTupleFactory.newTuple(d2));
+        }
+        return output;
+    }
+
+    @Override
+    public void cleanup() {
+        s1 = null;
+        s2 = null;
+        d1 = null;
+        d2 = null;
+    }
+
     private void computeDiff(
             DataBag bag1,
             DataBag bag2,
@@ -20,6 +20,7 @@ package org.apache.pig.builtin;
 
 import java.io.IOException;
 
+import org.apache.pig.Accumulator;
 import org.apache.pig.Algebraic;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.backend.executionengine.ExecException;
@@ -35,7 +36,7 @@ import org.apache.pig.data.TupleFactory;
  * This is a blocking operator. All the input is put in the hashset implemented
  * in DistinctDataBag which also provides the other DataBag interfaces.
  */
-public class Distinct  extends EvalFunc<DataBag> implements Algebraic {
+public class Distinct  extends EvalFunc<DataBag> implements Algebraic, Accumulator<DataBag> {
 
     private static BagFactory bagFactory = BagFactory.getInstance();
     private static TupleFactory tupleFactory = TupleFactory.getInstance();
@@ -151,6 +152,38 @@ public class Distinct  extends EvalFunc<DataBag> implements Algebraic {
         return result;
     }
     
+    /* Accumulator interface implementation */
+    private DataBag intermediateDistinct = null;
+
+    @Override
+    public void accumulate(Tuple input) throws IOException {
+        try {
+            if (intermediateDistinct == null) {
+                intermediateDistinct = createDataBag();
+            }
+            long progressCounter = 0;
+            for (Tuple tuple : (DataBag)input.get(0)) {
+                intermediateDistinct.add(tuple);
+                ++progressCounter;
+                if ((progressCounter % 1000) == 0) {
+                    progress();
+                }
+            }
+        } catch (ExecException e) {
+            throw e;
+        }
+    }
+
+    @Override
+    public DataBag getValue() {
+        return intermediateDistinct == null ? createDataBag() : intermediateDistinct;
+    }
+
+    @Override
+    public void cleanup() {
+        intermediateDistinct = null;
+    }
+
     protected DataBag getDistinct(Tuple input) throws IOException {
         try {
             DataBag inputBg = (DataBag)input.get(0);
@@ -122,12 +122,6 @@ public class DoubleMax extends EvalFunc<Double> implements Algebraic, Accumulato
         
         DataBag values = (DataBag)input.get(0);
 
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
-
         double curMax = Double.NEGATIVE_INFINITY;
         boolean sawNonNull = false;
         for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
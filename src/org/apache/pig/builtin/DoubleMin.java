@@ -120,12 +120,6 @@ public class DoubleMin extends EvalFunc<Double> implements Algebraic, Accumulato
     static protected Double min(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
 
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
-
         double curMin = Double.POSITIVE_INFINITY;
         boolean sawNonNull = false;
         for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
@@ -125,12 +125,6 @@ public class DoubleSum extends EvalFunc<Double> implements Algebraic, Accumulato
 
     static protected Double sum(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         double sum = 0;
         boolean sawNonNull = false;
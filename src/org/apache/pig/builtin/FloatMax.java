@@ -120,12 +120,6 @@ public class FloatMax extends EvalFunc<Float> implements Algebraic, Accumulator<
     static protected Float max(Tuple input) throws ExecException {
         DataBag values = (DataBag)(input.get(0));
 
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
-
         float curMax = Float.NEGATIVE_INFINITY;
         boolean sawNonNull = false;
         for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
@@ -127,12 +127,6 @@ public class FloatSum extends EvalFunc<Double> implements Algebraic, Accumulator
         // now Doubles insteads of Floats.
         DataBag values = (DataBag)input.get(0);
 
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
-
         double sum = 0;
         boolean sawNonNull = false;
         for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
@@ -160,12 +154,6 @@ public class FloatSum extends EvalFunc<Double> implements Algebraic, Accumulator
 
     static protected  Double sum(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         double sum = 0.0;
         boolean sawNonNull = false;
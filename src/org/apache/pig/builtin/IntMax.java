@@ -120,12 +120,6 @@ public class IntMax extends EvalFunc<Integer> implements Algebraic, Accumulator<
     static protected Integer max(Tuple input) throws ExecException {
         DataBag values = (DataBag)(input.get(0));
 
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
-
         int curMax = Integer.MIN_VALUE;
         boolean sawNonNull = false;
         for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
@@ -121,12 +121,6 @@ public class IntMin extends EvalFunc<Integer> implements Algebraic, Accumulator<
 
     static protected Integer min(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         int curMin = Integer.MAX_VALUE;
         boolean sawNonNull = false;
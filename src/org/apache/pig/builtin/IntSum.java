@@ -129,12 +129,6 @@ public class IntSum extends EvalFunc<Long> implements Algebraic, Accumulator<Lon
         // now Longs insteads of Integers.
         DataBag values = (DataBag)input.get(0);
 
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
-
         long sum = 0;
         boolean sawNonNull = false;
         for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
@@ -161,12 +155,6 @@ public class IntSum extends EvalFunc<Long> implements Algebraic, Accumulator<Lon
 
     static protected  Long sum(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         long sum = 0;
         boolean sawNonNull = false;
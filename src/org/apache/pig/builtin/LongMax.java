@@ -120,12 +120,6 @@ public class LongMax extends EvalFunc<Long> implements Algebraic, Accumulator<Lo
     static protected Long max(Tuple input) throws ExecException {
         DataBag values = (DataBag)(input.get(0));
 
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
-
         long curMax = Long.MIN_VALUE;
         boolean sawNonNull = false;
         for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
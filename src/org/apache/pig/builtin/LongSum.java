@@ -121,12 +121,6 @@ public class LongSum extends EvalFunc<Long> implements Algebraic, Accumulator<Lo
 
     static protected  Long sum(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         long sum = 0;
         boolean sawNonNull = false;
@@ -144,12 +144,6 @@ public class MAX extends EvalFunc<Double> implements Algebraic, Accumulator<Doub
 
     static protected Double max(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         double curMax = Double.NEGATIVE_INFINITY;
         boolean sawNonNull = false;
@@ -182,12 +176,6 @@ public class MAX extends EvalFunc<Double> implements Algebraic, Accumulator<Doub
     // intermediate and final versions are used.
     static protected Double maxDoubles(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         double curMax = Double.NEGATIVE_INFINITY;
         boolean sawNonNull = false;
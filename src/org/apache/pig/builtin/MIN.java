@@ -145,12 +145,6 @@ public class MIN extends EvalFunc<Double> implements Algebraic, Accumulator<Doub
 
     static protected Double min(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         double curMin = Double.POSITIVE_INFINITY;
         boolean sawNonNull = false;
@@ -183,12 +177,6 @@ public class MIN extends EvalFunc<Double> implements Algebraic, Accumulator<Doub
     // intermediate and final versions are used.
     static protected Double minDoubles(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         double curMin = Double.POSITIVE_INFINITY;
         boolean sawNonNull = false;
@@ -147,12 +147,6 @@ public class SUM extends EvalFunc<Double> implements Algebraic, Accumulator<Doub
 
     static protected Double sum(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         double sum = 0;
         boolean sawNonNull = false;
@@ -188,12 +182,6 @@ public class SUM extends EvalFunc<Double> implements Algebraic, Accumulator<Doub
     // intermediate and final versions are used.
     static protected Double sumDoubles(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         double sum = 0;
         boolean sawNonNull = false;
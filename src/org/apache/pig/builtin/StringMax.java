@@ -115,12 +115,6 @@ public class StringMax extends EvalFunc<String> implements Algebraic, Accumulato
 
     static protected String max(Tuple input) throws ExecException {
         DataBag values = (DataBag)input.get(0);
-        
-        // if we were handed an empty bag, return NULL
-        // this is in compliance with SQL standard
-        if(values.size() == 0) {
-            return null;
-        }
 
         Iterator<Tuple> it = values.iterator();
         // assign first non null element as max to begin with
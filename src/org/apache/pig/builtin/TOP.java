@@ -27,6 +27,7 @@ import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.pig.Accumulator;
 import org.apache.pig.Algebraic;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.FuncSpec;
@@ -62,7 +63,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema.FieldSchema;
  *          GENERATE FLATTEN(result); 
  *  }
  */
-public class TOP extends EvalFunc<DataBag> implements Algebraic{
+public class TOP extends EvalFunc<DataBag> implements Algebraic, Accumulator<DataBag> {
     private static final Log log = LogFactory.getLog(TOP.class);
     static BagFactory mBagFactory = BagFactory.getInstance();
     static TupleFactory mTupleFactory = TupleFactory.getInstance();
@@ -144,6 +145,48 @@ public class TOP extends EvalFunc<DataBag> implements Algebraic{
         }
     }
 
+    /* Accumulator interface implementation */
+    private PriorityQueue<Tuple> store = null;
+
+    private int limit;
+
+    @Override
+    public void accumulate(Tuple tuple) throws IOException {
+        if (tuple == null || tuple.size() < 3) {
+            return;
+        }
+        try {
+            if (store == null) {
+                limit = (Integer) tuple.get(0);
+                int fieldNum = (Integer) tuple.get(1);
+                store = new PriorityQueue<Tuple>(limit + 1,
+                        new TupleComparator(fieldNum));
+            }
+            updateTop(store, limit, (DataBag) tuple.get(2));
+        } catch (ExecException e) {
+            throw new RuntimeException("ExecException executing function: ", e);
+        } catch (Exception e) {
+            throw new RuntimeException("General Exception executing function: " + e);
+        }
+    }
+
+    @Override
+    public DataBag getValue() {
+        if (store == null) {
+            return null;
+        }
+        DataBag outputBag = mBagFactory.newDefaultBag();
+        for (Tuple t : store) {
+            outputBag.add(t);
+        }
+        return outputBag;
+    }
+
+    @Override
+    public void cleanup() {
+        store = null;
+    }
+
     /*
      * (non-Javadoc)
      * 
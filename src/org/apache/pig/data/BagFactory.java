@@ -27,6 +27,7 @@ import java.util.List;
 import org.apache.pig.classification.InterfaceAudience;
 import org.apache.pig.classification.InterfaceStability;
 import org.apache.pig.impl.util.SpillableMemoryManager;
+import org.apache.pig.impl.util.SpillableMemoryManager.MemoryBudget;
 
 /**
  * Factory for constructing different types of bags.
@@ -120,7 +121,7 @@ public abstract class BagFactory {
      * Construct a new BagFactory
      */
     protected BagFactory() {
-        gMemMgr = new SpillableMemoryManager();
+        gMemMgr = SpillableMemoryManager.getInstance();
     }
 
     /**
@@ -132,7 +133,10 @@ public abstract class BagFactory {
      * @param b bag to be registered.
      */
     protected void registerBag(DataBag b) {
-        gMemMgr.registerSpillable(b);
+        MemoryBudget budget = gMemMgr.registerSpillable(b);
+        if (b instanceof DefaultAbstractBag) {
+            ((DefaultAbstractBag)b).setMemoryBudget(budget);
+        }
     }
 
     /**
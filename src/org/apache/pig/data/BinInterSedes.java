@@ -24,8 +24,10 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
@@ -96,25 +98,65 @@ public class BinInterSedes implements InterSedes {
 
     public static final byte NULL = 27;
 
+    public static final byte LONG_0 = 28;
+    public static final byte LONG_1 = 29;
+    public static final byte LONG_INBYTE = 30;
+    public static final byte LONG_INSHORT = 31;
+    public static final byte LONG_ININT = 32;
+
+    public static final byte TINYCHARARRAY = 33;
+    // a chararray already written in the same bag, given by its index
+    public static final byte TINYCHARARRAY_REF = 34;
+    public static final byte SMALLCHARARRAY_REF = 35;
+
+    // tuples with up to 9 fields carry their size in the type
+    public static final byte TUPLE_0 = 36;
+    public static final byte TUPLE_1 = 37;
+    public static final byte TUPLE_2 = 38;
+    public static final byte TUPLE_3 = 39;
+    public static final byte TUPLE_4 = 40;
+    public static final byte TUPLE_5 = 41;
+    public static final byte TUPLE_6 = 42;
+    public static final byte TUPLE_7 = 43;
+    public static final byte TUPLE_8 = 44;
+    public static final byte TUPLE_9 = 45;
+
     private static TupleFactory mTupleFactory = TupleFactory.getInstance();
     private static BagFactory mBagFactory = BagFactory.getInstance();
     static final int UNSIGNED_SHORT_MAX = 65535;
     static final int UNSIGNED_BYTE_MAX = 255;
     public static final String UTF8 = "UTF-8";
 
-    private Tuple readTuple(DataInput in, byte type) throws IOException {
+    // most chararrays that are remembered for references in a bag
+    static final int MAX_STRING_REFS = UNSIGNED_SHORT_MAX;
+
+    /**
+     * @param type type read from the stream, may be negative
+     * @return true if the type starts a serialized tuple
+     */
+    public static boolean isTupleType(int type) {
+        return type == TINYTUPLE || type == SMALLTUPLE || type == TUPLE
+                || (type >= TUPLE_0 && type <= TUPLE_9);
+    }
+
+    private Tuple readTuple(DataInput in, byte type, List<String> strings) throws IOException {
         // Read the size.
         int sz = getTupleSize(in, type);
 
         Tuple t = mTupleFactory.newTuple(sz);
+        ValueDictionary dictionary = ValueDictionary.getInstance();
         for (int i = 0; i < sz; i++) {
-            t.set(i, readDatum(in));
+            Object o = readDatum(in, in.readByte(), strings);
+            t.set(i, dictionary == null ? o : dictionary.intern(i, o));
         }
         return t;
 
     }
 
     private int getTupleSize(DataInput in, byte type) throws IOException {
+        if (type >= TUPLE_0 && type <= TUPLE_9) {
+            return type - TUPLE_0;
+        }
         int sz;
         switch (type) {
         case TINYTUPLE:
@@ -139,8 +181,12 @@ public class BinInterSedes implements InterSedes {
         return sz;
     }
 
-    private DataBag readBag(DataInput in, byte type) throws IOException {
+    private DataBag readBag(DataInput in, byte type, List<String> strings) throws IOException {
         DataBag bag = mBagFactory.newDefaultBag();
+        // chararrays can refer back to any written earlier in the outermost bag
+        if (strings == null) {
+            strings = new ArrayList<String>();
+        }
         long size;
         // determine size of bag
         switch (type) {
@@ -161,7 +207,7 @@ public class BinInterSedes implements InterSedes {
 
         for (long i = 0; i < size; i++) {
             try {
-                Object o = readDatum(in);
+                Object o = readDatum(in, in.readByte(), strings);
                 bag.add((Tuple) o);
             } catch (ExecException ee) {
                 throw ee;
@@ -170,7 +216,7 @@ public class BinInterSedes implements InterSedes {
         return bag;
     }
 
-    private Map<String, Object> readMap(DataInput in, byte type) throws IOException {
+    private Map<String, Object> readMap(DataInput in, byte type, List<String> strings) throws IOException {
         int size;
         switch (type) {
         case TINYMAP:
@@ -190,18 +236,18 @@ public class BinInterSedes implements InterSedes {
         }
         Map<String, Object> m = new HashMap<String, Object>(size);
         for (int i = 0; i < size; i++) {
-            String key = (String) readDatum(in);
-            m.put(key, readDatum(in));
+            String key = (String) readDatum(in, in.readByte(), strings);
+            m.put(key, readDatum(in, in.readByte(), strings));
         }
         return m;
     }
 
-    private InternalMap readInternalMap(DataInput in) throws IOException {
+    private InternalMap readInternalMap(DataInput in, List<String> strings) throws IOException {
         int size = in.readInt();
         InternalMap m = new InternalMap(size);
         for (int i = 0; i < size; i++) {
-            Object key = readDatum(in);
-            m.put(key, readDatum(in));
+            Object key = readDatum(in, in.readByte(), strings);
+            m.put(key, readDatum(in, in.readByte(), strings));
         }
         return m;
     }
@@ -210,6 +256,26 @@ public class BinInterSedes implements InterSedes {
         return in.readUTF();
     }
 
+    private static String readTinyCharArray(DataInput in) throws IOException {
+        byte[] ba = new byte[in.readUnsignedByte()];
+        in.readFully(ba);
+        return new String(ba, UTF8);
+    }
+
+    private static String addStringRef(List<String> strings, String s) {
+        if (strings != null && strings.size() < MAX_STRING_REFS) {
+            strings.add(s);
+        }
+        return s;
+    }
+
+    private static String readStringRef(List<String> strings, int index) throws IOException {
+        if (strings == null || index >= strings.size()) {
+            throw new IOException("Invalid reference " + index + " to a chararray");
+        }
+        return strings.get(index);
+    }
+
     private static String readBigCharArray(DataInput in) throws IOException {
         int size = in.readInt();
         byte[] ba = new byte[size];
@@ -263,24 +329,41 @@ public class BinInterSedes implements InterSedes {
      * @see org.apache.pig.data.InterSedes#readDatum(java.io.DataInput, byte)
      */
     public Object readDatum(DataInput in, byte type) throws IOException, ExecException {
+        return readDatum(in, type, null);
+    }
+
+    /**
+     * @param strings chararrays read so far in the enclosing bag, null outside of a bag
+     */
+    private Object readDatum(DataInput in, byte type, List<String> strings) throws IOException, ExecException {
         switch (type) {
         case TUPLE:
         case TINYTUPLE:
         case SMALLTUPLE:
-            return readTuple(in, type);
+        case TUPLE_0:
+        case TUPLE_1:
+        case TUPLE_2:
+        case TUPLE_3:
+        case TUPLE_4:
+        case TUPLE_5:
+        case TUPLE_6:
+        case TUPLE_7:
+        case TUPLE_8:
+        case TUPLE_9:
+            return readTuple(in, type, strings);
 
         case BAG:
         case TINYBAG:
         case SMALLBAG:
-            return readBag(in, type);
+            return readBag(in, type, strings);
 
         case MAP:
         case TINYMAP:
         case SMALLMAP:
-            return readMap(in, type);
+            return readMap(in, type, strings);
 
         case INTERNALMAP:
-            return readInternalMap(in);
+            return readInternalMap(in, strings);
 
         case INTEGER_0:
             return Integer.valueOf(0);
@@ -293,6 +376,16 @@ public class BinInterSedes implements InterSedes {
         case INTEGER:
             return Integer.valueOf(in.readInt());
 
+        case LONG_0:
+            return Long.valueOf(0);
+        case LONG_1:
+            return Long.valueOf(1);
+        case LONG_INBYTE:
+            return Long.valueOf(in.readByte());
+        case LONG_INSHORT:
+            return Long.valueOf(in.readShort());
+        case LONG_ININT:
+            return Long.valueOf(in.readInt());
         case LONG:
             return Long.valueOf(in.readLong());
 
@@ -330,7 +423,16 @@ public class BinInterSedes implements InterSedes {
             return readBigCharArray(in);
 
         case SMALLCHARARRAY:
-            return readCharArray(in);
+            return addStringRef(strings, readCharArray(in));
+
+        case TINYCHARARRAY:
+            return addStringRef(strings, readTinyCharArray(in));
+
+        case TINYCHARARRAY_REF:
+            return readStringRef(strings, in.readUnsignedByte());
+
+        case SMALLCHARARRAY_REF:
+            return readStringRef(strings, in.readUnsignedShort());
 
         case GENERIC_WRITABLECOMPARABLE:
             return readWritable(in);
@@ -348,21 +450,28 @@ public class BinInterSedes implements InterSedes {
      * 
      * @see org.apache.pig.data.InterSedes#writeDatum(java.io.DataOutput, java.lang.Object)
      */
-    @SuppressWarnings("unchecked")
     public void writeDatum(DataOutput out, Object val) throws IOException {
+        writeDatum(out, val, null);
+    }
+
+    /**
+     * @param strings indexes of the chararrays written so far in the enclosing bag, null outside of a bag
+     */
+    @SuppressWarnings("unchecked")
+    private void writeDatum(DataOutput out, Object val, Map<String, Integer> strings) throws IOException {
         // Read the data type
         byte type = DataType.findType(val);
         switch (type) {
         case DataType.TUPLE:
-            writeTuple(out, (Tuple) val);
+            writeTuple(out, (Tuple) val, strings);
             break;
 
         case DataType.BAG:
-            writeBag(out, (DataBag) val);
+            writeBag(out, (DataBag) val, strings);
             break;
 
         case DataType.MAP: {
-            writeMap(out, (Map<String, Object>) val);
+            writeMap(out, (Map<String, Object>) val, strings);
 
             break;
         }
@@ -374,8 +483,8 @@ public class BinInterSedes implements InterSedes {
             Iterator<Map.Entry<Object, Object>> i = m.entrySet().iterator();
             while (i.hasNext()) {
                 Map.Entry<Object, Object> entry = i.next();
-                writeDatum(out, entry.getKey());
-                writeDatum(out, entry.getValue());
+                writeDatum(out, entry.getKey(), strings);
+                writeDatum(out, entry.getValue(), strings);
             }
             break;
         }
@@ -400,8 +509,24 @@ public class BinInterSedes implements InterSedes {
             break;
 
         case DataType.LONG:
-            out.writeByte(LONG);
-            out.writeLong((Long) val);
+            long l = (Long) val;
+            if (l == 0) {
+                out.writeByte(LONG_0);
+            } else if (l == 1) {
+                out.writeByte(LONG_1);
+            } else if (Byte.MIN_VALUE <= l && l <= Byte.MAX_VALUE) {
+                out.writeByte(LONG_INBYTE);
+                out.writeByte((int) l);
+            } else if (Short.MIN_VALUE <= l && l <= Short.MAX_VALUE) {
+                out.writeByte(LONG_INSHORT);
+                out.writeShort((int) l);
+            } else if (Integer.MIN_VALUE <= l && l <= Integer.MAX_VALUE) {
+                out.writeByte(LONG_ININT);
+                out.writeInt((int) l);
+            } else {
+                out.writeByte(LONG);
+                out.writeLong(l);
+            }
             break;
 
         case DataType.FLOAT:
@@ -447,9 +572,30 @@ public class BinInterSedes implements InterSedes {
 
         case DataType.CHARARRAY: {
             String s = (String) val;
-            // a char can take up to 3 bytes in the modified utf8 encoding
-            // used by DataOutput.writeUTF, so use UNSIGNED_SHORT_MAX/3
-            if (s.length() < UNSIGNED_SHORT_MAX / 3) {
+            if (s.length() < UNSIGNED_SHORT_MAX / 3 && strings != null) {
+                Integer ref = strings.get(s);
+                if (ref != null) {
+                    if (ref < UNSIGNED_BYTE_MAX) {
+                        out.writeByte(TINYCHARARRAY_REF);
+                        out.writeByte(ref);
+                    } else {
+                        out.writeByte(SMALLCHARARRAY_REF);
+                        out.writeShort(ref);
+                    }
+                    break;
+                }
+                if (strings.size() < MAX_STRING_REFS) {
+                    strings.put(s, strings.size());
+                }
+            }
+            // a char takes up to 3 bytes in utf8, and in the modified utf8
+            // encoding used by DataOutput.writeUTF, so size the types by that
+            if (s.length() < UNSIGNED_BYTE_MAX / 3) {
+                byte[] utfBytes = s.getBytes(UTF8);
+                out.writeByte(TINYCHARARRAY);
+                out.writeByte(utfBytes.length);
+                out.write(utfBytes);
+            } else if (s.length() < UNSIGNED_SHORT_MAX / 3) {
                 out.writeByte(SMALLCHARARRAY);
                 out.writeUTF(s);
             } else {
@@ -480,7 +626,7 @@ public class BinInterSedes implements InterSedes {
         }
     }
 
-    private void writeMap(DataOutput out, Map<String, Object> m) throws IOException {
+    private void writeMap(DataOutput out, Map<String, Object> m, Map<String, Integer> strings) throws IOException {
 
         final int sz = m.size();
         if (sz < UNSIGNED_BYTE_MAX) {
@@ -496,12 +642,12 @@ public class BinInterSedes implements InterSedes {
         Iterator<Map.Entry<String, Object>> i = m.entrySet().iterator();
         while (i.hasNext()) {
             Map.Entry<String, Object> entry = i.next();
-            writeDatum(out, entry.getKey());
-            writeDatum(out, entry.getValue());
+            writeDatum(out, entry.getKey(), strings);
+            writeDatum(out, entry.getValue(), strings);
         }
     }
 
-    private void writeBag(DataOutput out, DataBag bag) throws IOException {
+    private void writeBag(DataOutput out, DataBag bag, Map<String, Integer> strings) throws IOException {
         // We don't care whether this bag was sorted or distinct because
         // using the iterator to write it will guarantee those things come
         // correctly. And on the other end there'll be no reason to waste
@@ -518,16 +664,23 @@ public class BinInterSedes implements InterSedes {
             out.writeLong(sz);
         }
 
+        // a chararray seen before in the outermost bag is written as a
+        // reference to the first one
+        if (strings == null) {
+            strings = new HashMap<String, Integer>();
+        }
         Iterator<Tuple> it = bag.iterator();
         while (it.hasNext()) {
-            writeTuple(out, it.next());
+            writeTuple(out, it.next(), strings);
         }
 
     }
 
-    private void writeTuple(DataOutput out, Tuple t) throws IOException {
+    private void writeTuple(DataOutput out, Tuple t, Map<String, Integer> strings) throws IOException {
         final int sz = t.size();
-        if (sz < UNSIGNED_BYTE_MAX) {
+        if (sz <= TUPLE_9 - TUPLE_0) {
+            out.writeByte(TUPLE_0 + sz);
+        } else if (sz < UNSIGNED_BYTE_MAX) {
             out.writeByte(TINYTUPLE);
             out.writeByte(sz);
         } else if (sz < UNSIGNED_SHORT_MAX) {
@@ -539,7 +692,7 @@ public class BinInterSedes implements InterSedes {
         }
 
         for (int i = 0; i < sz; i++) {
-            writeDatum(out, t.get(i));
+            writeDatum(out, t.get(i), strings);
         }
     }
 
@@ -552,8 +705,10 @@ public class BinInterSedes implements InterSedes {
     public void addColsToTuple(DataInput in, Tuple t) throws IOException {
         byte type = in.readByte();
         int sz = getTupleSize(in, type);
+        ValueDictionary dictionary = ValueDictionary.getInstance();
         for (int i = 0; i < sz; i++) {
-            t.append(readDatum(in));
+            Object o = readDatum(in);
+            t.append(dictionary == null ? o : dictionary.intern(i, o));
         }
     }
     
@@ -736,12 +891,17 @@ public class BinInterSedes implements InterSedes {
                 }
                 break;
             }
+            case BinInterSedes.LONG_0:
+            case BinInterSedes.LONG_1:
+            case BinInterSedes.LONG_INBYTE:
+            case BinInterSedes.LONG_INSHORT:
+            case BinInterSedes.LONG_ININT:
             case BinInterSedes.LONG: {
                 type1 = DataType.LONG;
                 type2 = getGeneralizedDataType(dt2);
                 if (type1 == type2) {
-                    long lv1 = bb1.getLong();
-                    long lv2 = bb2.getLong();
+                    long lv1 = readLong(bb1, dt1);
+                    long lv2 = readLong(bb2, dt2);
                     rc = (lv1 < lv2 ? -1 : (lv1 == lv2 ? 0 : 1));
                 }
                 break;
@@ -782,6 +942,7 @@ public class BinInterSedes implements InterSedes {
                 }
                 break;
             }
+            case BinInterSedes.TINYCHARARRAY:
             case BinInterSedes.SMALLCHARARRAY:
             case BinInterSedes.CHARARRAY: {
                 type1 = DataType.CHARARRAY;
@@ -806,6 +967,16 @@ public class BinInterSedes implements InterSedes {
                 }
                 break;
             }
+            case BinInterSedes.TUPLE_0:
+            case BinInterSedes.TUPLE_1:
+            case BinInterSedes.TUPLE_2:
+            case BinInterSedes.TUPLE_3:
+            case BinInterSedes.TUPLE_4:
+            case BinInterSedes.TUPLE_5:
+            case BinInterSedes.TUPLE_6:
+            case BinInterSedes.TUPLE_7:
+            case BinInterSedes.TUPLE_8:
+            case BinInterSedes.TUPLE_9:
             case BinInterSedes.TINYTUPLE:
             case BinInterSedes.SMALLTUPLE:
             case BinInterSedes.TUPLE: {
@@ -1028,6 +1199,11 @@ public class BinInterSedes implements InterSedes {
             case BinInterSedes.INTEGER_INSHORT:
             case BinInterSedes.INTEGER:
                 return DataType.INTEGER;
+            case BinInterSedes.LONG_0:
+            case BinInterSedes.LONG_1:
+            case BinInterSedes.LONG_INBYTE:
+            case BinInterSedes.LONG_INSHORT:
+            case BinInterSedes.LONG_ININT:
             case BinInterSedes.LONG:
                 return DataType.LONG;
             case BinInterSedes.FLOAT:
@@ -1038,9 +1214,20 @@ public class BinInterSedes implements InterSedes {
             case BinInterSedes.SMALLBYTEARRAY:
             case BinInterSedes.BYTEARRAY:
                 return DataType.BYTEARRAY;
+            case BinInterSedes.TINYCHARARRAY:
             case BinInterSedes.SMALLCHARARRAY:
             case BinInterSedes.CHARARRAY:
                 return DataType.CHARARRAY;
+            case BinInterSedes.TUPLE_0:
+            case BinInterSedes.TUPLE_1:
+            case BinInterSedes.TUPLE_2:
+            case BinInterSedes.TUPLE_3:
+            case BinInterSedes.TUPLE_4:
+            case BinInterSedes.TUPLE_5:
+            case BinInterSedes.TUPLE_6:
+            case BinInterSedes.TUPLE_7:
+            case BinInterSedes.TUPLE_8:
+            case BinInterSedes.TUPLE_9:
             case BinInterSedes.TUPLE:
             case BinInterSedes.TINYTUPLE:
             case BinInterSedes.SMALLTUPLE:
@@ -1078,6 +1265,25 @@ public class BinInterSedes implements InterSedes {
                 throw new RuntimeException("Unexpected data type " + type + " found in stream.");
             }
         }
+
+        private static long readLong(ByteBuffer bb, byte type) {
+            switch (type) {
+            case BinInterSedes.LONG_0:
+                return 0;
+            case BinInterSedes.LONG_1:
+                return 1;
+            case BinInterSedes.LONG_INBYTE:
+                return bb.get();
+            case BinInterSedes.LONG_INSHORT:
+                return bb.getShort();
+            case BinInterSedes.LONG_ININT:
+                return bb.getInt();
+            case BinInterSedes.LONG:
+                return bb.getLong();
+            default:
+                throw new RuntimeException("Unexpected data type " + type + " found in stream.");
+            }
+        }
         
         /**
          * @param bb ByteBuffer having serialized object, including the type information
@@ -1095,7 +1301,19 @@ public class BinInterSedes implements InterSedes {
          */
         private static int readSize(ByteBuffer bb, byte type) {
             switch (type) {
+            case BinInterSedes.TUPLE_0:
+            case BinInterSedes.TUPLE_1:
+            case BinInterSedes.TUPLE_2:
+            case BinInterSedes.TUPLE_3:
+            case BinInterSedes.TUPLE_4:
+            case BinInterSedes.TUPLE_5:
+            case BinInterSedes.TUPLE_6:
+            case BinInterSedes.TUPLE_7:
+            case BinInterSedes.TUPLE_8:
+            case BinInterSedes.TUPLE_9:
+                return type - BinInterSedes.TUPLE_0;
             case BinInterSedes.TINYBYTEARRAY:
+            case BinInterSedes.TINYCHARARRAY:
             case BinInterSedes.TINYTUPLE:
             case BinInterSedes.TINYBAG:
             case BinInterSedes.TINYMAP:
@@ -60,7 +60,7 @@ public class BinSedesTuple extends DefaultTuple {
     public void readFields(DataInput in) throws IOException {
 
         // Clear our fields, in case we're being reused.
-        mFields.clear();
+        clearFields();
         sedes.addColsToTuple(in, this);
     } 
     
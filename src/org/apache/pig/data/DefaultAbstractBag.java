@@ -17,9 +17,13 @@
  */
 package org.apache.pig.data;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -35,8 +39,11 @@ import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigHadoopLogger;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PigLogger;
+import org.apache.pig.impl.io.MappedFileInputStream;
 import org.apache.pig.impl.util.BagFormat;
 import org.apache.pig.impl.util.Spillable;
+import org.apache.pig.impl.util.SpillableMemoryManager;
+import org.apache.pig.impl.util.SpillableMemoryManager.MemoryBudget;
 import org.apache.pig.tools.pigstats.PigStatusReporter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -45,7 +52,7 @@ import org.apache.commons.logging.LogFactory;
  * Default implementation of DataBag.  This is the an abstract class used as a
  * parent for all three of the types of data bags.
  */
-public abstract class DefaultAbstractBag implements DataBag {
+public abstract class DefaultAbstractBag implements DataBag, MemoryTracked {
 
     private static final Log log = LogFactory.getLog(DataBag.class);
 
@@ -63,10 +70,25 @@ public abstract class DefaultAbstractBag implements DataBag {
     // to run through the disk when people ask.
     protected long mSize = 0;
 
-    protected int mLastContentsSize = -1;
+    // Number of tuples in memory, and the memory they use, as of the last
+    // add.  The contents are walked again when they no longer match.
+    protected int mLastContentsSize = 0;
 
     protected long mMemSize = 0;
 
+    // the bag object: header, mContents, mSpillFiles, mSize,
+    // mLastContentsSize, mMemSize and mBudget
+    private static final long BAG_MEM_SIZE = SizeUtil.roundToEight(SizeUtil.OBJECT_HEADER
+            + 3 * SizeUtil.REFERENCE + 8 + 4 + 8 + SizeUtil.REFERENCE);
+
+    // Reservation of the memory held by the bag, only set for the bags
+    // registered with the memory manager.
+    protected transient MemoryBudget mBudget;
+
+    // The reservation is brought up to date each time this many more
+    // tuples have been added.
+    protected static final int RESERVE_INTERVAL = 256;
+
     /**
      * Get the number of elements in the bag, both in memory and on disk.
      */
@@ -82,6 +104,10 @@ public abstract class DefaultAbstractBag implements DataBag {
         synchronized (mContents) {
             mSize++;
             mContents.add(t);
+            trackAdd(t);
+        }
+        if (mSize % RESERVE_INTERVAL == 0) {
+            reserveMemory();
         }
     }
 
@@ -93,8 +119,13 @@ public abstract class DefaultAbstractBag implements DataBag {
         synchronized (mContents) {
             mSize += b.size();
             Iterator<Tuple> i = b.iterator();
-            while (i.hasNext()) mContents.add(i.next());
+            while (i.hasNext()) {
+                Tuple t = i.next();
+                mContents.add(t);
+                trackAdd(t);
+            }
         }
+        reserveMemory();
     }
 
     /**
@@ -105,84 +136,89 @@ public abstract class DefaultAbstractBag implements DataBag {
         synchronized (mContents) {
             mSize += c.size();
             Iterator<Tuple> i = c.iterator();
-            while (i.hasNext()) mContents.add(i.next());
+            while (i.hasNext()) {
+                Tuple t = i.next();
+                mContents.add(t);
+                trackAdd(t);
+            }
+        }
+        reserveMemory();
+    }
+
+    void setMemoryBudget(MemoryBudget budget) {
+        mBudget = budget;
+    }
+
+    /**
+     * Reserve the memory the bag holds with the memory manager, which can
+     * have this or other bags spill if the reservations are over budget.
+     * It must not be called with the contents locked.
+     */
+    protected void reserveMemory() {
+        if (mBudget != null) {
+            SpillableMemoryManager.getInstance().reserve(mBudget, getMemorySize());
+        }
+    }
+
+    /**
+     * Keep the memory size of the tuples in memory up to date after t was
+     * put in the contents.  Subclasses that add to the contents themselves
+     * should call it, else the contents are walked again the next time the
+     * size is asked for.
+     * @param t tuple just added.
+     */
+    protected void trackAdd(Tuple t) {
+        int numInMem = mContents.size();
+        if (numInMem == 1) {
+            // the contents were empty, e.g. after a spill
+            mMemSize = t.getMemorySize();
+            mLastContentsSize = 1;
+        } else if (mLastContentsSize == numInMem - 1) {
+            mMemSize += t.getMemorySize();
+            mLastContentsSize = numInMem;
         }
     }
 
     /**
-     * Return the size of memory usage.
+     * Return the size of memory usage.  Only what is in memory is
+     * counted, not what is on disk.  The sizes of the tuples are added up
+     * as they are added, so this does not walk the contents.
      */
     public long getMemorySize() {
-        int j;
-        int numInMem = 0;
-        long used = 0;
+        long used;
+        int numInMem;
 
         synchronized (mContents) {
-            if (mLastContentsSize == mContents.size()) return mMemSize;
-
-            // I can't afford to talk through all the tuples every time the
-            // memory manager wants to know if it's time to dump.  Just sample
-            // the first 100 and see what we get.  This may not be 100%
-            // accurate, but it's just an estimate anyway.
             numInMem = mContents.size();
-            // Measure only what's in memory, not what's on disk.
-            Iterator<Tuple> i = mContents.iterator();
-            for (j = 0; i.hasNext() && j < 100; j++) { 
-                used += i.next().getMemorySize();
+            if (mLastContentsSize != numInMem) {
+                // the contents were changed without trackAdd, e.g. by a
+                // spill, so measure them all
+                long sum = 0;
+                for (Tuple t : mContents) {
+                    sum += t.getMemorySize();
+                }
+                mMemSize = sum;
+                mLastContentsSize = numInMem;
             }
-            mLastContentsSize = numInMem;
+            used = mMemSize;
         }
 
-        if (numInMem > 100) {
-            // Estimate the per tuple size.  Do it in integer arithmetic
-            // (even though it will be slightly less accurate) for speed.
-            used /= j;
-            used *= numInMem;
-        }
-
-        // add up the overhead for this object and other object variables
-        int bag_fix_size = 8 /* object header */ 
-        + 4 + 8 + 8 /* mLastContentsSize + mMemSize + mSize */
-        + 8 + 8 /* mContents ref  + mSpillFiles ref*/
-        + 4 /* +4 to round it to eight*/
-        + 36 /* mContents fixed */
-        ;
-        long mFields_size =   roundToEight(4 + numInMem*4); /* mContents fixed + per entry */
-        // in java hotspot 32bit vm, there seems to be a minimum bag size of 188 bytes
-        // some of the extra bytes is probably from a minimum size of this array list
-        mFields_size = Math.max(40, mFields_size); 
-        
-        used += bag_fix_size + mFields_size;
+        used += BAG_MEM_SIZE + SizeUtil.getArrayListSize(numInMem);
 
-        // add up overhead for mSpillFiles ArrayList, Object[] inside ArrayList,
-        // object variable inside ArrayList and references to spill files
+        // add up the FileList, and the File and path of each spill file,
+        // which are likely to all have the same length
         if (mSpillFiles != null) {
-            used += roundToEight(36 /* mSpillFiles fixed overhead*/ + mSpillFiles.size()*4);
-            
-            if(mSpillFiles.size() > 0){
-                //a rough estimate of memory used by each file entry
-                // the auto generated files are likely to have same length
-                long approx_per_entry_size =
-                    roundToEight(mSpillFiles.get(0).toString().length() * 2 + 38);
-                
+            used += SizeUtil.getArrayListSize(mSpillFiles.size());
+            if (mSpillFiles.size() > 0) {
+                long approx_per_entry_size = SizeUtil.roundToEight(SizeUtil.OBJECT_HEADER
+                        + 4 + 3 * SizeUtil.REFERENCE)
+                        + SizeUtil.getPigObjMemSize(mSpillFiles.get(0).getPath());
                 used += mSpillFiles.size() * approx_per_entry_size;
             }
         }
-        
-        mMemSize = used;
         return used;
     }
 
-    
-    /**
-     * Memory size of objects are rounded to multiple of 8 bytes
-     * @param i
-     * @return i rounded to a equal of higher multiple of 8 
-     */
-    private long roundToEight(long i) {
-        return 8 * ((i+7)/8); // integer division rounds the result down
-    }
-    
     /**
      * Clear out the contents of the bag, both on disk and in memory.
      * Any attempts to read after this is called will produce undefined
@@ -201,6 +237,9 @@ public abstract class DefaultAbstractBag implements DataBag {
             }
             mSize = 0;
         }
+        if (mBudget != null) {
+            SpillableMemoryManager.getInstance().release(mBudget);
+        }
     }
 
     /**
@@ -361,6 +400,26 @@ public abstract class DefaultAbstractBag implements DataBag {
             new FileOutputStream(f)));
     }
 
+    /**
+     * Open a spill file for reading.  The file is mapped in memory rather
+     * than read through a buffer, which saves a system call and a copy for
+     * every buffer read, and reading a bag again does not read the file in
+     * again.  If the file cannot be mapped it is read the usual way.
+     * @param f spill file.
+     * @return the stream to read it with.
+     * @throws FileNotFoundException if the file does not exist.
+     */
+    protected DataInputStream openSpillFile(File f) throws FileNotFoundException {
+        try {
+            return new DataInputStream(new MappedFileInputStream(f));
+        } catch (FileNotFoundException fnfe) {
+            throw fnfe;
+        } catch (IOException ioe) {
+            log.debug("Unable to map spill file " + f + ", reading it", ioe);
+            return new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        }
+    }
+
     /**
      * Report progress to HDFS.
      */
@@ -45,12 +45,25 @@ import org.apache.pig.impl.util.TupleFormat;
 /**
  * A default implementation of Tuple. This class will be created by the DefaultTupleFactory.
  */
-public class DefaultTuple implements Tuple {
+public class DefaultTuple implements Tuple, MemoryTracked {
 
     protected boolean isNull = false;
     private static final long serialVersionUID = 2L;
     protected List<Object> mFields;
 
+    // the tuple object: header, isNull, mFields, mMemSize and mNestedFields
+    private static final long TUPLE_MEM_SIZE = SizeUtil.roundToEight(SizeUtil.OBJECT_HEADER
+            + 1 + SizeUtil.REFERENCE + 8 + 4);
+
+    // Memory used by the tuple object and its fields other than tuples and
+    // bags, kept up to date by set and append once it has been worked out.
+    // Tuple and bag fields can grow after being set, so they are asked for
+    // their size each time. 0 until the size is first asked for.
+    private transient long mMemSize = 0;
+
+    // number of tuple and bag fields, known along with mMemSize
+    private transient int mNestedFields = 0;
+
     /**
      * Default constructor. This constructor is public so that hadoop can call it directly. However, inside pig you
      * should never be calling this function. Use TupleFactory instead.
@@ -105,6 +118,7 @@ public class DefaultTuple implements Tuple {
      */
     public void reference(Tuple t) {
         mFields = t.getAll();
+        mMemSize = 0;
     }
 
     /**
@@ -176,7 +190,11 @@ public class DefaultTuple implements Tuple {
      *             if the field number is greater than or equal to the number of fields in the tuple.
      */
     public void set(int fieldNum, Object val) throws ExecException {
-        mFields.set(fieldNum, val);
+        Object old = mFields.set(fieldNum, val);
+        if (mMemSize != 0) {
+            untrackField(old);
+            trackField(val);
+        }
     }
 
     /**
@@ -189,35 +207,72 @@ public class DefaultTuple implements Tuple {
      */
     public void append(Object val) {
         mFields.add(val);
+        if (mMemSize != 0) {
+            trackField(val);
+        }
     }
 
     /**
-     * Determine the size of tuple in memory. This is used by data bags to determine their memory size. This need not be
-     * exact, but it should be a decent estimation.
+     * Remove all the fields of the tuple, so that it can be filled again.
+     */
+    protected void clearFields() {
+        mFields.clear();
+        mMemSize = 0;
+    }
+
+    /**
+     * Determine the size of tuple in memory. This is used by data bags to determine their memory size. The fields are
+     * walked the first time it is called, after that the size is kept up to date by set() and append(), and only
+     * tuple and bag fields are asked for their size again. Changes made through the list returned by getAll() are
+     * not seen. The sizes follow the model of {@link SizeUtil}.
+     * <br>Time complexity: O(number of tuple and bag fields), after the first call
      * 
-     * @return estimated memory size.
+     * @return memory size.
      */
     public long getMemorySize() {
-        Iterator<Object> i = mFields.iterator();
-        // fixed overhead
-        long empty_tuple_size = 8 /* tuple object header */
-        + 8 /* isNull - but rounded to 8 bytes as total obj size needs to be multiple of 8 */
-        + 8 /* mFields reference */
-        + 32 /* mFields array list fixed size */;
-
-        // rest of the fixed portion of mfields size is accounted within empty_tuple_size
-        long mfields_var_size = SizeUtil.roundToEight(4 + 4 * mFields.size());
-        // in java hotspot 32bit vm, there seems to be a minimum tuple size of 96
-        // which is probably from the minimum size of this array list
-        mfields_var_size = Math.max(40, mfields_var_size);
-
-        long sum = empty_tuple_size + mfields_var_size;
-        while (i.hasNext()) {
-            sum += SizeUtil.getPigObjMemSize(i.next());
+        if (mMemSize == 0) {
+            long sum = TUPLE_MEM_SIZE;
+            mNestedFields = 0;
+            for (Object o : mFields) {
+                if (isNested(o)) {
+                    mNestedFields++;
+                } else {
+                    sum += SizeUtil.getPigObjMemSize(o);
+                }
+            }
+            mMemSize = sum;
+        }
+        long sum = mMemSize + SizeUtil.getArrayListSize(mFields.size());
+        if (mNestedFields > 0) {
+            for (Object o : mFields) {
+                if (isNested(o)) {
+                    sum += SizeUtil.getPigObjMemSize(o);
+                }
+            }
         }
         return sum;
     }
 
+    private static boolean isNested(Object o) {
+        return o instanceof Tuple || o instanceof DataBag;
+    }
+
+    private void trackField(Object o) {
+        if (isNested(o)) {
+            mNestedFields++;
+        } else {
+            mMemSize += SizeUtil.getPigObjMemSize(o);
+        }
+    }
+
+    private void untrackField(Object o) {
+        if (isNested(o)) {
+            mNestedFields--;
+        } else {
+            mMemSize -= SizeUtil.getPigObjMemSize(o);
+        }
+    }
+
 
     /**
      * Write a tuple of atomic values into a string. All values in the tuple must be atomic (no bags, tuples, or maps).
@@ -533,7 +588,7 @@ public class DefaultTuple implements Tuple {
 
     public void readFields(DataInput in) throws IOException {
         // Clear our fields, in case we're being reused.
-        mFields.clear();
+        clearFields();
 
         // Make sure it's a tuple.
         byte b = in.readByte();
@@ -17,12 +17,10 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -76,12 +74,9 @@ public class InternalCachedBag extends SelfSpillBag {
             throw new IllegalStateException("InternalCachedBag is closed for adding new tuples");
         }
                 
-        if(mContents.size() < memLimit.getCacheLimit())  {
-            mContents.add(t);           
-            if(mContents.size() < 100)
-            {
-                memLimit.addNewObjSize(t.getMemorySize());
-            }
+        if(mMemSize + t.getMemorySize() <= memLimit.getMaxMemUsage())  {
+            mContents.add(t);
+            trackAdd(t);
         } else {
             // above cacheLimit, spill to disk
             try {
@@ -185,7 +180,7 @@ public class InternalCachedBag extends SelfSpillBag {
             if(mSpillFiles != null && mSpillFiles.size() > 0) {
                 File file = mSpillFiles.get(0);
                 try {
-                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    in = openSpillFile(file);
                 }
                 catch(FileNotFoundException fnfe) {
                     String msg = "Unable to find our spill file.";
@@ -17,12 +17,10 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -132,18 +130,13 @@ public class InternalDistinctBag extends SortedSpillBag {
             throw new IllegalStateException("InternalDistinctBag is closed for adding new tuples");
         }
                 
-    	if (mContents.size() > memLimit.getCacheLimit()) {    		
+    	if (mMemSize > memLimit.getMaxMemUsage()) {
     		proactive_spill(null);
     	}
     	            	
         if (mContents.add(t)) {
         	mSize ++;
-                
-        	 // check how many tuples memory can hold by getting average
-            // size of first 100 tuples
-            if(mSize < 100 && (mSpillFiles == null || mSpillFiles.isEmpty())) {
-                memLimit.addNewObjSize(t.getMemorySize());
-            }          
+            trackAdd(t);
         }    	
     }
 
@@ -261,8 +254,7 @@ public class InternalDistinctBag extends SortedSpillBag {
                 while (i.hasNext()) {
                     try {
                         DataInputStream in = 
-                            new DataInputStream(new BufferedInputStream(
-                                new FileInputStream(i.next())));
+                            openSpillFile(i.next());
                         mStreams.add(in);
                         // Add the first tuple from this file into the
                         // merge queue.
@@ -407,8 +399,7 @@ public class InternalDistinctBag extends SortedSpillBag {
                         try {
                             File f = i.next();
                             DataInputStream in =
-                                new DataInputStream(new BufferedInputStream(
-                                    new FileInputStream(f)));
+                                openSpillFile(f);
                             mStreams.add(in);
                             addToQueue(null, mStreams.size() - 1);
                             i.remove();
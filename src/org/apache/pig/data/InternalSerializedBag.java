@@ -0,0 +1,342 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.PigCounters;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * A bag that keeps its tuples serialized, one after the other, in pages of
+ * bytes instead of as Tuple objects. Small tuples take several times less
+ * memory this way, and the garbage collector only sees a few large arrays.
+ * Tuples are deserialized again as the bag is iterated.
+ * <p>
+ * Like {@link InternalCachedBag}, tuples can only be added until the bag is
+ * first iterated. When the pages use more than the memory limit of the
+ * bag, the full pages are written as they are to a spill file, which is
+ * read before the pages left in memory.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class InternalSerializedBag extends SelfSpillBag {
+    private static final long serialVersionUID = 1L;
+
+    private static final Log log = LogFactory.getLog(InternalSerializedBag.class);
+
+    // the first page of a bag is this small, the next ones double in size
+    // up to PAGE_SIZE, so that small bags do not take much memory
+    private static final int FIRST_PAGE_SIZE = 1024;
+
+    static final int PAGE_SIZE = 64 * 1024;
+
+    private transient ArrayList<byte[]> pages;
+    private transient byte[] lastPage;
+    // number of bytes used in the last page
+    private transient int lastPageUsed;
+    // number of bytes of all the pages
+    private transient long pagesMemSize;
+    private transient DataOutputStream pageOut;
+
+    private transient DataOutputStream out;
+    private transient boolean addDone;
+
+    // number of tuples added when the spill counter was last incremented
+    private transient long numTuplesCounted = 0;
+
+    public InternalSerializedBag() {
+        this(1, -1f);
+    }
+
+    public InternalSerializedBag(int bagCount) {
+        this(bagCount, -1f);
+    }
+
+    public InternalSerializedBag(int bagCount, float percent) {
+        super(bagCount, percent);
+        init();
+    }
+
+    private void init() {
+        // the tuples are never held as objects
+        mContents = new ArrayList<Tuple>(0);
+        pages = new ArrayList<byte[]>();
+        lastPage = null;
+        lastPageUsed = 0;
+        pagesMemSize = 0;
+        pageOut = new DataOutputStream(new PageOutputStream());
+        addDone = false;
+    }
+
+    public void add(Tuple t) {
+        if (addDone) {
+            throw new IllegalStateException("InternalSerializedBag is closed for adding new tuples");
+        }
+        try {
+            sedes.writeDatum(pageOut, t);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        mSize++;
+
+        if (pagesMemSize > memLimit.getMaxMemUsage() && pages.size() > 1) {
+            spillPages();
+        }
+    }
+
+    public void addAll(DataBag b) {
+        Iterator<Tuple> iter = b.iterator();
+        while (iter.hasNext()) {
+            add(iter.next());
+        }
+    }
+
+    public void addAll(Collection<Tuple> c) {
+        Iterator<Tuple> iter = c.iterator();
+        while (iter.hasNext()) {
+            add(iter.next());
+        }
+    }
+
+    private void newPage() {
+        int size = lastPage == null ? FIRST_PAGE_SIZE : Math.min(PAGE_SIZE,
+                lastPage.length * 2);
+        lastPage = new byte[size];
+        lastPageUsed = 0;
+        pages.add(lastPage);
+        pagesMemSize += size;
+    }
+
+    /**
+     * Write all the pages but the last one, which is still being filled,
+     * to the spill file. A tuple can start in a page that is written and
+     * end in the one that is kept, as the file is read before the pages.
+     */
+    private void spillPages() {
+        try {
+            if (out == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Memory can hold " + mSize + " records, put the rest in spill file.");
+                }
+                out = getSpillFile();
+                incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_BAGS);
+            }
+            int numFull = pages.size() - 1;
+            for (int i = 0; i < numFull; i++) {
+                byte[] page = pages.get(i);
+                out.write(page);
+                pagesMemSize -= page.length;
+            }
+            pages.subList(0, numFull).clear();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_RECS, mSize - numTuplesCounted);
+        numTuplesCounted = mSize;
+    }
+
+    private void addDone() {
+        if (out != null) {
+            try {
+                out.flush();
+                out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        addDone = true;
+    }
+
+    public void clear() {
+        if (!addDone) {
+            addDone();
+        }
+        super.clear();
+        init();
+        out = null;
+        numTuplesCounted = 0;
+    }
+
+    public boolean isDistinct() {
+        return false;
+    }
+
+    public boolean isSorted() {
+        return false;
+    }
+
+    @Override
+    public long getMemorySize() {
+        return super.getMemorySize() + SizeUtil.getArrayListSize(pages.size())
+                + pagesMemSize;
+    }
+
+    public Iterator<Tuple> iterator() {
+        if (!addDone) {
+            // close the spill file and mark adding is done
+            // so further adding is disallowed.
+            addDone();
+        }
+        return new SerializedBagIterator();
+    }
+
+    public long spill() {
+        throw new RuntimeException("InternalSerializedBag.spill() should not be called");
+    }
+
+    /**
+     * Appends to the pages, starting a new one when the last one is full.
+     */
+    private class PageOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            if (lastPage == null || lastPageUsed == lastPage.length) {
+                newPage();
+            }
+            lastPage[lastPageUsed++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (lastPage == null || lastPageUsed == lastPage.length) {
+                    newPage();
+                }
+                int n = Math.min(len, lastPage.length - lastPageUsed);
+                System.arraycopy(b, off, lastPage, lastPageUsed, n);
+                lastPageUsed += n;
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    /**
+     * Reads the pages in memory, once adding is done.
+     */
+    private class PageInputStream extends InputStream {
+        private int page = 0;
+        private int pos = 0;
+
+        // skip to the next page with bytes left, false if there is none
+        private boolean ensure() {
+            while (page < pages.size()) {
+                int limit = page == pages.size() - 1 ? lastPageUsed : pages.get(page).length;
+                if (pos < limit) {
+                    return true;
+                }
+                page++;
+                pos = 0;
+            }
+            return false;
+        }
+
+        @Override
+        public int read() {
+            if (!ensure()) {
+                return -1;
+            }
+            return pages.get(page)[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensure()) {
+                return -1;
+            }
+            int limit = page == pages.size() - 1 ? lastPageUsed : pages.get(page).length;
+            int n = Math.min(len, limit - pos);
+            System.arraycopy(pages.get(page), pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+
+    private class SerializedBagIterator implements Iterator<Tuple> {
+        DataInputStream in;
+
+        long numTuplesRead = 0;
+
+        public SerializedBagIterator() {
+            InputStream pagesIn = new PageInputStream();
+            if (mSpillFiles != null && mSpillFiles.size() > 0) {
+                try {
+                    InputStream fileIn = openSpillFile(mSpillFiles.get(0));
+                    in = new DataInputStream(new SequenceInputStream(fileIn, pagesIn));
+                } catch (FileNotFoundException fnfe) {
+                    String msg = "Unable to find our spill file.";
+                    throw new RuntimeException(msg, fnfe);
+                }
+            } else {
+                in = new DataInputStream(pagesIn);
+            }
+        }
+
+        public boolean hasNext() {
+            return numTuplesRead < mSize;
+        }
+
+        public Tuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more elements from iterator");
+            }
+            Tuple t;
+            try {
+                t = (Tuple) sedes.readDatum(in);
+            } catch (IOException e) {
+                String msg = "Unable to read our spill file.";
+                throw new RuntimeException(msg, e);
+            }
+
+            numTuplesRead++;
+            // This will report progress every 16383 records.
+            if ((numTuplesRead & 0x3fff) == 0) reportProgress();
+
+            if (numTuplesRead == mSize) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+            return t;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove is not supported for SerializedBagIterator");
+        }
+    }
+
+}
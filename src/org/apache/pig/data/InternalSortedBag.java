@@ -17,12 +17,10 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -112,17 +110,13 @@ public class InternalSortedBag extends SortedSpillBag{
             throw new IllegalStateException("InternalSortedBag is closed for adding new tuples");
         }
                 
-    	if (mContents.size() > memLimit.getCacheLimit()) {    		
+    	if (mMemSize > memLimit.getMaxMemUsage()) {
     		proactive_spill(mComp);
     	}
     	        
         mContents.add(t);
-        
-        // check how many tuples memory can hold by getting average
-        // size of first 100 tuples
-        if(mSize < 100 && (mSpillFiles == null || mSpillFiles.isEmpty())&&t!=null)
-        {
-            memLimit.addNewObjSize(t.getMemorySize());
+        if (t != null) {
+            trackAdd(t);
         }
                 
         mSize++;
@@ -253,8 +247,7 @@ public class InternalSortedBag extends SortedSpillBag{
                 while (i.hasNext()) {
                     try {
                         DataInputStream in = 
-                            new DataInputStream(new BufferedInputStream(
-                                new FileInputStream(i.next())));
+                            openSpillFile(i.next());
                         mStreams.add(in);
                         // Add the first tuple from this file into the
                         // merge queue.
@@ -379,8 +372,7 @@ public class InternalSortedBag extends SortedSpillBag{
                         try {
                             File f = i.next();
                             DataInputStream in =
-                                new DataInputStream(new BufferedInputStream(
-                                    new FileInputStream(f)));
+                                openSpillFile(f);
                             mStreams.add(in);
                             addToQueue(null, mStreams.size() - 1);
                             i.remove();
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * A data object that keeps its memory size up to date as it is changed,
+ * instead of working it out each time it is asked. Asking for the size is
+ * then cheap enough to be done for every object added to a container. The
+ * sizes follow the object layout described in {@link SizeUtil}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public interface MemoryTracked {
+
+    /**
+     * @return the memory used by this object and the objects it holds, in
+     *         bytes
+     */
+    long getMemorySize();
+}
@@ -26,12 +26,13 @@ import java.util.Map;
 
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
-import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackageLite;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
 import org.apache.pig.impl.io.NullableTuple;
 import org.apache.pig.impl.util.Pair;
 
 /**
- * This bag is specifically created for use by POPackageLite. So it has three 
+ * This bag is specifically created for use by POPackageLite, and by POPackage
+ * when its successor reads the values only once. So it has three 
  * properties, the NullableTuple iterator, the key (Object) and the keyInfo 
  * (Map<Integer, Pair<Boolean, Map<Integer, Integer>>>) all three 
  * of which are required in the constructor call. This bag does not store 
@@ -42,7 +43,7 @@ import org.apache.pig.impl.util.Pair;
 public class ReadOnceBag implements DataBag {
 
     // The Package operator that created this
-    POPackageLite pkg;
+    POPackage pkg;
     
     //The iterator of Tuples. Marked transient because we will never serialize this.
     transient Iterator<NullableTuple> tupIter;
@@ -61,11 +62,11 @@ public class ReadOnceBag implements DataBag {
      * This constructor creates a bag out of an existing iterator
      * of tuples by taking ownership of the iterator and NOT
      * copying the elements of the iterator.
-     * @param pkg POPackageLite
+     * @param pkg POPackage
      * @param tupIter Iterator<NullableTuple>
      * @param key Object
      */
-    public ReadOnceBag(POPackageLite pkg, Iterator<NullableTuple> tupIter, Object key) {
+    public ReadOnceBag(POPackage pkg, Iterator<NullableTuple> tupIter, Object key) {
         this.pkg = pkg;
         this.tupIter = tupIter;
         this.key = key;
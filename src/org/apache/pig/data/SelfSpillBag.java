@@ -120,6 +120,14 @@ public abstract class SelfSpillBag extends DefaultAbstractBag {
         public long getNumObjectsSizeAdded() {
             return numObjsSizeChecked;
         }
+
+        /**
+         * @return the memory, in bytes, the user of this class is allowed to
+         * use
+         */
+        public long getMaxMemUsage() {
+            return maxMemUsage;
+        }
     }
 
 }
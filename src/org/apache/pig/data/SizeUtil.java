@@ -25,30 +25,60 @@ import org.apache.pig.classification.InterfaceAudience;
 import org.apache.pig.classification.InterfaceStability;
 
 /**
- * Utility functions for estimating size of objects of pig types
+ * Utility functions for estimating size of objects of pig types.
+ * <p>
+ * The sizes follow the object layout of a 64 bit Java HotSpot VM using
+ * compressed references, which is what task JVMs with heaps below 32 GB run
+ * with:
+ * <ul>
+ * <li>an object has a header of {@link #OBJECT_HEADER} bytes, followed by
+ * its fields</li>
+ * <li>a reference takes {@link #REFERENCE} bytes</li>
+ * <li>an array has a header of {@link #ARRAY_HEADER} bytes, which includes
+ * its length, followed by its elements</li>
+ * <li>every object, arrays included, is padded to a multiple of 8 bytes</li>
+ * </ul>
+ * The size of an object includes the objects it owns but not the reference
+ * to it, which is accounted by its container. Sizes are an upper bound for
+ * values the VM shares, such as small Integers.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
 public class SizeUtil {
 
-    private static final int MAP_MEM_PER_ENTRY = 32 + 120;
+    public static final int OBJECT_HEADER = 12;
+
+    public static final int REFERENCE = 4;
+
+    public static final int ARRAY_HEADER = 16;
+
+    // java.util.ArrayList: size, modCount and the reference to its array
+    private static final int ARRAY_LIST = OBJECT_HEADER + 4 + 4 + REFERENCE;
+
+    // java.util.HashMap: table, entrySet, keySet and values references,
+    // size, modCount, threshold and loadFactor, plus an empty table
+    private static final int HASH_MAP = 48 + ARRAY_HEADER;
+
+    // a hash map node (header, hash, key, value and next) and its share of
+    // the table at the default load factor
+    private static final int MAP_MEM_PER_ENTRY = 32 + 8;
+
+    // java.lang.String: the reference to its chars and the cached hash
+    private static final int STRING = 24;
+
+    // DataByteArray: the reference to its bytes
+    private static final int BYTE_ARRAY = 16;
 
     public static long getPigObjMemSize(Object o) {
-        // 12 is added to each to account for the object overhead and the
-        // pointer in the tuple.
         switch (DataType.findType(o)) {
         case DataType.BYTEARRAY: {
             byte[] bytes = ((DataByteArray) o).get();
-            // bytearray size including rounding to 8 bytes
-            long byte_array_sz = roundToEight(bytes.length + 12);
-
-            return byte_array_sz + 16 /* 16 is additional size of DataByteArray */;
+            return BYTE_ARRAY + roundToEight(ARRAY_HEADER + bytes.length);
         }
 
         case DataType.CHARARRAY: {
             String s = (String) o;
-            // See PIG-1443 for a reference for this formula
-            return roundToEight((s.length() * 2) + 38);
+            return STRING + roundToEight(ARRAY_HEADER + s.length() * 2);
         }
 
         case DataType.TUPLE: {
@@ -62,16 +92,16 @@ public class SizeUtil {
         }
 
         case DataType.INTEGER:
-            return 4 + 8 + 4/* +4 to round to 8 bytes */;
+            return roundToEight(OBJECT_HEADER + 4);
 
         case DataType.LONG:
-            return 8 + 8;
+            return roundToEight(OBJECT_HEADER + 8);
 
         case DataType.MAP: {
             @SuppressWarnings("unchecked")
             Map<String, Object> m = (Map<String, Object>) o;
             Iterator<Map.Entry<String, Object>> i = m.entrySet().iterator();
-            long sum = 0;
+            long sum = HASH_MAP;
             while (i.hasNext()) {
                 Entry<String, Object> entry = i.next();
                 sum += getMapEntrySize(entry.getKey(), entry.getValue());
@@ -80,35 +110,43 @@ public class SizeUtil {
         }
 
         case DataType.FLOAT:
-            return 4 + 8 + 4/* +4 to round to 8 bytes */;
+            return roundToEight(OBJECT_HEADER + 4);
 
         case DataType.DOUBLE:
-            return 8 + 8;
+            return roundToEight(OBJECT_HEADER + 8);
 
         case DataType.BOOLEAN:
-            // boolean takes 1 byte , +7 to round it to 8
-            return 1 + 8 + 7;
+            return roundToEight(OBJECT_HEADER + 1);
 
         case DataType.NULL:
             return 0;
 
         default:
             // ??
-            return 12;
+            return roundToEight(OBJECT_HEADER + REFERENCE);
         }
     }
 
+    /**
+     * @param key
+     * @param value
+     * @return the size of an entry of a hash map, including its key and
+     *         value
+     */
     public static long getMapEntrySize(Object key, Object value) {
-        // based on experiments on 32 bit Java HotSpot VM
-        // size of map with 0 entries is 120 bytes
-        // each additional entry have around 24 bytes overhead at
-        // small number of entries. At larger number of entries, the
-        // overhead is around 32 bytes, probably because of the expanded
-        // data structures in anticapation of more entries being added
         return getPigObjMemSize(key) + getPigObjMemSize(value)
                 + MAP_MEM_PER_ENTRY;
     }
 
+    /**
+     * @param size number of elements
+     * @return the size of an ArrayList holding that many references, taking
+     *         its capacity to be its size
+     */
+    public static long getArrayListSize(int size) {
+        return ARRAY_LIST + roundToEight(ARRAY_HEADER + (long)size * REFERENCE);
+    }
+
     /**
      * Memory size of objects are rounded to multiple of 8 bytes
      * 
@@ -106,6 +106,8 @@ public abstract class SortedSpillBag extends SelfSpillBag {
             }
         }
         mContents.clear();
+        mMemSize = 0;
+        mLastContentsSize = 0;
         
         incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_RECS, spilled);
         
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * A dictionary of the short chararray and bytearray values read back by
+ * {@link BinInterSedes}, so that a value repeated in many tuples, such as a
+ * country or a status, is held once in memory instead of once per tuple.
+ * Chararrays are shared as they are. Bytearrays share their bytes but not
+ * the DataByteArray, which can be changed.
+ * <p>
+ * It is turned on for a task by {@link #PROP_INTERN_VALUES}. The values of
+ * each field position are looked up until they turn out to repeat too
+ * little to be worth it, after which that position is left alone. The
+ * dictionary stops growing at {@link #MAX_ENTRIES} values.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ValueDictionary {
+
+    public static final String PROP_INTERN_VALUES = "pig.exec.internValues";
+
+    private static final Log log = LogFactory.getLog(ValueDictionary.class);
+
+    // values longer than this, in chars or bytes, are not looked up
+    static final int MAX_VALUE_LENGTH = 64;
+
+    static final int MAX_ENTRIES = 1 << 16;
+
+    // field positions after this one are not looked up
+    private static final int MAX_FIELDS = 64;
+
+    // number of lookups of a field position between checks of its hits
+    static final int CHECK_INTERVAL = 1000;
+
+    private static final float MIN_HIT_RATIO = 0.5F;
+
+    private static volatile ValueDictionary instance = null;
+
+    private final Map<Object, Object> values = new HashMap<Object, Object>();
+    private final int[] lookups = new int[MAX_FIELDS];
+    private final int[] hits = new int[MAX_FIELDS];
+    private final boolean[] disabled = new boolean[MAX_FIELDS];
+
+    /**
+     * Start a new dictionary for the task, if the configuration asks for
+     * one, and drop the one of the previous task.
+     * @param conf configuration of the task
+     */
+    public static void configure(Configuration conf) {
+        if (conf != null && conf.getBoolean(PROP_INTERN_VALUES, false)) {
+            instance = new ValueDictionary();
+        } else {
+            instance = null;
+        }
+    }
+
+    /**
+     * @return the dictionary of the task, null if values are not interned
+     */
+    static ValueDictionary getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param field position of the value in its tuple
+     * @param o value read back
+     * @return an equal value already in the dictionary, or o
+     */
+    synchronized Object intern(int field, Object o) {
+        if (field >= MAX_FIELDS || disabled[field]) {
+            return o;
+        }
+        Object key;
+        if (o instanceof String) {
+            if (((String) o).length() > MAX_VALUE_LENGTH) {
+                return o;
+            }
+            key = o;
+        } else if (o instanceof DataByteArray) {
+            DataByteArray b = (DataByteArray) o;
+            if (b.size() > MAX_VALUE_LENGTH) {
+                return o;
+            }
+            // keep a DataByteArray of our own, as the one read back can
+            // be set to other bytes
+            key = new DataByteArray(b.get());
+        } else {
+            return o;
+        }
+
+        Object shared = values.get(key);
+        if (shared != null) {
+            hits[field]++;
+            o = shared instanceof String ? shared
+                    : new DataByteArray(((DataByteArray) shared).get());
+        } else if (values.size() < MAX_ENTRIES) {
+            values.put(key, key);
+        }
+
+        if (++lookups[field] == CHECK_INTERVAL) {
+            if (hits[field] < CHECK_INTERVAL * MIN_HIT_RATIO) {
+                disabled[field] = true;
+                if (log.isDebugEnabled()) {
+                    log.debug("Not interning the values of field " + field
+                            + ", only " + hits[field] + " of the last "
+                            + CHECK_INTERVAL + " were repeated");
+                }
+            }
+            lookups[field] = 0;
+            hits[field] = 0;
+        }
+        return o;
+    }
+
+    /**
+     * @return the number of values in the dictionary
+     */
+    synchronized int size() {
+        return values.size();
+    }
+}
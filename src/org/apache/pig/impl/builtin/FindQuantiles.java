@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -50,6 +51,7 @@ import org.apache.pig.impl.io.NullableLongWritable;
 import org.apache.pig.impl.io.NullableText;
 import org.apache.pig.impl.io.NullableTuple;
 import org.apache.pig.impl.io.PigNullableWritable;
+import org.apache.pig.impl.util.Pair;
 
 
 public class FindQuantiles extends EvalFunc<Map<String, Object>>{
@@ -281,6 +283,73 @@ public class FindQuantiles extends EvalFunc<Map<String, Object>>{
         }
     }
 
+    /**
+     * @return the comparator used to order the sort keys, honoring the
+     * asc/desc flags and the user comparison function, if any
+     */
+    public Comparator<Tuple> getComparator() {
+        return mComparator;
+    }
+
+    /**
+     * Computes the quantiles from a sorted list of weighted samples, as
+     * produced by a quantile sketch. The result has the same format as
+     * {@link #exec(Tuple)}. A sample that spans more than one partition is
+     * spread over those partitions in proportion to its weight, so a heavily
+     * repeated key is split evenly even though it is only sampled once.
+     * @param samples the samples in sort order, each with the number of
+     * keys it stands for
+     * @param numQuantiles the number of quantiles to generate, that is the
+     * reduce parallelism of the sort job
+     * @return the quantiles, or null if there were no samples
+     */
+    public Map<String, Object> findQuantiles(List<Pair<Tuple, Long>> samples,
+            int numQuantiles) throws ExecException {
+        long total = 0;
+        for (Pair<Tuple, Long> sample : samples) {
+            total += sample.second;
+        }
+        if (total == 0 || numQuantiles <= 0) {
+            return null;
+        }
+
+        ArrayList<Tuple> quantilesList = new ArrayList<Tuple>(numQuantiles);
+        InternalMap weightedParts = new InternalMap();
+        long prev = 0;
+        for (Pair<Tuple, Long> sample : samples) {
+            long cum = prev + sample.second;
+            int firstQuantile = quantilesList.size();
+            while (quantilesList.size() < numQuantiles
+                    && (double)(quantilesList.size() + 1) * total / numQuantiles <= cum) {
+                quantilesList.add(sample.first);
+            }
+            // Like the sampled version, every quantile but the last one gets
+            // a probability vector. Quantiles are the last key of their
+            // partition, so without it the partitioner would send them to
+            // the next one.
+            if (quantilesList.size() > firstQuantile && firstQuantile < numQuantiles - 1) {
+                double start = (double)prev * numQuantiles / total;
+                double end = (double)cum * numQuantiles / total;
+                int lastPart = Math.min((int)Math.ceil(end) - 1, numQuantiles - 1);
+                Tuple probVec = mTupleFactory.newTuple(numQuantiles);
+                for (int l = 0; l < numQuantiles; l++) {
+                    probVec.set(l, new Float(0.0));
+                }
+                for (int l = (int)start; l <= lastPart; l++) {
+                    double overlap = Math.min(end, l + 1) - Math.max(start, l);
+                    probVec.set(l, (float)(overlap / (end - start)));
+                }
+                weightedParts.put(sample.first, probVec);
+            }
+            prev = cum;
+        }
+
+        Map<String, Object> output = new HashMap<String, Object>();
+        output.put(QUANTILES_LIST, mBagFactory.newDefaultBag(quantilesList));
+        output.put(WEIGHTED_PARTS, weightedParts);
+        return output;
+    }
+
     private boolean areEqual(Tuple it, Tuple tuple) {
         return mComparator.compare(it, tuple)==0;
     }
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * A record reader used to read data written using {@link BlockRecordWriter}.
+ * A split reads the blocks whose sync marker starts in it.  Columns that
+ * are not required are skipped without being decoded.
+ */
+public class BlockRecordReader extends RecordReader<Text, Tuple> {
+
+    private static InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+    private static TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+    private long start;
+    private long pos;
+    private long end;
+    private BufferedPositionedInputStream in;
+    private DataInputStream inData = null;
+    private byte[] sync = new byte[BlockRecordWriter.SYNC_SIZE];
+    private boolean seekSync;
+
+    private boolean[] requiredColumns = null;
+
+    private Inflater inflater = new Inflater();
+    private byte[] stored = new byte[0];
+    private byte[] raw = new byte[0];
+
+    // the decoded block, by row or by column
+    private int numRows = 0;
+    private int row = 0;
+    private Tuple[] rowTuples;
+    private Object[][] columns;
+
+    private Tuple value = null;
+
+    public void initialize(InputSplit genericSplit,
+                           TaskAttemptContext context) throws IOException {
+        FileSplit split = (FileSplit) genericSplit;
+        Configuration job = context.getConfiguration();
+        start = split.getStart();
+        end = start + split.getLength();
+        final Path file = split.getPath();
+
+        FileSystem fs = file.getFileSystem(job);
+        FSDataInputStream fileIn = fs.open(split.getPath());
+        byte[] magic = new byte[BlockRecordWriter.MAGIC.length];
+        fileIn.readFully(magic);
+        if (!Arrays.equals(magic, BlockRecordWriter.MAGIC)) {
+            throw new IOException(file + " is not a block storage file");
+        }
+        int version = fileIn.read();
+        if (version != BlockRecordWriter.VERSION) {
+            throw new IOException("Unsupported block storage version " + version
+                    + " in " + file);
+        }
+        fileIn.readFully(sync);
+
+        // a split that starts in the header has the first block, any
+        // other one looks for the first sync marker
+        seekSync = start > BlockRecordWriter.HEADER_SIZE;
+        pos = seekSync ? start : BlockRecordWriter.HEADER_SIZE;
+        fileIn.seek(pos);
+        in = new BufferedPositionedInputStream(fileIn, pos);
+        inData = new DataInputStream(in);
+    }
+
+    /**
+     * @param requiredColumns the columns to read, or null for all of them.
+     * The tuples returned only have the required columns, in order.
+     */
+    public void setRequiredColumns(boolean[] requiredColumns) {
+        this.requiredColumns = requiredColumns;
+    }
+
+    public boolean nextKeyValue() throws IOException {
+        while (row >= numRows) {
+            if (!nextBlock()) {
+                return false;
+            }
+        }
+        if (rowTuples != null) {
+            value = rowTuples[row];
+        } else {
+            value = mTupleFactory.newTuple(columns.length);
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] != null) {
+                    value.set(i, columns[i][row]);
+                }
+            }
+        }
+        row++;
+        return true;
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (seekSync) {
+            if (!findSync()) {
+                return false;
+            }
+            seekSync = false;
+        } else {
+            if (in.getPosition() >= end) {
+                return false;
+            }
+            byte[] marker = new byte[sync.length];
+            int n = in.read(marker);
+            if (n == -1) {
+                return false;
+            }
+            if (n != sync.length) {
+                inData.readFully(marker, n, sync.length - n);
+            }
+            if (!Arrays.equals(marker, sync)) {
+                throw new IOException("Corrupt block storage file: sync marker missing at "
+                        + (in.getPosition() - sync.length));
+            }
+        }
+
+        int rawLength = inData.readInt();
+        byte codec = inData.readByte();
+        int storedLength = inData.readInt();
+        if (stored.length < storedLength) {
+            stored = new byte[storedLength];
+        }
+        inData.readFully(stored, 0, storedLength);
+        pos = in.getPosition();
+
+        byte[] block;
+        if (codec == BlockRecordWriter.CODEC_DEFLATE) {
+            if (raw.length < rawLength) {
+                raw = new byte[rawLength];
+            }
+            inflater.reset();
+            inflater.setInput(stored, 0, storedLength);
+            try {
+                int n = 0;
+                while (n < rawLength && !inflater.finished()) {
+                    n += inflater.inflate(raw, n, rawLength - n);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt block storage file", e);
+            }
+            block = raw;
+        } else if (codec == BlockRecordWriter.CODEC_NONE) {
+            block = stored;
+        } else {
+            throw new IOException("Unknown block storage codec " + codec);
+        }
+        decode(new DataInputStream(new ByteArrayInputStream(block, 0, rawLength)));
+        return true;
+    }
+
+    /**
+     * Skip to the first sync marker that starts in the split.
+     */
+    private boolean findSync() throws IOException {
+        byte[] window = new byte[sync.length];
+        int filled = 0;
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                return false;
+            }
+            System.arraycopy(window, 1, window, 0, window.length - 1);
+            window[window.length - 1] = (byte)b;
+            if (filled < window.length) {
+                filled++;
+            }
+            if (filled == window.length && Arrays.equals(window, sync)) {
+                return in.getPosition() - sync.length < end;
+            }
+            if (in.getPosition() - filled >= end) {
+                return false;
+            }
+        }
+    }
+
+    private void decode(DataInputStream data) throws IOException {
+        numRows = data.readInt();
+        row = 0;
+        int width = data.readInt();
+        if (width < 0) {
+            columns = null;
+            rowTuples = new Tuple[numRows];
+            for (int i = 0; i < numRows; i++) {
+                Tuple t = (Tuple)sedes.readDatum(data);
+                rowTuples[i] = requiredColumns == null ? t : project(t);
+            }
+            return;
+        }
+
+        rowTuples = null;
+        columns = new Object[outputWidth(width)][];
+        int out = 0;
+        for (int i = 0; i < width || (requiredColumns != null && i < requiredColumns.length); i++) {
+            boolean required = requiredColumns == null
+                    || (i < requiredColumns.length && requiredColumns[i]);
+            if (i >= width) {
+                // required, but not in the data
+                if (required) out++;
+                continue;
+            }
+            byte enc = data.readByte();
+            int length = data.readInt();
+            if (!required) {
+                data.skipBytes(length);
+                continue;
+            }
+            columns[out++] = decodeColumn(data, enc);
+        }
+    }
+
+    private int outputWidth(int width) {
+        if (requiredColumns == null) {
+            return width;
+        }
+        int n = 0;
+        for (boolean b : requiredColumns) {
+            if (b) n++;
+        }
+        return n;
+    }
+
+    private Tuple project(Tuple t) throws IOException {
+        Tuple res = mTupleFactory.newTuple(outputWidth(t.size()));
+        int out = 0;
+        for (int i = 0; i < requiredColumns.length; i++) {
+            if (requiredColumns[i]) {
+                res.set(out++, i < t.size() ? t.get(i) : null);
+            }
+        }
+        return res;
+    }
+
+    private Object[] decodeColumn(DataInputStream data, byte enc) throws IOException {
+        Object[] values = new Object[numRows];
+        if (enc == BlockRecordWriter.ENC_GENERIC) {
+            for (int i = 0; i < numRows; i++) {
+                values[i] = sedes.readDatum(data);
+            }
+            return values;
+        }
+
+        byte[] nulls = new byte[(numRows + 7) / 8];
+        data.readFully(nulls);
+        String[] dict = null;
+        if (enc == BlockRecordWriter.ENC_DICT) {
+            dict = new String[data.readInt()];
+            for (int i = 0; i < dict.length; i++) {
+                dict[i] = (String)sedes.readDatum(data);
+            }
+        }
+        for (int i = 0; i < numRows; i++) {
+            if ((nulls[i / 8] & (1 << (i % 8))) != 0) {
+                continue;
+            }
+            switch (enc) {
+            case BlockRecordWriter.ENC_INT:
+                values[i] = data.readInt();
+                break;
+            case BlockRecordWriter.ENC_LONG:
+                values[i] = data.readLong();
+                break;
+            case BlockRecordWriter.ENC_FLOAT:
+                values[i] = data.readFloat();
+                break;
+            case BlockRecordWriter.ENC_DOUBLE:
+                values[i] = data.readDouble();
+                break;
+            case BlockRecordWriter.ENC_DICT:
+                values[i] = dict[dict.length <= 256 ? data.readUnsignedByte() : data.readUnsignedShort()];
+                break;
+            default:
+                throw new IOException("Unknown block storage encoding " + enc);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Text getCurrentKey() {
+        // the key is always null since we don't really have a key for each
+        // input record
+        return null;
+    }
+
+    @Override
+    public Tuple getCurrentValue() {
+        return value;
+    }
+
+    /**
+     * Get the progress within the split
+     */
+    public float getProgress() {
+        if (start == end) {
+            return 0.0f;
+        } else {
+            return Math.min(1.0f, (pos - start) / (float)(end - start));
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        inflater.end();
+        if (in != null) {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * A record writer used to write data for {@link BlockRecordReader}.
+ * Tuples are buffered into blocks.  When all the tuples of a block have
+ * the same number of fields the block is written column by column: int,
+ * long, float and double columns are packed with a null bitmap, chararray
+ * columns with few distinct values are dictionary encoded and anything
+ * else is written with the default InterSedes.  Each block is deflated
+ * only if that makes it smaller, and after a few blocks that do not
+ * compress the writer stops trying for a while.
+ * <p>
+ * The file starts with a header and a random sync marker, which is
+ * repeated in front of every block so that a split can find the first
+ * block in it.
+ */
+public class BlockRecordWriter extends
+        RecordWriter<org.apache.hadoop.io.WritableComparable, Tuple> {
+
+    /**
+     * Maximum number of tuples in a block.
+     */
+    public static final String BLOCK_ROWS = "pig.tmpfile.block.rows";
+
+    public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+    static final byte[] MAGIC = { 'P', 'I', 'G', 'B' };
+    static final byte VERSION = 1;
+    static final int SYNC_SIZE = 16;
+    static final int HEADER_SIZE = MAGIC.length + 1 + SYNC_SIZE;
+
+    // how a block is stored
+    static final byte CODEC_NONE = 0;
+    static final byte CODEC_DEFLATE = 1;
+
+    // how a column of a block is encoded
+    static final byte ENC_GENERIC = 0;
+    static final byte ENC_INT = 1;
+    static final byte ENC_LONG = 2;
+    static final byte ENC_FLOAT = 3;
+    static final byte ENC_DOUBLE = 4;
+    static final byte ENC_DICT = 5;
+
+    // a block is deflated if that saves at least this much
+    private static final double MIN_COMPRESSION = 0.9;
+    // number of incompressible blocks in a row after which the writer
+    // stops trying to compress, and for how many blocks
+    private static final int MAX_INCOMPRESSIBLE = 3;
+    private static final int SKIP_BLOCKS = 16;
+
+    private static InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+    private static TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+    /**
+     * the outputstream to write out on
+     */
+    private DataOutputStream out;
+
+    private byte[] sync = new byte[SYNC_SIZE];
+
+    private int blockRows;
+
+    private List<Tuple> rows;
+
+    private Buffer raw = new Buffer();
+    private DataOutputStream rawData = new DataOutputStream(raw);
+    private Buffer column = new Buffer();
+    private DataOutputStream columnData = new DataOutputStream(column);
+    private Buffer compressed = new Buffer();
+    private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] deflateBuf = new byte[64 * 1024];
+
+    private int incompressible = 0;
+    private int skipCompression = 0;
+
+    public BlockRecordWriter(DataOutputStream out, Configuration conf)
+            throws IOException {
+        this.out = out;
+        blockRows = conf.getInt(BLOCK_ROWS, DEFAULT_BLOCK_ROWS);
+        rows = new ArrayList<Tuple>(blockRows);
+        new Random().nextBytes(sync);
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(sync);
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.hadoop.mapreduce.RecordWriter#close(org.apache.hadoop.mapreduce.TaskAttemptContext)
+     */
+    @Override
+    public void close(TaskAttemptContext arg0) throws IOException,
+            InterruptedException {
+        flushBlock();
+        deflater.end();
+        out.close();
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.hadoop.mapreduce.RecordWriter#write(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void write(WritableComparable wc, Tuple t) throws IOException,
+            InterruptedException {
+        // the caller may reuse the tuple once this returns
+        rows.add(mTupleFactory.newTuple(t.getAll()));
+        if (rows.size() >= blockRows) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        raw.reset();
+        rawData.writeInt(rows.size());
+        int width = rows.get(0).size();
+        for (Tuple t : rows) {
+            if (t.size() != width) {
+                width = -1;
+                break;
+            }
+        }
+        rawData.writeInt(width);
+        if (width < 0) {
+            // tuples of different sizes are written as they are
+            for (Tuple t : rows) {
+                sedes.writeDatum(rawData, t);
+            }
+        } else {
+            for (int i = 0; i < width; i++) {
+                column.reset();
+                byte enc = writeColumn(i);
+                rawData.writeByte(enc);
+                rawData.writeInt(column.size());
+                column.writeTo(rawData);
+            }
+        }
+        rows.clear();
+
+        byte codec = CODEC_NONE;
+        Buffer block = raw;
+        if (skipCompression > 0) {
+            skipCompression--;
+        } else {
+            compress();
+            if (compressed.size() < raw.size() * MIN_COMPRESSION) {
+                codec = CODEC_DEFLATE;
+                block = compressed;
+                incompressible = 0;
+            } else if (++incompressible >= MAX_INCOMPRESSIBLE) {
+                skipCompression = SKIP_BLOCKS;
+                incompressible = 0;
+            }
+        }
+
+        out.write(sync);
+        out.writeInt(raw.size());
+        out.writeByte(codec);
+        out.writeInt(block.size());
+        block.writeTo(out);
+    }
+
+    private void compress() {
+        compressed.reset();
+        deflater.reset();
+        deflater.setInput(raw.getData(), 0, raw.size());
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflateBuf);
+            compressed.write(deflateBuf, 0, n);
+        }
+    }
+
+    private byte writeColumn(int col) throws IOException {
+        Class<?> type = null;
+        for (Tuple t : rows) {
+            Object o = t.get(col);
+            if (o == null) {
+                continue;
+            }
+            if (type == null) {
+                type = o.getClass();
+            } else if (type != o.getClass()) {
+                type = Object.class;
+                break;
+            }
+        }
+
+        if (type == Integer.class) {
+            writeNulls(col);
+            for (Tuple t : rows) {
+                Object o = t.get(col);
+                if (o != null) columnData.writeInt((Integer)o);
+            }
+            return ENC_INT;
+        } else if (type == Long.class) {
+            writeNulls(col);
+            for (Tuple t : rows) {
+                Object o = t.get(col);
+                if (o != null) columnData.writeLong((Long)o);
+            }
+            return ENC_LONG;
+        } else if (type == Float.class) {
+            writeNulls(col);
+            for (Tuple t : rows) {
+                Object o = t.get(col);
+                if (o != null) columnData.writeFloat((Float)o);
+            }
+            return ENC_FLOAT;
+        } else if (type == Double.class) {
+            writeNulls(col);
+            for (Tuple t : rows) {
+                Object o = t.get(col);
+                if (o != null) columnData.writeDouble((Double)o);
+            }
+            return ENC_DOUBLE;
+        } else if (type == String.class && writeDictionary(col)) {
+            return ENC_DICT;
+        }
+
+        for (Tuple t : rows) {
+            sedes.writeDatum(columnData, t.get(col));
+        }
+        return ENC_GENERIC;
+    }
+
+    /**
+     * Write a chararray column as a dictionary and an index into it for
+     * each value, unless it has too many distinct values for that to pay.
+     * @return whether the column was written
+     */
+    private boolean writeDictionary(int col) throws IOException {
+        int maxSize = Math.min(rows.size() / 2, 1 << 16);
+        Map<String, Integer> index = new HashMap<String, Integer>();
+        List<String> dict = new ArrayList<String>();
+        for (Tuple t : rows) {
+            String s = (String)t.get(col);
+            if (s != null && !index.containsKey(s)) {
+                if (dict.size() == maxSize) {
+                    return false;
+                }
+                index.put(s, dict.size());
+                dict.add(s);
+            }
+        }
+
+        writeNulls(col);
+        columnData.writeInt(dict.size());
+        for (String s : dict) {
+            sedes.writeDatum(columnData, s);
+        }
+        for (Tuple t : rows) {
+            String s = (String)t.get(col);
+            if (s == null) {
+                continue;
+            }
+            if (dict.size() <= 256) {
+                columnData.writeByte(index.get(s));
+            } else {
+                columnData.writeShort(index.get(s));
+            }
+        }
+        return true;
+    }
+
+    private void writeNulls(int col) throws IOException {
+        byte[] nulls = new byte[(rows.size() + 7) / 8];
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).get(col) == null) {
+                nulls[i / 8] |= 1 << (i % 8);
+            }
+        }
+        columnData.write(nulls);
+    }
+
+    /**
+     * A byte array stream whose buffer can be read without copying it.
+     */
+    static class Buffer extends ByteArrayOutputStream {
+        byte[] getData() {
+            return buf;
+        }
+    }
+}
@@ -100,10 +100,7 @@ public class InterRecordReader extends RecordReader<Text, Tuple> {
           }
           if(b == -1) return false;
           b = in.read();
-          if(b != BinInterSedes.TINYTUPLE && 
-                  b != BinInterSedes.SMALLTUPLE &&
-                  b != BinInterSedes.TUPLE &&
-                  b != -1) {
+          if(!BinInterSedes.isTupleType(b) && b != -1) {
               continue;
           }
           if(b == -1) return false;
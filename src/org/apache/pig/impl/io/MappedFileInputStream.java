@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An input stream over a file mapped in memory. Reads are served from the
+ * mapping without a system call or a copy into an intermediate buffer, and
+ * reading the same file again uses the pages the OS has already cached.
+ * Files are mapped a region at a time, so that files over 2 GB can be read.
+ */
+public class MappedFileInputStream extends InputStream {
+
+    static final long REGION_SIZE = 256L * 1024 * 1024;
+
+    // only kept open while there are regions left to map
+    private FileChannel channel;
+    private final long length;
+    private long regionEnd = 0;
+    private MappedByteBuffer buf;
+
+    public MappedFileInputStream(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            channel = raf.getChannel();
+            length = channel.size();
+            mapNextRegion();
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private void mapNextRegion() throws IOException {
+        long size = Math.min(REGION_SIZE, length - regionEnd);
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, regionEnd, size);
+        regionEnd += size;
+        if (regionEnd == length) {
+            // the mapping stays valid once the channel is closed
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // false at the end of the file
+    private boolean ensure() throws IOException {
+        if (buf == null) {
+            return false;
+        }
+        if (!buf.hasRemaining() && channel != null) {
+            mapNextRegion();
+        }
+        return buf.hasRemaining();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensure()) {
+            return -1;
+        }
+        return buf.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensure()) {
+            return -1;
+        }
+        int n = Math.min(len, buf.remaining());
+        buf.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || !ensure()) {
+            return 0;
+        }
+        int skipped = (int) Math.min(n, buf.remaining());
+        buf.position(buf.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buf == null ? 0 : buf.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buf = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -44,4 +44,13 @@ public class NullableBag extends PigNullableWritable {
     public Object getValueAsPigType() {
         return isNull() ? null : (DataBag)mValue;
     }
+
+    @Override
+    public boolean setValueAsPigType(Object o) {
+        setNull(o == null);
+        if (o != null) {
+            mValue = (DataBag)o;
+        }
+        return true;
+    }
 }
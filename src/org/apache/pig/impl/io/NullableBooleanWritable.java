@@ -41,4 +41,13 @@ public class NullableBooleanWritable extends PigNullableWritable {
     public Object getValueAsPigType() {
         return isNull() ? null : ((BooleanWritable)mValue).get();
     }
+
+    @Override
+    public boolean setValueAsPigType(Object o) {
+        setNull(o == null);
+        if (o != null) {
+            ((BooleanWritable)mValue).set((Boolean)o);
+        }
+        return true;
+    }
 }
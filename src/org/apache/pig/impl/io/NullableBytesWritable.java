@@ -49,4 +49,22 @@ public class NullableBytesWritable extends PigNullableWritable {
         }
         return obj;
     }
+
+    @Override
+    public boolean setValueAsPigType(Object o) {
+        setNull(o == null);
+        if (o != null) {
+            Tuple t = (Tuple)mValue;
+            try {
+                if (t.size() == 0) {
+                    t.append(o);
+                } else {
+                    t.set(0, o);
+                }
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return true;
+    }
 }
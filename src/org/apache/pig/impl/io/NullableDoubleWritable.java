@@ -38,4 +38,13 @@ public class NullableDoubleWritable extends PigNullableWritable {
     public Object getValueAsPigType() {
         return isNull() ? null : ((DoubleWritable)mValue).get();
     }
+
+    @Override
+    public boolean setValueAsPigType(Object o) {
+        setNull(o == null);
+        if (o != null) {
+            ((DoubleWritable)mValue).set((Double)o);
+        }
+        return true;
+    }
 }
@@ -38,4 +38,13 @@ public class NullableFloatWritable extends PigNullableWritable {
     public Object getValueAsPigType() {
         return isNull() ? null : ((FloatWritable)mValue).get();
     }
+
+    @Override
+    public boolean setValueAsPigType(Object o) {
+        setNull(o == null);
+        if (o != null) {
+            ((FloatWritable)mValue).set((Float)o);
+        }
+        return true;
+    }
 }
@@ -38,4 +38,13 @@ public class NullableIntWritable extends PigNullableWritable {
     public Object getValueAsPigType() {
         return isNull() ? null : ((IntWritable)mValue).get();
     }
+
+    @Override
+    public boolean setValueAsPigType(Object o) {
+        setNull(o == null);
+        if (o != null) {
+            ((IntWritable)mValue).set((Integer)o);
+        }
+        return true;
+    }
 }
@@ -38,4 +38,13 @@ public class NullableLongWritable extends PigNullableWritable {
     public Object getValueAsPigType() {
         return isNull() ? null : ((LongWritable)mValue).get();
     }
+
+    @Override
+    public boolean setValueAsPigType(Object o) {
+        setNull(o == null);
+        if (o != null) {
+            ((LongWritable)mValue).set((Long)o);
+        }
+        return true;
+    }
 }
@@ -45,4 +45,13 @@ public class NullableText extends PigNullableWritable {
     public Object getValueAsPigType() {
         return isNull() ? null : ((Text)mValue).toString();
     }
+
+    @Override
+    public boolean setValueAsPigType(Object o) {
+        setNull(o == null);
+        if (o != null) {
+            ((Text)mValue).set((String)o);
+        }
+        return true;
+    }
 }
@@ -44,4 +44,13 @@ public class NullableTuple extends PigNullableWritable {
     public Object getValueAsPigType() {
         return isNull() ? null : (Tuple)mValue;
     }
+
+    @Override
+    public boolean setValueAsPigType(Object o) {
+        setNull(o == null);
+        if (o != null) {
+            mValue = (Tuple)o;
+        }
+        return true;
+    }
 }
@@ -157,6 +157,17 @@ public abstract class PigNullableWritable implements WritableComparable {
      */
     abstract public Object getValueAsPigType();
 
+    /**
+     * Sets the wrapped value from a pig type, so the same writable can be
+     * written again for the next record.  A null value sets the null
+     * indicator.
+     * @param o the new value
+     * @return false if this writable cannot be reused, the default
+     */
+    public boolean setValueAsPigType(Object o) {
+        return false;
+    }
+
     @Override
     public int hashCode() {
         // For now, always give a null a hash code of 0.  It isn't clear this
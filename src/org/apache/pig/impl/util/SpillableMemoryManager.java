@@ -21,13 +21,18 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryNotificationInfo;
 import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import javax.management.Notification;
 import javax.management.NotificationEmitter;
@@ -38,20 +43,46 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * This class Tracks the tenured pool and a list of Spillable objects. When memory gets low, this
- * class will start requesting Spillable objects to free up memory.
+ * This class keeps the memory used by Spillable objects within a budget and tracks the tenured
+ * pool as a safety net.
  * <p>
- * Low memory is defined as more than 50% of the tenured pool being allocated. Spillable objects are
- * tracked using WeakReferences so that the objects can be GCed even though this class has a reference
- * to them. 
- *
+ * Consumers reserve a {@link MemoryBudget} for the memory they hold as they grow. When the
+ * reservations go over the budget, a fraction of the heap, the biggest consumers that can shrink
+ * are asked to spill right away, in the thread that made the reservation, instead of waiting for
+ * the heap to fill up.
+ * <p>
+ * The tenured pool is still tracked for what the budget misses. Low memory is defined as more
+ * than 50% of the tenured pool being allocated, at which point this class will start requesting
+ * the registered Spillable objects to free up memory.
+ * <p>
+ * Spillable objects are tracked using WeakReferences so that the objects can be GCed even though
+ * this class has a reference to them. The reservations of the objects that were GCed are given
+ * back.
  */
 public class SpillableMemoryManager implements NotificationListener {
     
     private final Log log = LogFactory.getLog(getClass());
     
+    private static SpillableMemoryManager instance;
+    
     LinkedList<WeakReference<Spillable>> spillables = new LinkedList<WeakReference<Spillable>>();
     
+    // budgets that hold a reservation, and the total they reserve
+    private Set<MemoryBudget> reserving = new HashSet<MemoryBudget>();
+    private long reservedTotal = 0L;
+    
+    // budgets of the consumers that were GCed, to give their reservation back
+    private ReferenceQueue<Spillable> collected = new ReferenceQueue<Spillable>();
+    
+    // reservations are made in steps of this much, so that a growing
+    // consumer does not come back for every few bytes
+    static final long RESERVATION_STEP = 1L << 20;
+    
+    // fraction of the heap the consumers can reserve before the biggest
+    // ones are asked to spill (default 0.3 - this can be overridden by
+    // user supplied property, 0 turns the budget off)
+    private static double memoryBudgetFraction = 0.3;
+    
     // if we freed at least this much, invoke GC 
     // (default 40 MB - this can be overridden by user supplied property)
     private static long gcActivationSize = 40000000L ;
@@ -78,6 +109,47 @@ public class SpillableMemoryManager implements NotificationListener {
     // log notification on collection threshold exceeded only the first time
     private boolean firstCollectionThreshExceededLogged = false;
     
+    /**
+     * A reservation of memory made by one consumer. It refers to the
+     * consumer weakly, and its reservation is given back once the consumer
+     * is GCed.
+     */
+    public static class MemoryBudget extends WeakReference<Spillable> {
+        
+        private final boolean shrinkable;
+        
+        private volatile long reserved = 0L;
+        
+        MemoryBudget(Spillable s, ReferenceQueue<Spillable> q, boolean shrinkable) {
+            super(s, q);
+            this.shrinkable = shrinkable;
+        }
+        
+        /**
+         * @return whether the consumer can be asked to spill
+         */
+        public boolean isShrinkable() {
+            return shrinkable;
+        }
+        
+        /**
+         * @return the number of bytes reserved
+         */
+        public long getReserved() {
+            return reserved;
+        }
+    }
+    
+    /**
+     * @return the memory manager of this JVM
+     */
+    public static synchronized SpillableMemoryManager getInstance() {
+        if (instance == null) {
+            instance = new SpillableMemoryManager();
+        }
+        return instance;
+    }
+    
     public SpillableMemoryManager() {
         ((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
         List<MemoryPoolMXBean> mpbeans = ManagementFactory.getMemoryPoolMXBeans();
@@ -129,10 +201,15 @@ public class SpillableMemoryManager implements NotificationListener {
             
             gcActivationSize = Long.parseLong(
                     properties.getProperty("pig.spill.gc.activation.size") ) ;
+            
+            String budget = properties.getProperty("pig.spill.memory.budget");
+            if (budget != null) {
+                memoryBudgetFraction = Double.parseDouble(budget);
+            }
         } 
         catch (NumberFormatException  nfe) {
             throw new RuntimeException("Error while converting system configurations" +
-            		"spill.size.threshold, spill.gc.activation.size", nfe) ;
+            		"spill.size.threshold, spill.gc.activation.size, spill.memory.budget", nfe) ;
         }
     }
     
@@ -223,7 +300,8 @@ public class SpillableMemoryManager implements NotificationListener {
             int numObjSpilled = 0;
             boolean invokeGC = false;
             for (i = spillables.iterator(); i.hasNext();) {
-                Spillable s = i.next().get();
+                WeakReference<Spillable> ref = i.next();
+                Spillable s = ref.get();
                 // Still need to check for null here, even after we removed
                 // above, because the reference may have gone bad on us
                 // since the last check.
@@ -239,6 +317,9 @@ public class SpillableMemoryManager implements NotificationListener {
                     break ;
                 }
                 s.spill();               
+                if (ref instanceof MemoryBudget) {
+                    release((MemoryBudget)ref);
+                }
                 numObjSpilled++;
                 estimatedFreed += toBeFreed;
                 accumulatedFreeSize += toBeFreed;
@@ -273,9 +354,11 @@ public class SpillableMemoryManager implements NotificationListener {
      * Register a spillable to be tracked. No need to unregister, the tracking will stop
      * when the spillable is GCed.
      * @param s the spillable to track.
+     * @return the budget through which the spillable reserves the memory it holds
      */
-    public void registerSpillable(Spillable s) {
+    public MemoryBudget registerSpillable(Spillable s) {
         synchronized(spillables) {
+            expungeCollected();
             // Cleaing the entire list is too expensive.  Just trim off the front while
             // we can.
             WeakReference<Spillable> first = spillables.peek();
@@ -283,7 +366,144 @@ public class SpillableMemoryManager implements NotificationListener {
                 spillables.remove();
                 first = spillables.peek();
             }
-            spillables.add(new WeakReference<Spillable>(s));
+            MemoryBudget budget = new MemoryBudget(s, collected, true);
+            spillables.add(budget);
+            return budget;
+        }
+    }
+    
+    /**
+     * Create a budget for a consumer that is not spilled on low memory,
+     * either because it spills itself or because it cannot spill at all.
+     * @param s the consumer
+     * @param shrinkable whether the consumer can be asked to spill when the
+     * reservations are over the budget
+     * @return the budget through which the consumer reserves the memory it holds
+     */
+    public MemoryBudget registerBudget(Spillable s, boolean shrinkable) {
+        synchronized(spillables) {
+            expungeCollected();
+            return new MemoryBudget(s, collected, shrinkable);
+        }
+    }
+    
+    /**
+     * Reserve enough memory for a consumer that now holds the given number
+     * of bytes. Reservations are made in steps, so this returns right away
+     * unless the consumer grew past its reservation or shrank well below
+     * it, or holds nothing anymore. If the reservations go over the budget, the biggest consumers
+     * that can shrink are asked to spill before this returns, which can be
+     * the consumer itself.
+     * @param budget the budget of the consumer
+     * @param bytes the number of bytes the consumer holds
+     */
+    public void reserve(MemoryBudget budget, long bytes) {
+        long reserved = budget.reserved;
+        if (bytes > 0 ? bytes <= reserved && bytes + 2 * RESERVATION_STEP > reserved
+                : reserved == 0) {
+            return;
+        }
+        synchronized(spillables) {
+            expungeCollected();
+            setReserved(budget, bytes > 0 ? bytes + RESERVATION_STEP : 0L);
+            long limit = getBudgetLimit();
+            if (reservedTotal > limit) {
+                shrink(limit);
+            }
+        }
+    }
+    
+    /**
+     * Give back the whole reservation of a consumer.
+     * @param budget the budget of the consumer
+     */
+    public void release(MemoryBudget budget) {
+        reserve(budget, 0L);
+    }
+    
+    /**
+     * @return the number of bytes reserved by all consumers
+     */
+    public long getReservedTotal() {
+        synchronized(spillables) {
+            expungeCollected();
+            return reservedTotal;
+        }
+    }
+    
+    /**
+     * @return the number of bytes the consumers can reserve before the
+     * biggest ones are asked to spill
+     */
+    public long getBudgetLimit() {
+        if (memoryBudgetFraction <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long)(Runtime.getRuntime().maxMemory() * memoryBudgetFraction);
+    }
+    
+    private void setReserved(MemoryBudget budget, long reserved) {
+        reservedTotal += reserved - budget.reserved;
+        budget.reserved = reserved;
+        if (reserved > 0) {
+            reserving.add(budget);
+        } else {
+            reserving.remove(budget);
+        }
+    }
+    
+    private void expungeCollected() {
+        Reference<? extends Spillable> ref;
+        while ((ref = collected.poll()) != null) {
+            MemoryBudget budget = (MemoryBudget)ref;
+            if (reserving.remove(budget)) {
+                reservedTotal -= budget.reserved;
+            }
+        }
+    }
+    
+    /**
+     * Spill the biggest consumers that can shrink until the reservations
+     * are back to three quarters of the budget.
+     */
+    private void shrink(long limit) {
+        // the reservations of consumers that can no longer be reached but
+        // were not GCed yet are still counted, so leave them to the GC
+        // when the heap is not that full
+        Runtime rt = Runtime.getRuntime();
+        if (rt.totalMemory() - rt.freeMemory() < limit) {
+            return;
+        }
+        List<MemoryBudget> candidates = new ArrayList<MemoryBudget>();
+        for (MemoryBudget budget : reserving) {
+            if (budget.shrinkable && budget.reserved >= spillFileSizeThreshold) {
+                candidates.add(budget);
+            }
+        }
+        Collections.sort(candidates, new Comparator<MemoryBudget>() {
+            public int compare(MemoryBudget o1, MemoryBudget o2) {
+                return o1.reserved > o2.reserved ? -1 : (o1.reserved < o2.reserved ? 1 : 0);
+            }
+        });
+        long target = limit - limit / 4;
+        long freed = 0;
+        int numObjSpilled = 0;
+        for (MemoryBudget budget : candidates) {
+            if (reservedTotal <= target) {
+                break;
+            }
+            Spillable s = budget.get();
+            if (s == null) {
+                continue;
+            }
+            freed += budget.reserved;
+            s.spill();
+            setReserved(budget, 0L);
+            numObjSpilled++;
+        }
+        if (numObjSpilled > 0) {
+            log.info("Spilled an estimate of " + freed + " bytes from " + numObjSpilled
+                    + " objects to keep reservations within a budget of " + limit + " bytes");
         }
     }
 }
@@ -37,6 +37,7 @@ import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.BlockStorage;
 import org.apache.pig.impl.io.InterStorage;
 import org.apache.pig.impl.io.ReadToEndLoader;
 import org.apache.pig.impl.io.TFileStorage;
@@ -203,6 +204,8 @@ public class Utils {
         boolean tmpFileCompression = pigContext.getProperties().getProperty("pig.tmpfilecompression", "false").equals("true");
         String codec = pigContext.getProperties().getProperty("pig.tmpfilecompression.codec", "");
         if (tmpFileCompression) {
+            if (codec.equals("auto"))
+                return BlockStorage.class.getName();
             if (codec.equals("lzo"))
                 pigContext.getProperties().setProperty("io.compression.codec.lzo.class", "com.hadoop.compression.lzo.LzoCodec");
             return TFileStorage.class.getName();
@@ -212,6 +215,8 @@ public class Utils {
 
     public static FileInputLoadFunc getTmpFileStorageObject(Configuration conf) throws IOException {
         boolean tmpFileCompression = conf.getBoolean("pig.tmpfilecompression", false);
+        if (tmpFileCompression && conf.get("pig.tmpfilecompression.codec", "").equals("auto"))
+            return new BlockStorage();
         return tmpFileCompression ? new TFileStorage() : new InterStorage();
     }
 
@@ -225,10 +230,10 @@ public class Utils {
         if (pigContext == null)
             return "";
         String codec = pigContext.getProperties().getProperty("pig.tmpfilecompression.codec", "");
-        if (codec.equals("gz") || codec.equals("lzo"))
+        if (codec.equals("gz") || codec.equals("lzo") || codec.equals("auto"))
             return codec;
         else
-            throw new IOException("Invalid temporary file compression codec ["+codec+"]. Expected compression codecs are gz and lzo");
+            throw new IOException("Invalid temporary file compression codec ["+codec+"]. Expected compression codecs are gz, lzo and auto");
     }
 
     public static String getStringFromArray(String[] arr) {
@@ -25,6 +25,7 @@ import java.util.Set;
 import org.apache.pig.newplan.OperatorPlan;
 import org.apache.pig.newplan.logical.rules.AddForEach;
 import org.apache.pig.newplan.logical.rules.ColumnMapKeyPrune;
+import org.apache.pig.newplan.logical.rules.CommonSubplanEliminator;
 import org.apache.pig.newplan.logical.rules.DuplicateForEachColumnRewrite;
 import org.apache.pig.newplan.logical.rules.FilterAboveForeach;
 import org.apache.pig.newplan.logical.rules.GroupByConstParallelSetter;
@@ -33,8 +34,10 @@ import org.apache.pig.newplan.logical.rules.InputOutputFileValidator;
 import org.apache.pig.newplan.logical.rules.LimitOptimizer;
 import org.apache.pig.newplan.logical.rules.LoadTypeCastInserter;
 import org.apache.pig.newplan.logical.rules.LogicalExpressionSimplifier;
+import org.apache.pig.newplan.logical.rules.MapSideGroupOptimizer;
 import org.apache.pig.newplan.logical.rules.MergeFilter;
 import org.apache.pig.newplan.logical.rules.MergeForEach;
+import org.apache.pig.newplan.logical.rules.MergeLoad;
 import org.apache.pig.newplan.logical.rules.PartitionFilterOptimizer;
 import org.apache.pig.newplan.logical.rules.PushDownForEachFlatten;
 import org.apache.pig.newplan.logical.rules.PushUpFilter;
@@ -57,10 +60,26 @@ public class LogicalPlanOptimizer extends PlanOptimizer {
         List<Set<Rule>> ls = new ArrayList<Set<Rule>>();	    
 
         
+        // MergeLoad set
+        // This merges loads of the same input, before splits are inserted
+        Set<Rule> s = new HashSet<Rule>();
+        Rule r = new MergeLoad("MergeLoad");
+        checkAndAddRule(s, r);
+        if (!s.isEmpty())
+            ls.add(s);
+        
+        // CommonSubplanEliminator set
+        // This removes operators computing the same thing twice
+        s = new HashSet<Rule>();
+        r = new CommonSubplanEliminator("CommonSubplanEliminator");
+        checkAndAddRule(s, r);
+        if (!s.isEmpty())
+            ls.add(s);
+        
         // ImplicitSplitInserter set
         // This set of rules Insert Foreach dedicated for casting after load
-        Set<Rule> s = new HashSet<Rule>();
-        Rule r = new ImplicitSplitInserter("ImplicitSplitInserter");
+        s = new HashSet<Rule>();
+        r = new ImplicitSplitInserter("ImplicitSplitInserter");
         checkAndAddRule(s, r);
         if (!s.isEmpty())
             ls.add(s);
@@ -141,6 +160,15 @@ public class LogicalPlanOptimizer extends PlanOptimizer {
         if (!s.isEmpty())
             ls.add(s);
         
+        // MapSideGroup set
+        // This makes groups on sorted data collected or merge groups,
+        // before the columns of the loads are pruned
+        s = new HashSet<Rule>();
+        r = new MapSideGroupOptimizer("MapSideGroupOptimizer");
+        checkAndAddRule(s, r);
+        if (!s.isEmpty())
+            ls.add(s);
+        
         // PushDownForEachFlatten set
         s = new HashSet<Rule>();
         // Add the PushDownForEachFlatten
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.rules;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.Pair;
+import org.apache.pig.newplan.DependencyOrderWalker;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionVisitor;
+import org.apache.pig.newplan.logical.expression.ProjectExpression;
+import org.apache.pig.newplan.logical.optimizer.AllExpressionVisitor;
+import org.apache.pig.newplan.logical.optimizer.SchemaResetter;
+import org.apache.pig.newplan.logical.optimizer.UidResetter;
+import org.apache.pig.newplan.logical.relational.LOCogroup;
+import org.apache.pig.newplan.logical.relational.LOCross;
+import org.apache.pig.newplan.logical.relational.LODistinct;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LOForEach;
+import org.apache.pig.newplan.logical.relational.LOJoin;
+import org.apache.pig.newplan.logical.relational.LOLimit;
+import org.apache.pig.newplan.logical.relational.LOUnion;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+/**
+ * Removes operators computing the same result as another operator. Two
+ * operators are duplicates if they read the same inputs in the same order
+ * and are equal according to isEqual, which compares their expression
+ * plans, nested plans and the FuncSpecs of the UDFs they call. Non
+ * deterministic UDFs are never equal to each other, so operators using
+ * them are left alone.
+ * <p>
+ * Once two duplicates are merged their successors read from the same
+ * operator, so a duplicated chain of operators is collapsed one level at a
+ * time until the chains differ. The remaining operator gets several
+ * successors, which ImplicitSplitInserter turns into a split.
+ */
+public class CommonSubplanEliminator extends WholePlanRule {
+
+    public CommonSubplanEliminator(String n) {
+        super(n, false);
+        // Same as ImplicitSplitInserter, column references are not
+        // resolved to uids yet, so ProjectionPatcher must not run
+        setSkipListener(true);
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new CommonSubplanEliminatorTransformer();
+    }
+
+    public class CommonSubplanEliminatorTransformer extends Transformer {
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            return findDuplicate() != null;
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            Pair<Operator, Operator> dup = findDuplicate();
+            while (dup != null) {
+                OptimizerUtils.replaceWithEquivalent(currentPlan, dup.second, dup.first);
+                dup = findDuplicate();
+            }
+
+            // Since we adjust the uid layout, clear all cached uids
+            UidResetter uidResetter = new UidResetter(currentPlan);
+            uidResetter.visit();
+
+            // Manually regenerate schema since we skip listener
+            SchemaResetter schemaResetter = new SchemaResetter(currentPlan, true);
+            schemaResetter.visit();
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            return currentPlan;
+        }
+
+        /**
+         * @return the first pair of duplicate operators found, the one to
+         * keep first, or null if there is none
+         */
+        private Pair<Operator, Operator> findDuplicate() throws FrontendException {
+            Iterator<Operator> ops = currentPlan.getOperators();
+            while (ops.hasNext()) {
+                List<Operator> succs = currentPlan.getSuccessors(ops.next());
+                if (succs == null || succs.size() < 2) {
+                    continue;
+                }
+                for (int i = 0; i < succs.size(); i++) {
+                    Operator op = succs.get(i);
+                    if (!isCandidate(op)) {
+                        continue;
+                    }
+                    for (int j = i + 1; j < succs.size(); j++) {
+                        Operator other = succs.get(j);
+                        if (isDuplicate(op, other)) {
+                            return new Pair<Operator, Operator>(op, other);
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Only operators whose isEqual compares everything that makes up
+         * their output are considered.
+         */
+        private boolean isCandidate(Operator op) throws FrontendException {
+            if (!(op instanceof LOFilter || op instanceof LOForEach
+                    || op instanceof LODistinct || op instanceof LOLimit
+                    || op instanceof LOCogroup || op instanceof LOJoin
+                    || op instanceof LOCross || op instanceof LOUnion)) {
+                return false;
+            }
+            // operators depending on a scalar keep their own soft links
+            if (currentPlan.getSoftLinkPredecessors(op) != null
+                    || currentPlan.getSoftLinkSuccessors(op) != null) {
+                return false;
+            }
+            return !hasRangeProject(op);
+        }
+
+        private boolean isDuplicate(Operator op, Operator other) throws FrontendException {
+            // cheap structural checks first, isEqual walks the expression plans
+            if (op.getClass() != other.getClass() || !isCandidate(other)) {
+                return false;
+            }
+            if (!currentPlan.getPredecessors(op).equals(currentPlan.getPredecessors(other))) {
+                return false;
+            }
+            if (OptimizerUtils.haveCommonSuccessor(currentPlan, op, other)) {
+                return false;
+            }
+            return op.isEqual(other);
+        }
+
+        /**
+         * ProjectExpression.isEqual does not compare the bounds of range
+         * projections, which are only expanded when the schema is known.
+         */
+        private boolean hasRangeProject(Operator op) throws FrontendException {
+            final boolean[] found = new boolean[1];
+            op.accept(new AllExpressionVisitor(currentPlan, new DependencyOrderWalker(currentPlan)) {
+                @Override
+                protected LogicalExpressionVisitor getVisitor(LogicalExpressionPlan exprPlan)
+                throws FrontendException {
+                    return new LogicalExpressionVisitor(exprPlan, new DependencyOrderWalker(exprPlan)) {
+                        @Override
+                        public void visit(ProjectExpression project) {
+                            if (project.isRangeProject()) {
+                                found[0] = true;
+                            }
+                        }
+                    };
+                }
+            });
+            return found[0];
+        }
+    }
+}
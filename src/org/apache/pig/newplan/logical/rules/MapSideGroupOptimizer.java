@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.rules;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.CollectableLoadFunc;
+import org.apache.pig.IndexableLoadFunc;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceSchema.Order;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.OperatorSubPlan;
+import org.apache.pig.newplan.logical.expression.CastExpression;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.ProjectExpression;
+import org.apache.pig.newplan.logical.relational.LOCogroup;
+import org.apache.pig.newplan.logical.relational.LOCogroup.GROUPTYPE;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LOForEach;
+import org.apache.pig.newplan.logical.relational.LOGenerate;
+import org.apache.pig.newplan.logical.relational.LOInnerLoad;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
+import org.apache.pig.newplan.optimizer.Rule;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+/**
+ * Rule: turn a regular group into a collected group, and a cogroup into a
+ * merge cogroup, when the loaders report that the data is sorted on the
+ * group keys, so the grouping is done in the map without a shuffle.
+ * <p>
+ * A group is collected if its input is read, through filters and foreachs
+ * that keep the key columns, by a {@link CollectableLoadFunc} whose
+ * {@link LoadMetadata#getSchema} has sort keys starting with the group
+ * keys, in any order.  A cogroup without inner is merged if the first
+ * input is read that way, the other inputs are read directly by
+ * {@link IndexableLoadFunc}s, and all inputs are sorted ascending on the
+ * group keys, in the order of the group keys.
+ */
+public class MapSideGroupOptimizer extends Rule {
+
+    private static final Log log = LogFactory.getLog(MapSideGroupOptimizer.class);
+
+    public MapSideGroupOptimizer(String n) {
+        super(n, false);
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new MapSideGroupTransformer();
+    }
+
+    public class MapSideGroupTransformer extends Transformer {
+
+        private GROUPTYPE groupType;
+
+        private OperatorSubPlan subPlan;
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            LOCogroup cogroup = (LOCogroup)matched.getSources().get(0);
+            if (cogroup.getGroupType() != GROUPTYPE.REGULAR
+                    || cogroup.getCustomPartitioner() != null) {
+                return false;
+            }
+            List<Operator> inputs = currentPlan.getPredecessors(cogroup);
+            boolean merge = inputs.size() > 1;
+            if (merge) {
+                for (boolean inner : cogroup.getInner()) {
+                    if (inner) {
+                        return false;
+                    }
+                }
+            }
+
+            for (int i = 0; i < inputs.size(); i++) {
+                int[] keys = getKeyColumns(cogroup.getExpressionPlans().get(i));
+                if (keys == null) {
+                    return false;
+                }
+                // the side inputs of a merge cogroup are read by their
+                // loader alone
+                LOLoad load = i == 0 || !merge ? traceToLoad(inputs.get(i), keys)
+                        : inputs.get(i) instanceof LOLoad ? (LOLoad)inputs.get(i) : null;
+                if (load == null) {
+                    return false;
+                }
+                LoadFunc loadFunc = load.getLoadFunc();
+                if (!(loadFunc instanceof LoadMetadata)
+                        || (i == 0 ? !(loadFunc instanceof CollectableLoadFunc)
+                                : !(loadFunc instanceof IndexableLoadFunc))) {
+                    return false;
+                }
+                if (i == 0) {
+                    // the compiler asks the same when it meets the group,
+                    // but this one was not asked for by the user
+                    try {
+                        ((CollectableLoadFunc)loadFunc).ensureAllKeyInstancesInSameSplit();
+                    } catch (IOException e) {
+                        log.debug("Keys of " + load.getFileSpec() + " can be in several splits", e);
+                        return false;
+                    }
+                }
+                if (!isSortedOn(load, keys, merge)) {
+                    return false;
+                }
+            }
+
+            groupType = merge ? GROUPTYPE.MERGE : GROUPTYPE.COLLECTED;
+            return true;
+        }
+
+        /**
+         * @return the columns of the input the group keys project, or null
+         * if a key is anything else
+         */
+        private int[] getKeyColumns(List<LogicalExpressionPlan> plans) {
+            int[] keys = new int[plans.size()];
+            for (int i = 0; i < keys.length; i++) {
+                LogicalExpressionPlan plan = plans.get(i);
+                if (plan.size() != 1 || !(plan.getSources().get(0) instanceof ProjectExpression)) {
+                    return null;
+                }
+                ProjectExpression project = (ProjectExpression)plan.getSources().get(0);
+                if (project.isRangeOrStarProject() || project.getColNum() < 0) {
+                    return null;
+                }
+                keys[i] = project.getColNum();
+            }
+            return keys;
+        }
+
+        /**
+         * Follow the key columns up to the load, through filters and
+         * foreachs that only project or cast them.  Every operator on the
+         * way must have no other successor, since the group has to end up
+         * in the same map plan as the load.
+         * @param keys the key columns, updated to those of the load
+         * @return the load, or null
+         */
+        private LOLoad traceToLoad(Operator op, int[] keys) throws FrontendException {
+            while (true) {
+                if (currentPlan.getSuccessors(op).size() != 1
+                        || currentPlan.getSoftLinkPredecessors(op) != null) {
+                    return null;
+                }
+                if (op instanceof LOLoad) {
+                    // this runs before the columns of the load are pruned
+                    return (LOLoad)op;
+                }
+                if (op instanceof LOForEach) {
+                    LogicalPlan innerPlan = ((LOForEach)op).getInnerPlan();
+                    LOGenerate gen = (LOGenerate)innerPlan.getSinks().get(0);
+                    for (boolean flatten : gen.getFlattenFlags()) {
+                        if (flatten) {
+                            return null;
+                        }
+                    }
+                    List<Operator> genInputs = innerPlan.getPredecessors(gen);
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = getProjectedColumn(gen.getOutputPlans().get(keys[i]),
+                                genInputs);
+                        if (keys[i] < 0) {
+                            return null;
+                        }
+                    }
+                } else if (!(op instanceof LOFilter)) {
+                    return null;
+                }
+                List<Operator> preds = currentPlan.getPredecessors(op);
+                if (preds == null || preds.size() != 1) {
+                    return null;
+                }
+                op = preds.get(0);
+            }
+        }
+
+        /**
+         * @return the input column a generate plan projects, maybe with a
+         * cast, or -1
+         */
+        private int getProjectedColumn(LogicalExpressionPlan plan, List<Operator> genInputs)
+                throws FrontendException {
+            Operator root = plan.getSources().get(0);
+            if (root instanceof CastExpression) {
+                if (plan.size() != 2) {
+                    return -1;
+                }
+                root = ((CastExpression)root).getExpression();
+            } else if (plan.size() != 1) {
+                return -1;
+            }
+            if (!(root instanceof ProjectExpression)) {
+                return -1;
+            }
+            ProjectExpression project = (ProjectExpression)root;
+            Operator input = genInputs.get(project.getInputNum());
+            if (!(input instanceof LOInnerLoad)) {
+                return -1;
+            }
+            LOInnerLoad innerLoad = (LOInnerLoad)input;
+            if (innerLoad.getProjection().isRangeOrStarProject()) {
+                return -1;
+            }
+            return innerLoad.getColNum();
+        }
+
+        /**
+         * @param exact the keys have to be the first sort keys in the same
+         * order and sorted ascending, rather than just the first sort keys
+         */
+        private boolean isSortedOn(LOLoad load, int[] keys, boolean exact) {
+            ResourceSchema schema;
+            try {
+                schema = ((LoadMetadata)load.getLoadFunc()).getSchema(
+                        load.getFileSpec().getFileName(), new Job(load.getConfiguration()));
+            } catch (IOException e) {
+                log.debug("Could not get the sort keys of " + load.getFileSpec(), e);
+                return false;
+            }
+            if (schema == null || schema.getSortKeys() == null
+                    || schema.getSortKeys().length < keys.length) {
+                return false;
+            }
+            int[] sortKeys = Arrays.copyOf(schema.getSortKeys(), keys.length);
+            if (exact) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (sortKeys[i] != keys[i]
+                            || schema.getSortKeyOrders()[i] != Order.ASCENDING) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            Set<Integer> keySet = new HashSet<Integer>();
+            for (int key : keys) {
+                keySet.add(key);
+            }
+            for (int sortKey : sortKeys) {
+                if (!keySet.remove(sortKey)) {
+                    return false;
+                }
+            }
+            return keySet.isEmpty();
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            LOCogroup cogroup = (LOCogroup)matched.getSources().get(0);
+            cogroup.setGroupType(groupType);
+            log.info("Data is sorted on the keys of " + cogroup.getAlias()
+                    + ", using " + groupType.toString().toLowerCase() + " group");
+            subPlan = new OperatorSubPlan(currentPlan);
+            subPlan.add(cogroup);
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            return subPlan;
+        }
+    }
+
+    @Override
+    protected OperatorPlan buildPattern() {
+        LogicalPlan plan = new LogicalPlan();
+        LogicalRelationalOperator op = new LOCogroup(plan);
+        plan.add(op);
+        return plan;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.Pair;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.logical.optimizer.SchemaResetter;
+import org.apache.pig.newplan.logical.optimizer.UidResetter;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+/**
+ * Merges loads which read the same input with the same load function and
+ * schema into a single load. The successors of the merged loads all hang
+ * off the remaining one, so ImplicitSplitInserter turns it into a split and
+ * the input is only read once. This matters when several scripts are run
+ * in one batch, see {@link org.apache.pig.PigServer#executeScripts}.
+ * <p>
+ * Since a merged load can no longer get a partition filter or a limit
+ * pushed into it for only one of its users, the rule only fires when
+ * {@link #MERGE_LOADS} is set.
+ */
+public class MergeLoad extends WholePlanRule {
+
+    public static final String MERGE_LOADS = "pig.exec.mergeloads";
+
+    public MergeLoad(String n) {
+        super(n, false);
+        // Same as ImplicitSplitInserter, column references are not
+        // resolved to uids yet, so ProjectionPatcher must not run
+        setSkipListener(true);
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new MergeLoadTransformer();
+    }
+
+    public class MergeLoadTransformer extends Transformer {
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            return findDuplicate() != null;
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            Pair<LOLoad, LOLoad> dup = findDuplicate();
+            while (dup != null) {
+                OptimizerUtils.replaceWithEquivalent(currentPlan, dup.second, dup.first);
+                dup = findDuplicate();
+            }
+
+            // Since we adjust the uid layout, clear all cached uids
+            UidResetter uidResetter = new UidResetter(currentPlan);
+            uidResetter.visit();
+
+            // Manually regenerate schema since we skip listener
+            SchemaResetter schemaResetter = new SchemaResetter(currentPlan, true);
+            schemaResetter.visit();
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            return currentPlan;
+        }
+
+        /**
+         * @return the first pair of loads which can be merged, the
+         * one to keep first, or null if there is none
+         */
+        private Pair<LOLoad, LOLoad> findDuplicate() throws FrontendException {
+            List<LOLoad> loads = new ArrayList<LOLoad>();
+            for (Operator op : currentPlan.getSources()) {
+                if (!(op instanceof LOLoad)) {
+                    continue;
+                }
+                LOLoad load = (LOLoad)op;
+                if (!isMergeable(load)) {
+                    continue;
+                }
+                for (LOLoad other : loads) {
+                    if (other.isEqual(load)
+                            && !OptimizerUtils.haveCommonSuccessor(currentPlan, other, load)) {
+                        return new Pair<LOLoad, LOLoad>(other, load);
+                    }
+                }
+                loads.add(load);
+            }
+            return null;
+        }
+
+        private boolean isMergeable(LOLoad load) {
+            Configuration conf = load.getConfiguration();
+            if (conf == null || !conf.getBoolean(MERGE_LOADS, false)) {
+                return false;
+            }
+            // sources only, so loads reading back the output of a store
+            // keep their dependency on it
+            return currentPlan.getSuccessors(load) != null
+                    && currentPlan.getSoftLinkPredecessors(load) == null
+                    && load.getLimit() == -1;
+        }
+    }
+}
@@ -17,12 +17,16 @@
  */
 package org.apache.pig.newplan.logical.rules;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.pig.builtin.Nondeterministic;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.Pair;
 import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
 import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
 import org.apache.pig.newplan.logical.expression.UserFuncExpression;
 import org.apache.pig.newplan.logical.relational.LOForEach;
@@ -91,4 +95,54 @@ public class OptimizerUtils {
         }
         return false;
     }
+
+    /**
+     * Replaces an operator by an equivalent one already in the plan. The
+     * successors of the operator are connected to the equivalent operator
+     * at the same input positions, and the operator is removed.
+     * @param plan the plan holding both operators
+     * @param op the operator to remove
+     * @param equivalent the operator computing the same output as op
+     * @throws FrontendException
+     */
+    public static void replaceWithEquivalent(OperatorPlan plan, Operator op,
+            Operator equivalent) throws FrontendException {
+        List<Operator> succs = plan.getSuccessors(op);
+        if (succs != null) {
+            for (Operator succ : new ArrayList<Operator>(succs)) {
+                // keep the input position, projections may refer to it
+                Pair<Integer, Integer> pos = plan.disconnect(op, succ);
+                List<Operator> equivSuccs = plan.getSuccessors(equivalent);
+                plan.connect(equivalent, equivSuccs == null ? 0 : equivSuccs.size(),
+                        succ, pos.second);
+            }
+        }
+        List<Operator> preds = plan.getPredecessors(op);
+        if (preds != null) {
+            for (Operator pred : new ArrayList<Operator>(preds)) {
+                plan.disconnect(pred, op);
+            }
+        }
+        plan.remove(op);
+    }
+
+    /**
+     * @return true if the two operators have a successor in common. Such
+     * operators cannot be replaced by one another, since the plan does not
+     * allow two edges between the same operators.
+     */
+    public static boolean haveCommonSuccessor(OperatorPlan plan, Operator op1,
+            Operator op2) {
+        List<Operator> succs1 = plan.getSuccessors(op1);
+        List<Operator> succs2 = plan.getSuccessors(op2);
+        if (succs1 == null || succs2 == null) {
+            return false;
+        }
+        for (Operator succ : succs2) {
+            if (succs1.contains(succ)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -27,6 +27,7 @@ import junit.framework.TestCase;
 import org.apache.pig.ExecType;
 import org.apache.pig.PigServer;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataBag;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.parser.ParserException;
 import org.junit.After;
@@ -60,6 +61,7 @@ public class TestAccumulator extends TestCase{
     @Before
     public void setUp() throws Exception {
         pigServer.getPigContext().getProperties().remove("opt.accumulator");
+        pigServer.getPigContext().getProperties().remove("pig.accumulative.batchsize");
         createFiles();
     }
     
@@ -693,7 +695,79 @@ public class TestAccumulator extends TestCase{
                             "(1)"
                     });
         Util.checkQueryOutputsAfterSort(iter, expectedRes);
-    } 
+    }
+
+    @Test
+    public void testAccumWithNestedFilter() throws IOException{
+        pigServer.getPigContext().getProperties().setProperty("pig.accumulative.batchsize", "1");
+        pigServer.registerQuery("A = load '" + INPUT_FILE + "' as (id:int, fruit);");
+        pigServer.registerQuery("B = group A by id;");
+        pigServer.registerQuery("C = foreach B { D = filter A by fruit != 'apple'; " +
+                "generate group, org.apache.pig.test.utils.AccumulatorBagCount(D), COUNT(D);};");
+
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        expected.put(100, 0);
+        expected.put(200, 1);
+        expected.put(300, 3);
+        expected.put(400, 0);
+
+        Iterator<Tuple> iter = pigServer.openIterator("C");
+        int count = 0;
+        while(iter.hasNext()) {
+            Tuple t = iter.next();
+            assertEquals(expected.get((Integer)t.get(0)), (Integer)t.get(1));
+            assertEquals(expected.get((Integer)t.get(0)).longValue(), ((Long)t.get(2)).longValue());
+            count++;
+        }
+        assertEquals(4, count);
+    }
+
+    @Test
+    public void testAccumWithNestedLimit() throws IOException{
+        // the limit has to hold across batches
+        pigServer.getPigContext().getProperties().setProperty("pig.accumulative.batchsize", "1");
+        pigServer.registerQuery("A = load '" + INPUT_FILE + "' as (id:int, fruit);");
+        pigServer.registerQuery("B = group A by id;");
+        pigServer.registerQuery("C = foreach B { D = limit A 2; " +
+                "generate group, org.apache.pig.test.utils.AccumulatorBagCount(D);};");
+
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        expected.put(100, 2);
+        expected.put(200, 1);
+        expected.put(300, 2);
+        expected.put(400, 1);
 
+        Iterator<Tuple> iter = pigServer.openIterator("C");
+        int count = 0;
+        while(iter.hasNext()) {
+            Tuple t = iter.next();
+            assertEquals(expected.get((Integer)t.get(0)), (Integer)t.get(1));
+            count++;
+        }
+        assertEquals(4, count);
+    }
+
+    @Test
+    public void testAccumWithMoreBuildins() throws IOException{
+        pigServer.getPigContext().getProperties().setProperty("pig.accumulative.batchsize", "2");
+        pigServer.registerQuery("A = load '" + INPUT_FILE3 + "' as (id:int, v:double);");
+        pigServer.registerQuery("B = filter A by id == 100;");
+        pigServer.registerQuery("C = group B by id;");
+        pigServer.registerQuery("D = foreach C generate org.apache.pig.test.utils.AccumulatorBagCount(B), " +
+                "TOP(2, 1, B), SIZE(B), Distinct(B.id), COV(B.v, B.v), COR(B.v, B.v), DIFF(B.v, B.v);");
+
+        Iterator<Tuple> iter = pigServer.openIterator("D");
+        Tuple t = iter.next();
+        assertFalse(iter.hasNext());
+        assertEquals(5, t.get(0));
+        List<Tuple> expectedRes = Util.getTuplesFromConstantTupleStrings(
+                new String[] { "(100,4.0)", "(100,5.0)" });
+        Util.checkQueryOutputsAfterSort(((DataBag)t.get(1)).iterator(), expectedRes);
+        assertEquals(5L, t.get(2));
+        assertEquals("{(100)}", t.get(3).toString());
+        assertEquals(2.0, (Double)((DataBag)t.get(4)).iterator().next().get(2), 0.0001);
+        assertEquals(1.0, (Double)((DataBag)t.get(5)).iterator().next().get(2), 0.0001);
+        assertEquals(0, ((DataBag)t.get(6)).size());
+    }
 
 }
@@ -18,6 +18,7 @@
 package org.apache.pig.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -100,6 +101,64 @@ public class TestBinInterSedes {
 
     }
     
+    /**
+     * test sedes of long of diff sizes
+     * @throws IOException
+     */
+    @Test
+    public void testTupleWriteReadLongDiffSizes() throws IOException {
+        Tuple tuple = TupleFactory.getInstance().newTuple();
+        tuple.append(Long.valueOf(0));
+        tuple.append(Long.valueOf(1));
+        tuple.append(Long.valueOf(-125)); //fits into byte
+        tuple.append(Long.valueOf(-1024)); //fits into short
+        tuple.append(Long.valueOf(1024*1024*1024)); //fits into int
+        tuple.append(Long.valueOf(Long.MIN_VALUE));
+        testTupleSedes(tuple);
+
+        // small longs are written in a few bytes
+        assertEquals(1 + 1 + 1 + 2 + 3 + 5 + 9, serialize(tuple).length);
+    }
+
+    /**
+     * test sedes of chararrays repeated in a bag
+     * @throws IOException
+     */
+    @Test
+    public void testBagWithRepeatedStrings() throws IOException {
+        DataBag bag = BagFactory.getInstance().newDefaultBag();
+        for (int i = 0; i < 1000; i++) {
+            Tuple t = TupleFactory.getInstance().newTuple();
+            t.append("status" + (i % 3));
+            // more than fit in a one byte reference
+            t.append("user" + (i % 400));
+            Map<String, Object> map = new HashMap<String, Object>();
+            map.put("country", "FR");
+            t.append(map);
+            DataBag inner = BagFactory.getInstance().newDefaultBag();
+            inner.add(TupleFactory.getInstance().newTuple("user" + (i % 7)));
+            t.append(inner);
+            bag.add(t);
+        }
+        Tuple tuple = TupleFactory.getInstance().newTuple();
+        tuple.append("status0");
+        tuple.append(bag);
+        tuple.append(bag);
+        testTupleSedes(tuple);
+
+        // the strings are written once per bag, then referred to in about
+        // half the bytes a tuple would take otherwise
+        assertTrue(serialize(tuple).length < 2 * 1000 * 20);
+    }
+
+    private byte[] serialize(Object o) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        InterSedesFactory.getInterSedesInstance().writeDatum(out, o);
+        out.flush();
+        return bout.toByteArray();
+    }
+
     /**
      * test sedes of bytearray, string of diff sizes
      * @throws IOException
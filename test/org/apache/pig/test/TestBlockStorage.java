@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.ExecType;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.io.BlockRecordWriter;
+import org.apache.pig.impl.io.BlockStorage;
+import org.apache.pig.impl.io.ReadToEndLoader;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBlockStorage {
+
+    private static TupleFactory tf = TupleFactory.getInstance();
+
+    private File file;
+
+    private Configuration conf;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("blockstorage", "");
+        file.deleteOnExit();
+        conf = new Configuration(false);
+        conf.set("fs.default.name", "file:///");
+        conf.setInt(BlockRecordWriter.BLOCK_ROWS, 50);
+        // several splits, most of them starting inside a block
+        conf.setLong("mapred.max.split.size", 1000);
+    }
+
+    private List<Tuple> makeTuples() throws Exception {
+        Random r = new Random(42);
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 1000; i++) {
+            Tuple t;
+            if (i >= 500 && i < 520) {
+                // a block with tuples of different sizes
+                t = tf.newTuple(i % 3 + 1);
+                t.set(0, i);
+            } else {
+                t = tf.newTuple(6);
+                t.set(0, i);
+                t.set(1, i % 7 == 0 ? null : (long)r.nextInt());
+                t.set(2, i < 300 ? r.nextDouble() : (i % 2 == 0 ? (Object)1.5 : (Object)"x"));
+                t.set(3, "key" + (i % 5));
+                t.set(4, i % 11 == 0 ? null : "random" + r.nextLong());
+                DataBag bag = BagFactory.getInstance().newDefaultBag();
+                bag.add(tf.newTuple(new DataByteArray("b" + i)));
+                t.set(5, bag);
+            }
+            tuples.add(t);
+        }
+        return tuples;
+    }
+
+    private void write(List<Tuple> tuples) throws Exception {
+        BlockRecordWriter writer = new BlockRecordWriter(
+                new DataOutputStream(new FileOutputStream(file)), conf);
+        for (Tuple t : tuples) {
+            writer.write(null, t);
+        }
+        writer.close(null);
+    }
+
+    private List<Tuple> read(LoadFunc loader) throws Exception {
+        ReadToEndLoader reader = new ReadToEndLoader(loader, conf,
+                file.getAbsolutePath(), 0);
+        List<Tuple> res = new ArrayList<Tuple>();
+        Tuple t;
+        while ((t = reader.getNext()) != null) {
+            res.add(t);
+        }
+        return res;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<Tuple> tuples = makeTuples();
+        write(tuples);
+        assertEquals(tuples, read(new BlockStorage()));
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        // the same values over and over compress well, 50 rows of about
+        // 20 bytes to a block
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 1000; i++) {
+            tuples.add(tf.newTuple(new DataByteArray("the same value")));
+        }
+        write(tuples);
+        assertTrue(file.length() < 5000);
+        assertEquals(tuples, read(new BlockStorage()));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        write(new ArrayList<Tuple>());
+        assertEquals(0, read(new BlockStorage()).size());
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        List<Tuple> tuples = makeTuples();
+        write(tuples);
+        List<Tuple> res = read(new BlockStorage("0,3"));
+        assertEquals(tuples.size(), res.size());
+        for (int i = 0; i < tuples.size(); i++) {
+            Tuple t = tuples.get(i);
+            Tuple p = res.get(i);
+            assertEquals(2, p.size());
+            assertEquals(t.get(0), p.get(0));
+            if (t.size() > 3) {
+                assertEquals(t.get(3), p.get(1));
+            } else {
+                assertNull(p.get(1));
+            }
+        }
+    }
+
+    @Test
+    public void testMultiJobQuery() throws Exception {
+        String[] input = new String[200];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = i % 10 + "\t" + i + "\tname" + i % 3;
+        }
+        File inputFile = Util.createInputFile("test", "blockstorage", input);
+        String query = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (x:int, y:long, z:chararray);"
+                + "b = group a by (x, z);"
+                + "c = foreach b generate group.x as x, group.z as z, SUM(a.y) as s, COUNT(a) as n;"
+                + "d = group c by z;"
+                + "e = foreach d generate group, SUM(c.s), MAX(c.n);";
+
+        Map<String, String> expected = run(query, false);
+        assertEquals(3, expected.size());
+        assertEquals(expected, run(query, true));
+    }
+
+    @Test
+    public void testTmpLoadProjection() throws Exception {
+        String[] input = new String[] { "1\t2", "1\t3", "2\t5", "3\t7" };
+        File inputFile = Util.createInputFile("test", "blockstorage", input);
+        File out1 = File.createTempFile("blockstorage", "out1");
+        File out2 = File.createTempFile("blockstorage", "out2");
+        out1.delete();
+        out2.delete();
+        String query = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (x:int, y:int);"
+                + "b = group a by x;"
+                + "c = foreach b generate group as x, COUNT(a) as n, SUM(a.y) as s;"
+                + "d = foreach c generate s;"
+                + "e = foreach c generate n;"
+                + "store d into '" + Util.encodeEscape(out1.getAbsolutePath()) + "';"
+                + "store e into '" + Util.encodeEscape(out2.getAbsolutePath()) + "';";
+
+        PigServer pigServer = new PigServer(ExecType.LOCAL);
+        pigServer.getPigContext().getProperties().setProperty(
+                "pig.tmpfilecompression", "true");
+        pigServer.getPigContext().getProperties().setProperty(
+                "pig.tmpfilecompression.codec", "auto");
+        // keep the jobs reading the intermediate file apart
+        pigServer.getPigContext().getProperties().setProperty(
+                "opt.multiquery", "false");
+
+        MROperPlan mrp = Util.buildMRPlan(query, pigServer.getPigContext());
+        List<String> loads = new ArrayList<String>();
+        for (MapReduceOper mro : mrp) {
+            PhysicalOperator root = mro.mapPlan.getRoots().get(0);
+            if (root instanceof POLoad) {
+                FuncSpec funcSpec = ((POLoad)root).getLFile().getFuncSpec();
+                if (funcSpec.getClassName().equals(BlockStorage.class.getName())) {
+                    loads.add(funcSpec.getCtorArgs()[0]);
+                }
+            }
+        }
+        Collections.sort(loads);
+        assertEquals(Arrays.asList("1", "2"), loads);
+
+        pigServer.setBatchOn();
+        Util.registerMultiLineQuery(pigServer, query);
+        pigServer.executeBatch();
+        String[] sums = Util.readOutput(pigServer.getPigContext(), out1.getAbsolutePath());
+        Arrays.sort(sums);
+        assertEquals(Arrays.asList("5", "5", "7"), Arrays.asList(sums));
+        String[] counts = Util.readOutput(pigServer.getPigContext(), out2.getAbsolutePath());
+        Arrays.sort(counts);
+        assertEquals(Arrays.asList("1", "1", "2"), Arrays.asList(counts));
+    }
+
+    private Map<String, String> run(String query, boolean blockStorage) throws Exception {
+        PigServer pigServer = new PigServer(ExecType.LOCAL);
+        if (blockStorage) {
+            pigServer.getPigContext().getProperties().setProperty(
+                    "pig.tmpfilecompression", "true");
+            pigServer.getPigContext().getProperties().setProperty(
+                    "pig.tmpfilecompression.codec", "auto");
+        }
+        Util.registerMultiLineQuery(pigServer, query);
+        Map<String, String> res = new HashMap<String, String>();
+        Iterator<Tuple> it = pigServer.openIterator("e");
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            res.put((String)t.get(0), t.toDelimitedString(","));
+        }
+        return res;
+    }
+}
@@ -124,6 +124,38 @@ public class TestBloom extends junit.framework.TestCase {
         }
     }
 
+    @Test
+    public void testWholeBag() throws Exception {
+        String size = "100";
+        String numHash = "3";
+        String hashFunc = "jenkins";
+        TupleFactory tf = TupleFactory.getInstance();
+        BagFactory bf = BagFactory.getInstance();
+
+        DataBag b = bf.newDefaultBag();
+        for (int j = 0; j < 3; j++) {
+            Tuple t = tf.newTuple(1);
+            t.set(0, 10 + j);
+            b.add(t);
+        }
+        b.add(tf.newTuple(1));
+        BuildBloom bb = new BuildBloom(hashFunc, "fixed", size, numHash);
+        DataByteArray dba = bb.exec(tf.newTuple(b));
+
+        Bloom bloom = new Bloom("bla");
+        bloom.setFilter(dba);
+
+        // Test that everything we put in passes.
+        for (int j = 0; j < 3; j++) {
+            Tuple t1 = tf.newTuple(1);
+            t1.set(0, 10 + j);
+            assertTrue(bloom.exec(t1));
+        }
+
+        // Nulls never do
+        assertFalse(bloom.exec(tf.newTuple(1)));
+    }
+
     @Test
     public void testCombiner() throws Exception {
         String size = "100";
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.builtin.Bloom;
+import org.apache.pig.data.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBloomJoinOptimizer {
+
+    private PigServer pigServer;
+
+    private String query;
+
+    @Before
+    public void setUp() throws Exception {
+        pigServer = new PigServer(ExecType.LOCAL);
+        pigServer.getPigContext().getProperties().setProperty("pig.exec.bloomjoin", "true");
+        File small = Util.createInputFile("test", "bloomjoin",
+                new String[] { "1\tx", "2\tb", "9\tz" });
+        File big = Util.createInputFile("test", "bloomjoin",
+                new String[] { "1\tx", "2\ty", "3\tw", "4\tv", "5\tu", "1\tq" });
+        query = "small = load '" + Util.encodeEscape(small.getAbsolutePath())
+                + "' as (k:int, v:chararray);"
+                + "big = load '" + Util.encodeEscape(big.getAbsolutePath())
+                + "' as (k:int, v:chararray);";
+    }
+
+    /**
+     * @return the alias of the input filtered with a Bloom filter, or null
+     */
+    private String getFiltered(String query, int numJobs) throws Exception {
+        MROperPlan mrp = Util.buildMRPlan(this.query + query + "store c into 'output';",
+                pigServer.getPigContext());
+        assertEquals(numJobs, mrp.size());
+        for (MapReduceOper mro : mrp) {
+            for (PhysicalOperator op : mro.mapPlan) {
+                if (!(op instanceof POFilter)) {
+                    continue;
+                }
+                for (PhysicalOperator exp : ((POFilter)op).getPlan()) {
+                    if (exp instanceof POUserFunc && ((POUserFunc)exp).getFuncSpec()
+                            .getClassName().equals(Bloom.class.getName())) {
+                        return op.getAlias();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<String> run(String query) throws Exception {
+        Util.registerMultiLineQuery(pigServer, this.query + query);
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator("c");
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    @Test
+    public void testInner() throws Exception {
+        String query = "c = join small by k, big by k;";
+        assertEquals("big", getFiltered(query, 2));
+        assertEquals(Arrays.asList("1,x,1,q", "1,x,1,x", "2,b,2,y"), run(query));
+    }
+
+    @Test
+    public void testSmallerInputIsBuilt() throws Exception {
+        String query = "c = join big by k, small by k;";
+        assertEquals("big", getFiltered(query, 2));
+        assertEquals(Arrays.asList("1,q,1,x", "1,x,1,x", "2,y,2,b"), run(query));
+    }
+
+    @Test
+    public void testMultiKey() throws Exception {
+        String query = "c = join small by (k, v), big by (k, v);";
+        assertEquals("big", getFiltered(query, 2));
+        assertEquals(Arrays.asList("1,x,1,x"), run(query));
+    }
+
+    @Test
+    public void testFilteredInput() throws Exception {
+        String query = "s = filter small by k > 1;"
+                + "c = join s by k, big by k;";
+        assertEquals("big", getFiltered(query, 2));
+        assertEquals(Arrays.asList("2,b,2,y"), run(query));
+
+        // nothing goes into the filter
+        query = "s = filter small by k > 100;"
+                + "c = join s by k, big by k;";
+        assertEquals(Arrays.asList(), run(query));
+    }
+
+    @Test
+    public void testOuter() throws Exception {
+        // only the input that is not kept whole can be filtered
+        String query = "c = join big by k left outer, small by k;";
+        assertEquals("small", getFiltered(query, 2));
+        assertEquals(Arrays.asList("1,q,1,x", "1,x,1,x", "2,y,2,b", "3,w,,", "4,v,,", "5,u,,"),
+                run(query));
+
+        query = "c = join big by k full outer, small by k;";
+        assertNull(getFiltered(query, 1));
+    }
+
+    @Test
+    public void testOff() throws Exception {
+        pigServer.getPigContext().getProperties().setProperty("pig.exec.bloomjoin", "false");
+        assertNull(getFiltered("c = join small by k, big by k;", 1));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.logical.relational.LOCogroup;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCommonSubplanEliminator {
+
+    private PigServer pigServer;
+
+    private String load;
+
+    @Before
+    public void setUp() throws Exception {
+        pigServer = new PigServer(ExecType.LOCAL);
+        File inputFile = Util.createInputFile("test", "cse",
+                new String[] { "1\t2", "2\t3", "3\t1" });
+        load = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (x:int, y:int);";
+    }
+
+    private int count(LogicalPlan lp, Class<?> opClass) {
+        int count = 0;
+        Iterator<Operator> it = lp.getOperators();
+        while (it.hasNext()) {
+            if (opClass.isInstance(it.next())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private LogicalPlan optimize(String query) throws Exception {
+        LogicalPlan lp = Util.parse(query, pigServer.getPigContext());
+        Util.optimizeNewLP(lp);
+        return lp;
+    }
+
+    @Test
+    public void testDuplicateChain() throws Exception {
+        LogicalPlan lp = optimize(load
+                + "b = filter a by x > 1;"
+                + "c = group b by y;"
+                + "store c into 'output1';"
+                + "d = filter a by x > 1;"
+                + "e = group d by y;"
+                + "store e into 'output2';");
+        assertEquals(1, count(lp, LOFilter.class));
+        assertEquals(1, count(lp, LOCogroup.class));
+    }
+
+    @Test
+    public void testDifferentConditions() throws Exception {
+        LogicalPlan lp = optimize(load
+                + "b = filter a by x > 1;"
+                + "store b into 'output1';"
+                + "d = filter a by x > 2;"
+                + "store d into 'output2';");
+        assertEquals(2, count(lp, LOFilter.class));
+    }
+
+    @Test
+    public void testNondeterministicUdf() throws Exception {
+        LogicalPlan lp = optimize(load
+                + "b = filter a by RANDOM() > 0.5;"
+                + "store b into 'output1';"
+                + "d = filter a by RANDOM() > 0.5;"
+                + "store d into 'output2';");
+        assertEquals(2, count(lp, LOFilter.class));
+    }
+
+    @Test
+    public void testCommonSuccessor() throws Exception {
+        pigServer.registerQuery(load);
+        pigServer.registerQuery("b = filter a by x > 1;");
+        pigServer.registerQuery("c = foreach b generate y;");
+        pigServer.registerQuery("d = filter a by x > 1;");
+        pigServer.registerQuery("e = foreach d generate y;");
+        pigServer.registerQuery("f = union c, e;");
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator("f");
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        Collections.sort(res);
+        assertEquals(Arrays.asList("1", "1", "3", "3"), res);
+    }
+}
@@ -865,6 +865,60 @@ public class TestDataBag extends junit.framework.TestCase {
         assertEquals(bg4.size(), 0);        
     }
     
+    public void testInternalSerializedBag() throws Exception {
+        // check adding empty tuple
+        DataBag bg0 = new InternalSerializedBag();
+        bg0.add(TupleFactory.getInstance().newTuple());
+        bg0.add(TupleFactory.getInstance().newTuple());
+        assertEquals(bg0.size(), 2);
+
+        // check equal of bags
+        DataBag bg1 = new InternalSerializedBag(1, 0.5f);
+        assertEquals(bg1.size(), 0);
+        assertFalse(new InternalSerializedBag().iterator().hasNext());
+
+        String[][] tupleContents = new String[][] {{"a", "b"},{"c", "d" }, { "e", "f"} };
+        for (int i = 0; i < tupleContents.length; i++) {
+            bg1.add(Util.createTuple(tupleContents[i]));
+        }
+        assertEquals(bg1.size(), 3);
+        assertFalse(bg1.isSorted());
+        assertFalse(bg1.isDistinct());
+
+        tupleContents = new String[][] {{"c", "d" }, {"a", "b"},{ "e", "f"} };
+        DataBag bg2 = new InternalCachedBag(1, 0.5f);
+        for (int i = 0; i < tupleContents.length; i++) {
+             bg2.add(Util.createTuple(tupleContents[i]));
+        }
+        assertEquals(bg1, bg2);
+
+        // tuples span pages, the full ones are written to disk
+        DataBag bg3 = new InternalSerializedBag(1, 0.0f);
+        for (int i = 0; i < 20000; i++) {
+            bg3.add(Util.createTuple(new String[] {"tuple" + i, "value" }));
+        }
+        assertEquals(20000, bg3.size());
+        for (int j = 0; j < 2; j++) {
+            Iterator<Tuple> iter = bg3.iterator();
+            for (int i = 0; i < 20000; i++) {
+                assertTrue(iter.hasNext());
+                assertEquals(Util.createTuple(new String[] {"tuple" + i, "value" }), iter.next());
+            }
+            assertFalse(iter.hasNext());
+        }
+
+        try {
+            bg3.add(TupleFactory.getInstance().newTuple());
+            fail("tuples should not be added once the bag is read");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        bg3.clear();
+        assertEquals(bg3.size(), 0);
+        bg3.add(Util.createTuple(new String[] {"a", "b"}));
+        assertEquals(Util.createTuple(new String[] {"a", "b"}), bg3.iterator().next());
+    }
+
     public void testInternalSortedBag() throws Exception {    
     	
     	// check adding empty tuple
@@ -931,7 +931,7 @@ public class TestMRCompiler {
     	"store c into 'output';";
     	
     	PhysicalPlan pp = Util.buildPp(pigServer, query);
-    	MROperPlan mrPlan = Util.buildMRPlan(pp, pc);
+    	MROperPlan mrPlan = buildSortedLimitMRPlan(pp);
     	MapReduceOper mrOper = mrPlan.getRoots().get(0);
     	int count = 1;
     	
@@ -942,6 +942,19 @@ public class TestMRCompiler {
     	assertTrue(count == 3);
     }
     
+    /**
+     * Compiles an order by followed by a limit into the sort jobs rather
+     * than the single top-N job
+     */
+    private MROperPlan buildSortedLimitMRPlan(PhysicalPlan pp) throws Exception {
+        pc.getProperties().setProperty(MRCompiler.ORDERBY_TOPN_MAX, "0");
+        try {
+            return Util.buildMRPlan(pp, pc);
+        } finally {
+            pc.getProperties().remove(MRCompiler.ORDERBY_TOPN_MAX);
+        }
+    }
+
     /**
      * Test to ensure that the order by with parallel followed by a limit, i.e., top k
      * always produces the correct number of map reduce jobs
@@ -953,7 +966,7 @@ public class TestMRCompiler {
     	"c = limit b 10;" + "store c into 'output';";
     	
     	PhysicalPlan pp = Util.buildPp(pigServerMR, query);
-    	MROperPlan mrPlan = Util.buildMRPlan(pp, pc);
+    	MROperPlan mrPlan = buildSortedLimitMRPlan(pp);
     	
     	LimitAdjuster la = new LimitAdjuster(mrPlan, pc);
         la.visit();
@@ -1052,7 +1065,7 @@ public class TestMRCompiler {
                 + PigStorageNoDefCtor.class.getName() + "('\t');";
          
         PhysicalPlan pp = Util.buildPp(pigServerMR, query);
-        MROperPlan mrPlan = Util.buildMRPlan(pp, pc);
+        MROperPlan mrPlan = buildSortedLimitMRPlan(pp);
         
         LimitAdjuster la = new LimitAdjuster(mrPlan, pc);
         la.visit();
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.data.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMapOnlySuccessorOptimizer {
+
+    private PigServer pigServer;
+
+    private String load;
+
+    @Before
+    public void setUp() throws Exception {
+        pigServer = new PigServer(ExecType.LOCAL);
+        // leave the split to the job boundaries
+        pigServer.getPigContext().getProperties().setProperty(
+                "opt.multiquery", "false");
+        File inputFile = Util.createInputFile("test", "maponly",
+                new String[] { "1\t2", "1\t3", "2\t5", "3\t7" });
+        load = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (x:int, y:int);";
+    }
+
+    private int numJobs(String query, String alias) throws Exception {
+        Util.registerMultiLineQuery(pigServer, load + query);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pigServer.explain(alias, new PrintStream(out));
+        return out.toString().split("MapReduce node").length - 1;
+    }
+
+    private List<String> run(String query, String alias) throws Exception {
+        Util.registerMultiLineQuery(pigServer, load + query);
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator(alias);
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        String query = "b = group a by x;"
+                + "c = foreach b generate group as x, SUM(a.y) as s;"
+                + "split c into d if s > 5, e if s <= 5;"
+                + "f = foreach d generate x, s * 2;";
+        assertEquals(1, numJobs(query, "f"));
+        assertEquals(Arrays.asList("3,14"), run(query, "f"));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        pigServer.getPigContext().getProperties().setProperty(
+                "pig.exec.nomaponlymerge", "true");
+        String query = "b = group a by x;"
+                + "c = foreach b generate group as x, SUM(a.y) as s;"
+                + "split c into d if s > 5, e if s <= 5;"
+                + "f = foreach d generate x, s * 2;";
+        assertEquals(2, numJobs(query, "f"));
+        assertEquals(Arrays.asList("3,14"), run(query, "f"));
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        // the stream moves to the reduce, which then has to wait for
+        // the end of the stream output
+        String query = "b = group a by x;"
+                + "c = foreach b generate group as x, SUM(a.y) as s;"
+                + "split c into d if s >= 5, e if s < 5;"
+                + "f = stream d through `cat` as (x:int, s:long);";
+        assertEquals(1, numJobs(query, "f"));
+        assertEquals(Arrays.asList("1,5", "2,5", "3,7"), run(query, "f"));
+    }
+
+    @Test
+    public void testSeveralSuccessors() throws Exception {
+        String query = "b = group a by x;"
+                + "c = foreach b generate group as x, SUM(a.y) as s;"
+                + "split c into d if s > 5, e if s <= 5;"
+                + "store d into 'out1';"
+                + "store e into 'out2';";
+        MROperPlan mrp = Util.buildMRPlan(load + query, pigServer.getPigContext());
+        assertEquals(3, mrp.size());
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.CollectableLoadFunc;
+import org.apache.pig.ExecType;
+import org.apache.pig.IndexableLoadFunc;
+import org.apache.pig.PigServer;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceSchema.Order;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCollectedGroup;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
+import org.apache.pig.builtin.PigStorage;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.util.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMapSideGroupOptimizer {
+
+    private PigServer pigServer;
+
+    private String input;
+
+    private String input2;
+
+    @Before
+    public void setUp() throws Exception {
+        pigServer = new PigServer(ExecType.LOCAL);
+        File inputFile = Util.createInputFile("test", "mapsidegroup",
+                new String[] { "1\t2", "1\t3", "2\t5", "3\t7", "3\t7" });
+        input = Util.encodeEscape(inputFile.getAbsolutePath());
+        inputFile = Util.createInputFile("test", "mapsidegroup",
+                new String[] { "1\t4", "3\t6" });
+        input2 = Util.encodeEscape(inputFile.getAbsolutePath());
+    }
+
+    private String load(String alias, Class<?> loader, String sortKeys) {
+        // the loader reports no types, so the values are cast
+        return alias + " = load '" + input + "' using " + loader.getName()
+                + "('" + sortKeys + "') as (x:int, y:int);";
+    }
+
+    private String loadUntyped(String alias, String file, Class<?> loader, String sortKeys) {
+        return alias + " = load '" + file + "' using " + loader.getName()
+                + "('" + sortKeys + "');";
+    }
+
+    private boolean hasOperator(String query, Class<?> opClass) throws Exception {
+        MROperPlan mrp = Util.buildMRPlan(query, pigServer.getPigContext());
+        for (MapReduceOper mro : mrp) {
+            for (PhysicalOperator op : mro.mapPlan) {
+                if (opClass.isInstance(op)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private List<String> run(String query, String alias) throws Exception {
+        // not as a script, the nested loader classes would be taken for
+        // parameters
+        for (String statement : query.split(";")) {
+            pigServer.registerQuery(statement + ";");
+        }
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator(alias);
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    @Test
+    public void testCollected() throws Exception {
+        String query = load("a", SortedLoader.class, "0")
+                + "b = group a by x;"
+                + "c = foreach b generate group, SUM(a.y);";
+        assertTrue(hasOperator(query + "store c into 'output';", POCollectedGroup.class));
+        assertEquals(Arrays.asList("1,5", "2,5", "3,14"), run(query, "c"));
+    }
+
+    @Test
+    public void testCollectedAfterFilter() throws Exception {
+        String query = load("a", SortedLoader.class, "0")
+                + "b = filter a by y > 2;"
+                + "c = group b by x;"
+                + "d = foreach c generate group, COUNT(b);";
+        assertTrue(hasOperator(query + "store d into 'output';", POCollectedGroup.class));
+        assertEquals(Arrays.asList("1,1", "2,1", "3,2"), run(query, "d"));
+    }
+
+    @Test
+    public void testCollectedKeysInAnyOrder() throws Exception {
+        String query = load("a", SortedLoader.class, "0,1")
+                + "b = group a by (y, x);"
+                + "c = foreach b generate flatten(group), COUNT(a);";
+        assertTrue(hasOperator(query + "store c into 'output';", POCollectedGroup.class));
+        assertEquals(Arrays.asList("2,1,1", "3,1,1", "5,2,1", "7,3,2"), run(query, "c"));
+    }
+
+    @Test
+    public void testNotSortedOnKey() throws Exception {
+        String query = load("a", SortedLoader.class, "0")
+                + "b = group a by y;"
+                + "c = foreach b generate group, COUNT(a);"
+                + "store c into 'output';";
+        assertFalse(hasOperator(query, POCollectedGroup.class));
+
+        // sorted on x only, so the same (x, y) can be apart
+        query = load("a", SortedLoader.class, "0")
+                + "b = group a by (x, y);"
+                + "c = foreach b generate group, COUNT(a);"
+                + "store c into 'output';";
+        assertFalse(hasOperator(query, POCollectedGroup.class));
+    }
+
+    @Test
+    public void testNotCollectable() throws Exception {
+        String query = "a = load '" + input + "' as (x:int, y:int);"
+                + "b = group a by x;"
+                + "c = foreach b generate group, COUNT(a);"
+                + "store c into 'output';";
+        assertFalse(hasOperator(query, POCollectedGroup.class));
+    }
+
+    @Test
+    public void testMergeCogroup() throws Exception {
+        // untyped, as the side inputs are read without casts
+        String query = loadUntyped("a", input, SortedLoader.class, "0")
+                + loadUntyped("b", input2, SortedIndexableLoader.class, "0")
+                + "c = cogroup a by x, b by x;"
+                + "store c into 'output';";
+        assertTrue(hasOperator(query, POMergeCogroup.class));
+
+        query = loadUntyped("a", input, SortedLoader.class, "0")
+                + loadUntyped("b", input2, SortedIndexableLoader.class, "0")
+                + "c = cogroup a by x inner, b by x;"
+                + "store c into 'output';";
+        assertFalse(hasOperator(query, POMergeCogroup.class));
+
+        query = loadUntyped("a", input, SortedLoader.class, "0")
+                + loadUntyped("b", input2, SortedLoader.class, "0")
+                + "c = cogroup a by x, b by x;"
+                + "store c into 'output';";
+        assertFalse(hasOperator(query, POMergeCogroup.class));
+    }
+
+    /**
+     * A loader of two untyped columns x and y, which reports that its data
+     * is sorted on the given columns
+     */
+    public static class SortedLoader extends PigStorage implements CollectableLoadFunc {
+
+        private int[] sortKeys;
+
+        public SortedLoader(String sortKeys) {
+            String[] columns = sortKeys.split(",");
+            this.sortKeys = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                this.sortKeys[i] = Integer.parseInt(columns[i]);
+            }
+        }
+
+        @Override
+        public ResourceSchema getSchema(String location, Job job) throws IOException {
+            ResourceSchema schema = new ResourceSchema(
+                    Utils.getSchemaFromString("x, y"));
+            Order[] orders = new Order[sortKeys.length];
+            Arrays.fill(orders, Order.ASCENDING);
+            return schema.setSortKeys(sortKeys).setSortKeyOrders(orders);
+        }
+
+        @Override
+        public void ensureAllKeyInstancesInSameSplit() throws IOException {
+        }
+    }
+
+    /**
+     * A sorted loader for the side inputs of a merge cogroup, it is never
+     * used to read
+     */
+    public static class SortedIndexableLoader extends SortedLoader implements IndexableLoadFunc {
+
+        public SortedIndexableLoader(String sortKeys) {
+            super(sortKeys);
+        }
+
+        @Override
+        public void initialize(Configuration conf) throws IOException {
+        }
+
+        @Override
+        public void seekNear(Tuple keys) throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MergeJoinIndexCache;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMergeJoinIndexCache {
+
+    private File leftFile;
+
+    private File rightDir;
+
+    @Before
+    public void setUp() throws Exception {
+        leftFile = Util.createInputFile("test", "left",
+                new String[] { "1\ta", "2\tb", "3\tc", "5\te" });
+        rightDir = File.createTempFile("right", "");
+        rightDir.delete();
+        rightDir.mkdir();
+        writePart("part-00000", "1\tx", "2\ty", "3\tz");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteDirectory(rightDir);
+        Util.deleteDirectory(getIndexDir());
+    }
+
+    private File getIndexDir() {
+        return new File(rightDir.getParentFile(), "." + rightDir.getName() + ".pigindex");
+    }
+
+    private void writePart(String name, String... lines) throws Exception {
+        PrintWriter pw = new PrintWriter(new FileWriter(new File(rightDir, name)));
+        for (String line : lines) {
+            pw.println(line);
+        }
+        pw.close();
+    }
+
+    private List<String> run() throws Exception {
+        PigServer pigServer = new PigServer(ExecType.LOCAL);
+        pigServer.getPigContext().getProperties().setProperty(
+                MergeJoinIndexCache.PERSIST_INDEX, "true");
+        pigServer.registerQuery("a = load '"
+                + Util.encodeEscape(leftFile.getAbsolutePath()) + "' as (k:int, v);");
+        pigServer.registerQuery("b = load '"
+                + Util.encodeEscape(rightDir.getAbsolutePath()) + "' as (k:int, w);");
+        pigServer.registerQuery("c = join a by k, b by k using 'merge';");
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator("c");
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        List<String> expected = Arrays.asList("1,a,1,x", "2,b,2,y", "3,c,3,z");
+        assertEquals(expected, run());
+        assertEquals(2, PigStats.get().getJobGraph().size());
+        assertTrue(getIndexDir().isDirectory());
+
+        assertEquals(expected, run());
+        assertEquals(1, PigStats.get().getJobGraph().size());
+    }
+
+    @Test
+    public void testAppendedFile() throws Exception {
+        run();
+        writePart("part-00001", "4\tu", "5\tv");
+
+        // only the new file is indexed, its entries are added to the index
+        List<String> expected = Arrays.asList("1,a,1,x", "2,b,2,y", "3,c,3,z", "5,e,5,v");
+        assertEquals(expected, run());
+        assertEquals(2, PigStats.get().getJobGraph().size());
+
+        assertEquals(expected, run());
+        assertEquals(1, PigStats.get().getJobGraph().size());
+    }
+
+    @Test
+    public void testChangedFile() throws Exception {
+        run();
+        writePart("part-00000", "1\tx", "2\ty", "5\tzz");
+
+        assertEquals(Arrays.asList("1,a,1,x", "2,b,2,y", "5,e,5,zz"), run());
+        assertEquals(2, PigStats.get().getJobGraph().size());
+    }
+}
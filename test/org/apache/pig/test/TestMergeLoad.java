@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.executionengine.ExecJob;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.newplan.logical.rules.MergeLoad;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMergeLoad {
+
+    private PigServer pigServer;
+
+    private File inputFile;
+
+    @Before
+    public void setUp() throws Exception {
+        pigServer = new PigServer(ExecType.LOCAL);
+        inputFile = Util.createInputFile("test", "mergeload",
+                new String[] { "1\t2", "2\t3", "3\t1" });
+    }
+
+    private String load(String alias) {
+        return alias + " = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (x:int, y:int);";
+    }
+
+    @Test
+    public void testMergeLoads() throws Exception {
+        String query = load("a") + "b = filter a by x > 1;"
+                + "store b into 'output1';"
+                + load("c") + "d = foreach c generate y;"
+                + "store d into 'output2';";
+
+        PigContext pc = pigServer.getPigContext();
+        MROperPlan mrPlan = Util.buildMRPlan(query, pc);
+        assertEquals(2, mrPlan.size());
+
+        pc.getProperties().setProperty(MergeLoad.MERGE_LOADS, "true");
+        mrPlan = Util.buildMRPlan(query, pc);
+        assertEquals(1, mrPlan.size());
+    }
+
+    @Test
+    public void testDifferentSchemaNotMerged() throws Exception {
+        String query = load("a") + "store a into 'output1';"
+                + "c = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (x:chararray, y:int);"
+                + "store c into 'output2';";
+
+        PigContext pc = pigServer.getPigContext();
+        pc.getProperties().setProperty(MergeLoad.MERGE_LOADS, "true");
+        MROperPlan mrPlan = Util.buildMRPlan(query, pc);
+        assertEquals(2, mrPlan.size());
+    }
+
+    @Test
+    public void testSelfJoinNotMerged() throws Exception {
+        pigServer.getPigContext().getProperties().setProperty(
+                MergeLoad.MERGE_LOADS, "true");
+        pigServer.registerQuery(load("a"));
+        pigServer.registerQuery(load("c"));
+        pigServer.registerQuery("d = join a by x, c by y;");
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator("d");
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        Collections.sort(res);
+        assertEquals(Arrays.asList("1,2,3,1", "2,3,1,2", "3,1,2,3"), res);
+    }
+
+    @Test
+    public void testExecuteScripts() throws Exception {
+        File out1 = new File(inputFile.getParentFile(), inputFile.getName() + ".out1");
+        File out2 = new File(inputFile.getParentFile(), inputFile.getName() + ".out2");
+        File script1 = Util.createInputFile("script1", ".pig", new String[] {
+                load("a"),
+                "b = filter a by x > 1;",
+                "store b into '" + Util.encodeEscape(out1.getAbsolutePath()) + "';" });
+        File script2 = Util.createInputFile("script2", ".pig", new String[] {
+                load("a"),
+                "b = foreach a generate y;",
+                "store b into '" + Util.encodeEscape(out2.getAbsolutePath()) + "';" });
+        try {
+            List<ExecJob> jobs = pigServer.executeScripts(Arrays.asList(
+                    script1.getAbsolutePath(), script2.getAbsolutePath()), null);
+            assertEquals(2, jobs.size());
+            for (ExecJob job : jobs) {
+                assertEquals(ExecJob.JOB_STATUS.COMPLETED, job.getStatus());
+            }
+            // both scripts ran in the same job
+            assertEquals(1, PigStats.get().getJobGraph().size());
+            assertFalse(pigServer.getPigContext().getProperties().containsKey(
+                    MergeLoad.MERGE_LOADS));
+            String[] res1 = Util.readOutput(pigServer.getPigContext(), out1.getAbsolutePath());
+            String[] res2 = Util.readOutput(pigServer.getPigContext(), out2.getAbsolutePath());
+            assertEquals(2, res1.length);
+            assertEquals(3, res2.length);
+            assertTrue(Arrays.asList(res2).contains("1"));
+        } finally {
+            Util.deleteDirectory(out1);
+            Util.deleteDirectory(out2);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MRCompiler;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POTopN;
+import org.apache.pig.data.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestOrderByTopN {
+
+    private PigServer pigServer;
+
+    private String load;
+
+    @Before
+    public void setUp() throws Exception {
+        pigServer = new PigServer(ExecType.LOCAL);
+        File inputFile = Util.createInputFile("test", "topn", new String[] {
+                "5\tc", "3\ta", "9\tb", "1\td", "7\ta", "2\tb", "8\tc" });
+        load = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (x:int, y:chararray);";
+    }
+
+    private MROperPlan compile(String query) throws Exception {
+        return Util.buildMRPlan(load + query + "store c into 'output';",
+                pigServer.getPigContext());
+    }
+
+    private boolean hasTopN(MROperPlan mrp) {
+        for (MapReduceOper mro : mrp) {
+            for (PhysicalOperator op : mro.mapPlan) {
+                if (op instanceof POTopN) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private List<String> run(String query) throws Exception {
+        Util.registerMultiLineQuery(pigServer, load + query);
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator("c");
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        return res;
+    }
+
+    @Test
+    public void testSingleJob() throws Exception {
+        String query = "b = order a by x;"
+                + "c = limit b 3;";
+        MROperPlan mrp = compile(query);
+        assertEquals(1, mrp.size());
+        assertTrue(hasTopN(mrp));
+        assertEquals(Arrays.asList("1,d", "2,b", "3,a"), run(query));
+    }
+
+    @Test
+    public void testDescending() throws Exception {
+        String query = "b = order a by x desc;"
+                + "c = limit b 2;";
+        assertEquals(Arrays.asList("9,b", "8,c"), run(query));
+    }
+
+    @Test
+    public void testMultiKey() throws Exception {
+        String query = "b = order a by y desc, x;"
+                + "c = limit b 4;";
+        assertEquals(Arrays.asList("1,d", "5,c", "8,c", "2,b"), run(query));
+    }
+
+    @Test
+    public void testStar() throws Exception {
+        String query = "b = order a by *;"
+                + "c = limit b 2;";
+        assertEquals(Arrays.asList("1,d", "2,b"), run(query));
+    }
+
+    @Test
+    public void testLimitOverInput() throws Exception {
+        String query = "b = order a by x;"
+                + "c = limit b 100;";
+        assertEquals(Arrays.asList("1,d", "2,b", "3,a", "5,c", "7,a", "8,c", "9,b"),
+                run(query));
+    }
+
+    @Test
+    public void testAfterReduce() throws Exception {
+        String query = "g = group a by y;"
+                + "s = foreach g generate group as y, SUM(a.x) as t;"
+                + "b = order s by t desc;"
+                + "c = limit b 2;";
+        MROperPlan mrp = compile(query);
+        assertEquals(2, mrp.size());
+        boolean found = false;
+        for (PhysicalOperator op : mrp.getRoots().get(0).reducePlan) {
+            found |= op instanceof POTopN;
+        }
+        assertTrue(found);
+        assertEquals(Arrays.asList("c,13", "b,11"), run(query));
+    }
+
+    @Test
+    public void testOverMax() throws Exception {
+        pigServer.getPigContext().getProperties().setProperty(
+                MRCompiler.ORDERBY_TOPN_MAX, "2");
+        String query = "b = order a by x;"
+                + "c = limit b 3;";
+        assertFalse(hasTopN(compile(query)));
+        assertEquals(Arrays.asList("1,d", "2,b", "3,a"), run(query));
+    }
+}
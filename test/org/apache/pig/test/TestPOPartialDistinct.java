@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceLauncher;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialDistinct;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.test.utils.GenPhyOp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test POPartialDistinct runtime and its use in the map of a DISTINCT
+ */
+public class TestPOPartialDistinct {
+
+    private POPartialDistinct distinct;
+
+    @Before
+    public void setUp() throws Exception {
+        PigMapReduce.sJobConfInternal.set(new Configuration());
+        distinct = new POPartialDistinct(GenPhyOp.getOK());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PigMapReduce.sJobConfInternal.set(null);
+    }
+
+    private Tuple tuple(Object... fields) {
+        return TupleFactory.getInstance().newTuple(Arrays.asList(fields));
+    }
+
+    /**
+     * @return whether the tuple is passed on
+     */
+    private boolean passes(Tuple t) throws Exception {
+        distinct.attachInput(t);
+        return distinct.getNext(t).returnStatus == POStatus.STATUS_OK;
+    }
+
+    @Test
+    public void testDuplicatesDropped() throws Exception {
+        assertTrue(passes(tuple(1, "a")));
+        assertFalse(passes(tuple(1, "a")));
+        assertTrue(passes(tuple(1, "b")));
+        assertTrue(passes(tuple(null, "a")));
+        assertFalse(passes(tuple(null, "a")));
+        assertFalse(passes(tuple(1, "b")));
+    }
+
+    @Test
+    public void testFlushWhenFull() throws Exception {
+        PigMapReduce.sJobConfInternal.get().set(
+                POPartialDistinct.PROP_MAPDISTINCT_MEMUSAGE, "0");
+        // nothing is kept, so nothing is dropped
+        assertTrue(passes(tuple(1, "a")));
+        assertTrue(passes(tuple(1, "a")));
+    }
+
+    @Test
+    public void testDisabledOnLowReduction() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(passes(tuple(i)));
+        }
+        assertTrue(passes(tuple(0)));
+
+        // enough duplicates keep it on
+        distinct = new POPartialDistinct(GenPhyOp.getOK());
+        for (int i = 0; i < 1000; i++) {
+            passes(tuple(i % 10));
+        }
+        assertFalse(passes(tuple(0)));
+    }
+
+    @Test
+    public void testMapPlan() throws Exception {
+        PigMapReduce.sJobConfInternal.set(null);
+        PigServer pigServer = new PigServer(ExecType.LOCAL);
+        pigServer.getPigContext().getProperties().setProperty(
+                MapReduceLauncher.PROP_EXEC_MAP_DISTINCT, "true");
+        File input = Util.createInputFile("test", "mapdistinct", new String[] {
+                "u1\thome", "u2\thome", "u1\thome", "u1\tcart", "u2\thome" });
+        String query = "a = load '" + Util.encodeEscape(input.getAbsolutePath())
+                + "' as (user:chararray, url:chararray);"
+                + "b = distinct a;";
+
+        MROperPlan mrp = Util.buildMRPlan(query + "store b into 'output';",
+                pigServer.getPigContext());
+        MapReduceOper mro = mrp.getRoots().get(0);
+        boolean found = false;
+        for (PhysicalOperator op : mro.mapPlan) {
+            found |= op instanceof POPartialDistinct;
+        }
+        assertTrue(found);
+
+        Util.registerMultiLineQuery(pigServer, query);
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator("b");
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        Collections.sort(res);
+        assertEquals(Arrays.asList("u1,cart", "u1,home", "u2,home"), res);
+    }
+}
@@ -97,6 +97,24 @@ public class TestPigTupleRawComparator {
         assertTrue(res < 0);
     }
 
+    @Test
+    public void testCompareLong() throws IOException {
+        // values that are written with each of the long types
+        long[] values = new long[] { Long.MIN_VALUE, -1L << 40, -70000, -300, -2, 0, 1, 100,
+                1000, 1L << 20, 1L << 40, Long.MAX_VALUE };
+        for (long v1 : values) {
+            for (long v2 : values) {
+                list.set(3, v1);
+                NullableTuple t1 = new NullableTuple(tf.newTuple(list));
+                list.set(3, v2);
+                NullableTuple t2 = new NullableTuple(tf.newTuple(list));
+                int res = compareHelper(t1, t2, comparator);
+                assertEquals(Math.signum(t1.compareTo(t2)), Math.signum(res), 0);
+                assertEquals(Long.signum(Long.valueOf(v1).compareTo(v2)), Math.signum(res), 0);
+            }
+        }
+    }
+
     @Test
     public void testCompareDouble() throws IOException {
         list.set(2, (Double) list.get(2) + 0.1);
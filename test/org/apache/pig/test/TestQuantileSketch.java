@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MRCompiler;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners.QuantileSketch;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.InternalMap;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.builtin.FindQuantiles;
+import org.apache.pig.impl.util.Pair;
+import org.junit.Test;
+
+public class TestQuantileSketch {
+
+    private static TupleFactory tFact = TupleFactory.getInstance();
+
+    private static final float epsilon = 0.00001f;
+
+    private QuantileSketch newSketch(int k) {
+        return new QuantileSketch(k, new FindQuantiles().getComparator(), new Random(42));
+    }
+
+    private static Tuple key(int i) {
+        return tFact.newTuple((Object) i);
+    }
+
+    private static long sumWeights(List<Pair<Tuple, Long>> samples) {
+        long sum = 0;
+        for (Pair<Tuple, Long> p : samples) {
+            sum += p.second;
+        }
+        return sum;
+    }
+
+    @Test
+    public void testWeightsAddUpToCount() throws Exception {
+        QuantileSketch sketch = newSketch(128);
+        for (int i = 0; i < 100000; i++) {
+            sketch.add(key(i));
+        }
+        assertEquals(100000, sketch.getCount());
+        assertTrue(sketch.getRetained() < 128 * 20);
+        List<Pair<Tuple, Long>> samples = sketch.getWeightedSamples();
+        assertEquals(100000, sumWeights(samples));
+        for (int i = 1; i < samples.size(); i++) {
+            assertTrue(((Integer) samples.get(i - 1).first.get(0))
+                    < ((Integer) samples.get(i).first.get(0)));
+        }
+    }
+
+    @Test
+    public void testMergeAfterSerialization() throws Exception {
+        QuantileSketch s1 = newSketch(256);
+        QuantileSketch s2 = newSketch(256);
+        for (int i = 0; i < 50000; i++) {
+            s1.add(key(i));
+            s2.add(key(50000 + i));
+        }
+        QuantileSketch merged = newSketch(256);
+        merged.merge(s1.toTuple());
+        merged.merge(s2.toTuple());
+        assertEquals(100000, merged.getCount());
+
+        // the median of the merged sketch should be close to the real one
+        List<Pair<Tuple, Long>> samples = merged.getWeightedSamples();
+        assertEquals(100000, sumWeights(samples));
+        long cum = 0;
+        int median = -1;
+        for (Pair<Tuple, Long> p : samples) {
+            cum += p.second;
+            if (cum >= 50000) {
+                median = (Integer) p.first.get(0);
+                break;
+            }
+        }
+        assertTrue("median " + median, Math.abs(median - 50000) < 2000);
+    }
+
+    @Test
+    public void testHeavyDuplicateKey() throws Exception {
+        QuantileSketch sketch = newSketch(128);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(key(i));
+        }
+        for (int i = 0; i < 8000; i++) {
+            sketch.add(key(500));
+        }
+        for (int i = 1000; i < 2000; i++) {
+            sketch.add(key(i));
+        }
+        List<Pair<Tuple, Long>> samples = sketch.getWeightedSamples();
+        int occurrences = 0;
+        for (Pair<Tuple, Long> p : samples) {
+            if (p.first.get(0).equals(500)) {
+                occurrences++;
+            }
+        }
+        assertEquals(1, occurrences);
+
+        Map<String, Object> res = new FindQuantiles().findQuantiles(samples, 5);
+        DataBag quantiles = (DataBag) res.get(FindQuantiles.QUANTILES_LIST);
+        assertEquals(5, quantiles.size());
+        InternalMap weightedParts = (InternalMap) res.get(FindQuantiles.WEIGHTED_PARTS);
+        Tuple probVec = (Tuple) weightedParts.get(key(500));
+        assertNotNull(probVec);
+        // 500 makes up 80% of the keys, so it has to be spread over
+        // at least the three middle partitions
+        float sum = 0;
+        int nonZero = 0;
+        for (int i = 0; i < probVec.size(); i++) {
+            float f = (Float) probVec.get(i);
+            sum += f;
+            if (f > 0) nonZero++;
+        }
+        assertEquals(1.0f, sum, epsilon);
+        assertTrue(nonZero >= 3);
+    }
+
+    @Test
+    public void testFindQuantilesNoSamples() throws Exception {
+        assertEquals(null, new FindQuantiles().findQuantiles(
+                newSketch(16).getWeightedSamples(), 10));
+    }
+
+    @Test
+    public void testOrderBySketch() throws Exception {
+        String[] input = new String[300];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = Integer.toString(i % 37);
+        }
+        File inputFile = Util.createInputFile("test", "sketch", input);
+        PigServer pigServer = new PigServer(ExecType.LOCAL);
+        pigServer.getPigContext().getProperties().setProperty(
+                MRCompiler.ORDERBY_SKETCH, "true");
+        String query = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (x:int);"
+                + "b = group a by x;"
+                + "c = foreach b generate group, COUNT(a) as cnt;"
+                + "d = order c by group desc;";
+        pigServer.registerQuery(query);
+
+        PigContext pc = pigServer.getPigContext();
+        MROperPlan mrPlan = Util.buildMRPlan(query + "store d into 'output';", pc);
+        assertEquals(2, mrPlan.size());
+        for (MapReduceOper mro : mrPlan) {
+            assertFalse(mro.isSampler());
+            if (mro.isGlobalSort()) {
+                assertNotNull(mro.getQuantSketchFile());
+            }
+        }
+
+        Iterator<Tuple> it = pigServer.openIterator("d");
+        int expected = 36;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(expected--, t.get(0));
+        }
+        assertEquals(-1, expected);
+    }
+}
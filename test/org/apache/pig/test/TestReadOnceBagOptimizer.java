@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.data.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestReadOnceBagOptimizer {
+
+    private PigServer pigServer;
+
+    private String load;
+
+    @Before
+    public void setUp() throws Exception {
+        pigServer = new PigServer(ExecType.LOCAL);
+        File inputFile = Util.createInputFile("test", "readonce",
+                new String[] { "1\t2", "1\t3", "1\t", "2\t5", "3\t" });
+        load = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (x:int, y:int);";
+    }
+
+    private boolean isReadOnce(String query) throws Exception {
+        MROperPlan mrp = Util.buildMRPlan(load + query + "store c into 'output';",
+                pigServer.getPigContext());
+        MapReduceOper mro = mrp.getLeaves().get(0);
+        return ((POPackage)mro.reducePlan.getRoots().get(0)).isReadOnce();
+    }
+
+    private List<String> run(String query) throws Exception {
+        Util.registerMultiLineQuery(pigServer, load + query);
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator("c");
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    @Test
+    public void testFlatten() throws Exception {
+        String query = "b = group a by x;"
+                + "c = foreach b generate group, flatten(a.y);";
+        assertTrue(isReadOnce(query));
+        assertEquals(Arrays.asList("1,", "1,2", "1,3", "2,5", "3,"), run(query));
+    }
+
+    @Test
+    public void testNestedFilter() throws Exception {
+        String query = "b = group a by x;"
+                + "c = foreach b { d = filter a by y > 2; generate group, COUNT(d), SUM(d.y); };";
+        // d is used twice, so a is read twice
+        assertFalse(isReadOnce(query));
+
+        query = "b = group a by x;"
+                + "c = foreach b { d = filter a by y > 2; generate group, COUNT(d); };";
+        assertTrue(isReadOnce(query));
+        assertEquals(Arrays.asList("1,1", "2,1", "3,0"), run(query));
+    }
+
+    @Test
+    public void testNestedLimit() throws Exception {
+        String query = "b = group a by x;"
+                + "c = foreach b { d = limit a 1; generate group, flatten(d.x); };";
+        assertTrue(isReadOnce(query));
+        assertEquals(Arrays.asList("1,1", "2,2", "3,3"), run(query));
+    }
+
+    @Test
+    public void testSinglePassUdf() throws Exception {
+        // with neither the combiner nor the accumulator in the way
+        pigServer.getPigContext().getProperties().setProperty(
+                "pig.exec.nocombiner", "true");
+        pigServer.getPigContext().getProperties().setProperty(
+                "opt.accumulator", "false");
+        String query = "b = group a by x;"
+                + "c = foreach b generate group, MAX(a.y);";
+        assertTrue(isReadOnce(query));
+        assertEquals(Arrays.asList("1,3", "2,5", "3,"), run(query));
+    }
+
+    @Test
+    public void testBagOutput() throws Exception {
+        String query = "b = group a by x;"
+                + "c = foreach b generate group, a;";
+        assertFalse(isReadOnce(query));
+
+        query = "b = group a by x;"
+                + "c = foreach b generate group, COUNT(a), a.y;";
+        assertFalse(isReadOnce(query));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        pigServer.getPigContext().getProperties().setProperty(
+                "pig.exec.noreadoncebag", "true");
+        String query = "b = group a by x;"
+                + "c = foreach b generate group, flatten(a.y);";
+        assertFalse(isReadOnce(query));
+    }
+}
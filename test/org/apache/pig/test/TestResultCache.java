@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.ResultCache;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestResultCache {
+
+    private File cacheDir;
+
+    private File inputFile;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = File.createTempFile("resultcache", "");
+        cacheDir.delete();
+        inputFile = Util.createInputFile("test", "resultcache",
+                new String[] { "1\t2", "2\t2", "3\t1" });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteDirectory(cacheDir);
+    }
+
+    private List<String> run(String filter) throws Exception {
+        PigServer pigServer = new PigServer(ExecType.LOCAL);
+        pigServer.getPigContext().getProperties().setProperty(
+                ResultCache.CACHE_DIR, cacheDir.getAbsolutePath());
+        pigServer.registerQuery("a = load '"
+                + Util.encodeEscape(inputFile.getAbsolutePath()) + "' as (x:int, y:int);");
+        pigServer.registerQuery("b = filter a by " + filter + ";");
+        pigServer.registerQuery("c = group b by y;");
+        pigServer.registerQuery("d = foreach c generate group, COUNT(b) as n;");
+        pigServer.registerQuery("e = group d by n;");
+        pigServer.registerQuery("f = foreach e generate group, COUNT(d);");
+        List<String> res = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator("f");
+        while (it.hasNext()) {
+            res.add(it.next().toDelimitedString(","));
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    @Test
+    public void testCacheHit() throws Exception {
+        List<String> expected = run("x > 0");
+        assertEquals(2, PigStats.get().getJobGraph().size());
+        assertEquals(1, cacheDir.list().length);
+
+        assertEquals(expected, run("x > 0"));
+        assertEquals(1, PigStats.get().getJobGraph().size());
+
+        // a different plan does not hit
+        run("x > 1");
+        assertEquals(2, PigStats.get().getJobGraph().size());
+        assertEquals(2, cacheDir.list().length);
+    }
+
+    @Test
+    public void testChangedInput() throws Exception {
+        run("x > 0");
+        assertEquals(2, PigStats.get().getJobGraph().size());
+
+        PrintWriter pw = new PrintWriter(new FileWriter(inputFile, true));
+        pw.println("4\t3");
+        pw.close();
+        assertEquals(Arrays.asList("1,2", "2,1"), run("x > 0"));
+        assertEquals(2, PigStats.get().getJobGraph().size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        run("x > 0");
+        assertTrue(new File(cacheDir, cacheDir.list()[0]).isDirectory());
+
+        PigServer pigServer = new PigServer(ExecType.LOCAL);
+        pigServer.getPigContext().getProperties().setProperty(
+                ResultCache.CACHE_MAX_BYTES, "0");
+        pigServer.getPigContext().getProperties().setProperty(
+                ResultCache.CACHE_DIR, cacheDir.getAbsolutePath());
+        pigServer.registerQuery("a = load '"
+                + Util.encodeEscape(inputFile.getAbsolutePath()) + "' as (x:int, y:int);");
+        pigServer.registerQuery("b = group a by y;");
+        pigServer.registerQuery("c = foreach b generate group, COUNT(a) as n;");
+        pigServer.registerQuery("d = group c by n;");
+        Iterator<Tuple> it = pigServer.openIterator("d");
+        while (it.hasNext()) {
+            it.next();
+        }
+        // everything is over a zero byte budget
+        assertEquals(0, cacheDir.list().length);
+    }
+}
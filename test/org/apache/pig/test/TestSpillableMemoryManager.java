@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.util.Spillable;
+import org.apache.pig.impl.util.SpillableMemoryManager;
+import org.apache.pig.impl.util.SpillableMemoryManager.MemoryBudget;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSpillableMemoryManager {
+
+    private static final long MB = 1L << 20;
+
+    private SpillableMemoryManager manager = SpillableMemoryManager.getInstance();
+
+    // keeps the heap above the budgets of the tests
+    private byte[] ballast;
+
+    private static class Consumer implements Spillable {
+        int spilled = 0;
+
+        @Override
+        public long spill() {
+            spilled++;
+            return 0;
+        }
+
+        @Override
+        public long getMemorySize() {
+            return 0;
+        }
+    }
+
+    private static void configure(String budget, String threshold) {
+        Properties props = new Properties();
+        props.setProperty("pig.spill.size.threshold", threshold);
+        props.setProperty("pig.spill.gc.activation.size", "40000000");
+        props.setProperty("pig.spill.memory.budget", budget);
+        SpillableMemoryManager.configure(props);
+    }
+
+    @Before
+    public void setUp() {
+        ballast = new byte[(int)(32 * MB)];
+        // a budget of 16 MB
+        double fraction = 16.0 * MB / Runtime.getRuntime().maxMemory();
+        configure(Double.toString(fraction), "0");
+    }
+
+    @After
+    public void tearDown() {
+        ballast = null;
+        configure("0.3", "5000000");
+    }
+
+    @Test
+    public void testReserveInSteps() {
+        Consumer c = new Consumer();
+        MemoryBudget budget = manager.registerBudget(c, true);
+        long total = manager.getReservedTotal();
+        manager.reserve(budget, 1000);
+        assertEquals(1000 + MB, budget.getReserved());
+        assertEquals(total + budget.getReserved(), manager.getReservedTotal());
+
+        // within the reservation
+        manager.reserve(budget, 2000);
+        assertEquals(1000 + MB, budget.getReserved());
+
+        manager.release(budget);
+        assertEquals(0, budget.getReserved());
+        assertEquals(total, manager.getReservedTotal());
+        assertEquals(0, c.spilled);
+    }
+
+    @Test
+    public void testBiggestSpilledOverBudget() {
+        Consumer small = new Consumer();
+        Consumer big = new Consumer();
+        Consumer fixed = new Consumer();
+        MemoryBudget smallBudget = manager.registerBudget(small, true);
+        MemoryBudget bigBudget = manager.registerBudget(big, true);
+        MemoryBudget fixedBudget = manager.registerBudget(fixed, false);
+
+        manager.reserve(fixedBudget, 6 * MB);
+        manager.reserve(smallBudget, 2 * MB);
+        assertEquals(0, small.spilled + big.spilled + fixed.spilled);
+
+        // 7 + 3 + 8 MB are over the budget, the biggest that can shrink
+        // is spilled and gives its reservation back
+        manager.reserve(bigBudget, 7 * MB);
+        assertEquals(1, big.spilled);
+        assertEquals(0, bigBudget.getReserved());
+        assertEquals(0, small.spilled);
+        assertEquals(0, fixed.spilled);
+
+        manager.release(smallBudget);
+        manager.release(fixedBudget);
+    }
+
+    @Test
+    public void testNoBudget() {
+        configure("0", "0");
+        Consumer c = new Consumer();
+        MemoryBudget budget = manager.registerBudget(c, true);
+        manager.reserve(budget, 64 * MB);
+        assertEquals(0, c.spilled);
+        manager.release(budget);
+    }
+
+    @Test
+    public void testBagReserves() {
+        configure("0.3", "5000000");
+        long total = manager.getReservedTotal();
+        DataBag bag = BagFactory.getInstance().newDefaultBag();
+        for (int i = 0; i < 1000; i++) {
+            bag.add(TupleFactory.getInstance().newTuple(Integer.valueOf(i)));
+        }
+        assertTrue(manager.getReservedTotal() > total);
+        bag.clear();
+        assertEquals(total, manager.getReservedTotal());
+    }
+}
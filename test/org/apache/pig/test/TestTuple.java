@@ -67,20 +67,20 @@ public class TestTuple extends TestCase {
     public void testEmptyTupleSize() {
         Tuple t = TupleFactory.getInstance().newTuple();
         long size = t.getMemorySize();
-        assertEquals("tuple size",size, 96);
+        assertEquals("tuple size",size, 72);
     }
     
     public void testEmptyBagSize() {
         DataBag bag = DefaultBagFactory.getInstance().newDefaultBag();
         long size = bag.getMemorySize();
-        assertEquals("bag size",size, 124);
+        assertEquals("bag size",size, 88);
     }
     
     // See PIG-1443
     public void testTupleSizeWithString() {
         Tuple t = Util.createTuple(new String[] {"1234567", "bar"});
         long size = t.getMemorySize();
-        assertEquals("tuple size",size, 200);
+        assertEquals("tuple size",size, 184);
     }
     
     public void testTupleSizeWithByteArrays() {
@@ -88,7 +88,7 @@ public class TestTuple extends TestCase {
         t.append(new DataByteArray("1234567"));
         t.append(new DataByteArray("bar"));
         long size = t.getMemorySize();
-        assertEquals("tuple size",size, 168);
+        assertEquals("tuple size",size, 160);
     }
 
     public void testTupleSizeWithDoubles() {
@@ -104,7 +104,7 @@ public class TestTuple extends TestCase {
         t.append(new Float(0.1F));
         t.append(new Float(2000.10001F));
         long size = t.getMemorySize();
-        assertEquals("tuple size",size, 128);
+        assertEquals("tuple size",size, 112);
     }
     
     public void testTupleSizeWithLongs() {
@@ -120,7 +120,31 @@ public class TestTuple extends TestCase {
         t.append(new Boolean(true));
         t.append(new Boolean(false));
         long size = t.getMemorySize();
-        assertEquals("tuple size",size, 128);
+        assertEquals("tuple size",size, 112);
     }    
     
+    public void testTupleSizeTracked() throws ExecException {
+        Tuple t = TupleFactory.getInstance().newTuple(2);
+        long size = t.getMemorySize();
+        t.set(0, "bar");
+        assertEquals("tuple size", size + 48, t.getMemorySize());
+        t.set(0, null);
+        assertEquals("tuple size", size, t.getMemorySize());
+        // the long and a reference more in the field list
+        t.append(new Long(100));
+        assertEquals("tuple size", size + 24 + 8, t.getMemorySize());
+    }
+
+    public void testTupleSizeWithBag() throws ExecException {
+        Tuple t = TupleFactory.getInstance().newTuple(1);
+        DataBag bag = BagFactory.getInstance().newDefaultBag();
+        t.set(0, bag);
+        long size = t.getMemorySize();
+        Tuple inner = Util.createTuple(new String[] {"1234567", "bar"});
+        bag.add(inner);
+        // the bag is asked again, it grows by the tuple and a reference
+        assertEquals("tuple size", size + inner.getMemorySize() + 8,
+                t.getMemorySize());
+    }
+
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.data.ValueDictionary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestValueDictionary {
+
+    private InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+
+    @Before
+    public void setUp() {
+        Configuration conf = new Configuration(false);
+        conf.setBoolean(ValueDictionary.PROP_INTERN_VALUES, true);
+        ValueDictionary.configure(conf);
+    }
+
+    @After
+    public void tearDown() {
+        ValueDictionary.configure(null);
+    }
+
+    // writes the tuples and reads them back
+    private List<Tuple> roundTrip(List<Tuple> tuples) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Tuple t : tuples) {
+            sedes.writeDatum(out, t);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                bytes.toByteArray()));
+        List<Tuple> res = new ArrayList<Tuple>();
+        for (int i = 0; i < tuples.size(); i++) {
+            res.add((Tuple) sedes.readDatum(in));
+        }
+        return res;
+    }
+
+    @Test
+    public void testRepeatedValuesShared() throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 3000; i++) {
+            Tuple t = TupleFactory.getInstance().newTuple(3);
+            t.set(0, i % 2 == 0 ? "FR" : "US");
+            t.set(1, new DataByteArray(i % 2 == 0 ? "ok" : "error"));
+            t.set(2, "user" + i);
+            tuples.add(t);
+        }
+        List<Tuple> res = roundTrip(tuples);
+        assertEquals(tuples, res);
+
+        assertSame(res.get(0).get(0), res.get(2998).get(0));
+        DataByteArray b1 = (DataByteArray) res.get(1).get(1);
+        DataByteArray b2 = (DataByteArray) res.get(2999).get(1);
+        assertNotSame(b1, b2);
+        assertSame(b1.get(), b2.get());
+        // changing one bytearray leaves the others alone
+        b1.set("changed".getBytes());
+        assertEquals(new DataByteArray("error"), res.get(3).get(1));
+    }
+
+    @Test
+    public void testOff() throws Exception {
+        ValueDictionary.configure(new Configuration(false));
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 2; i++) {
+            tuples.add(TupleFactory.getInstance().newTuple("FR"));
+        }
+        List<Tuple> res = roundTrip(tuples);
+        assertEquals(tuples, res);
+        assertNotSame(res.get(0).get(0), res.get(1).get(0));
+    }
+}
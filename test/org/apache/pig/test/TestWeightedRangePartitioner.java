@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners.WeightedRangePartitioner;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.io.NullableBytesWritable;
+import org.apache.pig.impl.io.NullableDoubleWritable;
+import org.apache.pig.impl.io.NullableFloatWritable;
+import org.apache.pig.impl.io.NullableIntWritable;
+import org.apache.pig.impl.io.NullableLongWritable;
+import org.apache.pig.impl.io.NullableText;
+import org.apache.pig.impl.io.PigNullableWritable;
+import org.junit.Test;
+
+public class TestWeightedRangePartitioner {
+
+    private Random r = new Random(17);
+
+    /**
+     * Checks that sorting keys never puts a larger prefix before a smaller
+     * one, and that equal prefixes mean equal keys when the prefix is exact.
+     */
+    private void checkPrefixOrder(List<PigNullableWritable> keys, boolean exact) {
+        Collections.sort(keys, new Comparator<PigNullableWritable>() {
+            @Override
+            public int compare(PigNullableWritable o1, PigNullableWritable o2) {
+                return DataType.compare(o1.getValueAsPigType(), o2.getValueAsPigType());
+            }
+        });
+        for (int i = 1; i < keys.size(); i++) {
+            PigNullableWritable k1 = keys.get(i - 1);
+            PigNullableWritable k2 = keys.get(i);
+            long p1 = WeightedRangePartitioner.getPrefix(k1);
+            long p2 = WeightedRangePartitioner.getPrefix(k2);
+            assertTrue(k1 + " " + k2, p1 <= p2);
+            if (exact && p1 == p2) {
+                assertTrue(k1 + " " + k2, DataType.compare(
+                        k1.getValueAsPigType(), k2.getValueAsPigType()) == 0);
+            }
+        }
+    }
+
+    @Test
+    public void testNumericPrefixes() {
+        List<PigNullableWritable> ints = new ArrayList<PigNullableWritable>();
+        List<PigNullableWritable> longs = new ArrayList<PigNullableWritable>();
+        List<PigNullableWritable> floats = new ArrayList<PigNullableWritable>();
+        List<PigNullableWritable> doubles = new ArrayList<PigNullableWritable>();
+        for (int i = 0; i < 1000; i++) {
+            ints.add(new NullableIntWritable(r.nextInt()));
+            longs.add(new NullableLongWritable(r.nextLong()));
+            floats.add(new NullableFloatWritable((r.nextFloat() - 0.5f) * r.nextInt()));
+            doubles.add(new NullableDoubleWritable(r.nextGaussian() * r.nextInt()));
+        }
+        ints.add(new NullableIntWritable(Integer.MIN_VALUE));
+        ints.add(new NullableIntWritable(Integer.MAX_VALUE));
+        floats.add(new NullableFloatWritable(-0.0f));
+        floats.add(new NullableFloatWritable(0.0f));
+        floats.add(new NullableFloatWritable(Float.NEGATIVE_INFINITY));
+        floats.add(new NullableFloatWritable(Float.NaN));
+        doubles.add(new NullableDoubleWritable(-0.0));
+        doubles.add(new NullableDoubleWritable(0.0));
+        doubles.add(new NullableDoubleWritable(Double.NEGATIVE_INFINITY));
+        doubles.add(new NullableDoubleWritable(Double.NaN));
+        checkPrefixOrder(ints, true);
+        checkPrefixOrder(longs, true);
+        checkPrefixOrder(floats, true);
+        checkPrefixOrder(doubles, true);
+    }
+
+    @Test
+    public void testChararrayPrefixes() {
+        List<PigNullableWritable> keys = new ArrayList<PigNullableWritable>();
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = r.nextInt(8);
+            for (int j = 0; j < len; j++) {
+                // mostly ascii, with some characters above the sign bit
+                sb.append(r.nextInt(10) == 0 ? (char)(0x8000 + r.nextInt(0x7fff))
+                        : (char)('a' + r.nextInt(3)));
+            }
+            keys.add(new NullableText(sb.toString()));
+        }
+        checkPrefixOrder(keys, false);
+    }
+
+    @Test
+    public void testBytearrayPrefixes() {
+        List<PigNullableWritable> keys = new ArrayList<PigNullableWritable>();
+        for (int i = 0; i < 1000; i++) {
+            byte[] b = new byte[r.nextInt(12)];
+            for (int j = 0; j < b.length; j++) {
+                b[j] = (byte)(r.nextInt(3) - 1 + (r.nextBoolean() ? 127 : 0));
+            }
+            keys.add(new NullableBytesWritable(new DataByteArray(b)));
+        }
+        checkPrefixOrder(keys, false);
+    }
+}